@@ -17,8 +17,11 @@
 
 package com.radixdlt.consensus.tempo;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.radixdlt.common.AID;
 import com.radixdlt.crypto.ECKeyPair;
+import com.radixdlt.store.IndexScanner;
 import com.radixdlt.store.LedgerEntry;
 import com.radixdlt.store.LedgerSearchMode;
 import com.radixdlt.store.SearchCursor;
@@ -26,6 +29,7 @@ import com.radixdlt.store.StoreIndex;
 import org.junit.Assert;
 import org.junit.Test;
 import org.radix.integration.RadixTestWithStores;
+import org.radix.shards.ShardRange;
 
 import java.util.List;
 
@@ -132,4 +136,86 @@ public class BerkeleySearchCursorTests extends RadixTestWithStores {
 		cursor = cursor.previous();
 		Assert.assertNull(cursor);
 	}
+
+	@Test
+	public void create_and_store_three_atoms__scan_by_index_in_pages() throws Exception {
+		ECKeyPair identity = new ECKeyPair();
+
+		StoreIndex index = new StoreIndex(PREFIX, identity.getUID().toByteArray());
+		List<LedgerEntry> ledgerEntries = ledgerEntryGenerator.createLedgerEntries(identity, 3);
+		for (LedgerEntry ledgerEntry : ledgerEntries) {
+			StoreIndex uniqueIndex = new StoreIndex(PREFIX, ledgerEntry.getAID().getBytes());
+			getStore().store(ledgerEntry, ImmutableSet.of(uniqueIndex), ImmutableSet.of(index));
+		}
+
+		IndexScanner scanner = getStore().scan(StoreIndex.LedgerIndexType.DUPLICATE, index);
+		Assert.assertFalse(scanner.isExhausted());
+
+		List<AID> firstPage = scanner.nextAids(2);
+		Assert.assertEquals(ImmutableList.of(ledgerEntries.get(0).getAID(), ledgerEntries.get(1).getAID()), firstPage);
+		Assert.assertFalse(scanner.isExhausted());
+
+		List<LedgerEntry> secondPage = scanner.nextEntries(2);
+		Assert.assertEquals(ImmutableList.of(ledgerEntries.get(2)), secondPage);
+		Assert.assertTrue(scanner.isExhausted());
+
+		Assert.assertTrue(scanner.nextAids(2).isEmpty());
+	}
+
+	@Test
+	public void create_and_store_four_atoms__scan_by_shard_range() throws Exception {
+		ECKeyPair identity = new ECKeyPair();
+
+		List<LedgerEntry> ledgerEntries = ledgerEntryGenerator.createLedgerEntries(identity, 4);
+		getStore().store(ledgerEntries.get(0), ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of(10L, -5L));
+		getStore().store(ledgerEntries.get(1), ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of(3L));
+		getStore().store(ledgerEntries.get(2), ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of(11L));
+		getStore().store(ledgerEntries.get(3), ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of(Long.MIN_VALUE));
+
+		IndexScanner scanner = getStore().scanShards(new ShardRange(-5, 10));
+		List<AID> firstPage = scanner.nextAids(2);
+		Assert.assertEquals(ImmutableList.of(ledgerEntries.get(0).getAID(), ledgerEntries.get(1).getAID()), firstPage);
+		Assert.assertFalse(scanner.isExhausted());
+
+		List<AID> secondPage = scanner.nextAids(2);
+		Assert.assertEquals(ImmutableList.of(ledgerEntries.get(0).getAID()), secondPage);
+		Assert.assertTrue(scanner.isExhausted());
+
+		IndexScanner fullScanner = getStore().scanShards(new ShardRange(Long.MIN_VALUE, Long.MAX_VALUE));
+		Assert.assertEquals(ImmutableList.of(
+			ledgerEntries.get(3).getAID(),
+			ledgerEntries.get(0).getAID(),
+			ledgerEntries.get(1).getAID(),
+			ledgerEntries.get(0).getAID(),
+			ledgerEntries.get(2).getAID()
+		), fullScanner.nextAids(10));
+	}
+
+	@Test
+	public void create_and_store_two_atoms__replace_one__search_by_index() throws Exception {
+		ECKeyPair identity = new ECKeyPair();
+
+		StoreIndex index = new StoreIndex(PREFIX, identity.getUID().toByteArray());
+		List<LedgerEntry> ledgerEntries = ledgerEntryGenerator.createLedgerEntries(identity, 3);
+		getStore().store(ledgerEntries.get(0), ImmutableSet.of(), ImmutableSet.of(index));
+		getStore().store(ledgerEntries.get(1), ImmutableSet.of(), ImmutableSet.of(index));
+
+		StoreIndex replacementIndex = new StoreIndex((byte) (PREFIX + 1), identity.getUID().toByteArray());
+		Assert.assertTrue(getStore().replace(
+			ImmutableSet.of(ledgerEntries.get(0).getAID()),
+			ledgerEntries.get(2),
+			ImmutableSet.of(),
+			ImmutableSet.of(replacementIndex)
+		).isSuccess());
+
+		SearchCursor cursor = getStore().search(StoreIndex.LedgerIndexType.DUPLICATE, index, LedgerSearchMode.EXACT);
+		Assert.assertNotNull(cursor);
+		Assert.assertEquals(ledgerEntries.get(1).getAID(), cursor.get());
+		Assert.assertNull(cursor.next());
+
+		cursor = getStore().search(StoreIndex.LedgerIndexType.DUPLICATE, replacementIndex, LedgerSearchMode.EXACT);
+		Assert.assertNotNull(cursor);
+		Assert.assertEquals(ledgerEntries.get(2).getAID(), cursor.get());
+		Assert.assertFalse(getStore().contains(ledgerEntries.get(0).getAID()));
+	}
 }
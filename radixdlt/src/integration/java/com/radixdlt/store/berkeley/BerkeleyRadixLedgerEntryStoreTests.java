@@ -17,16 +17,29 @@
 
 package com.radixdlt.store.berkeley;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Bytes;
+import com.radixdlt.common.AID;
 import com.radixdlt.crypto.CryptoException;
 import com.radixdlt.crypto.ECKeyPair;
+import com.radixdlt.store.IndexScanner;
+import com.radixdlt.store.LedgerEntryClockView;
 import com.radixdlt.store.StoreIndex;
 import com.radixdlt.store.LedgerSearchMode;
+import com.radixdlt.serialization.DsonOutput.Output;
 import com.radixdlt.serialization.Serialization;
+import com.radixdlt.store.IndexedLedgerEntry;
 import com.radixdlt.store.LedgerEntry;
+import com.radixdlt.store.LedgerEntryStoreResult;
 import com.radixdlt.consensus.tempo.LedgerEntryGenerator;
 import com.radixdlt.store.LedgerEntryStatus;
 import com.radixdlt.utils.Ints;
+import com.radixdlt.utils.Longs;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Transaction;
 import org.assertj.core.api.SoftAssertions;
 import org.junit.After;
 import org.junit.Before;
@@ -35,8 +48,18 @@ import org.radix.exceptions.ValidationException;
 import org.radix.integration.RadixTestWithStores;
 import org.radix.logging.Logger;
 import org.radix.logging.Logging;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
 public class BerkeleyRadixLedgerEntryStoreTests extends RadixTestWithStores {
 
@@ -52,7 +75,8 @@ public class BerkeleyRadixLedgerEntryStoreTests extends RadixTestWithStores {
 
     @Before
     public void setup() throws CryptoException, ValidationException {
-        tempoAtomStore = new BerkeleyLedgerEntryStore(getLocalSystem().getNID(), serialization, this.getDbEnv());
+        tempoAtomStore = new BerkeleyLedgerEntryStore(getLocalSystem().getNID(), serialization, this.getDbEnv(),
+            BerkeleyLedgerEntryStoreConfiguration.fromRuntimeProperties(getProperties()));
 
         identity = new ECKeyPair();
         ledgerEntries = ledgerEntryGenerator.createLedgerEntries(identity, 5);
@@ -122,6 +146,25 @@ public class BerkeleyRadixLedgerEntryStoreTests extends RadixTestWithStores {
         });
     }
 
+    @Test
+    public void storeGetAllTest() {
+        SoftAssertions.assertSoftly(softly -> {
+            //atoms added to store successfully
+            softly.assertThat(tempoAtomStore.store(ledgerEntries.get(0), ImmutableSet.of(), ImmutableSet.of()).isSuccess()).isTrue();
+            softly.assertThat(tempoAtomStore.store(ledgerEntries.get(1), ImmutableSet.of(), ImmutableSet.of()).isSuccess()).isTrue();
+
+            // cache one of the atoms beforehand
+            softly.assertThat(tempoAtomStore.get(ledgerEntries.get(1).getAID()).isPresent()).isTrue();
+
+            //added atoms are present, not added atom is absent
+            List<AID> aids = ledgerEntries.subList(0, 3).stream().map(LedgerEntry::getAID).collect(Collectors.toList());
+            softly.assertThat(tempoAtomStore.getAll(aids)).containsOnly(
+                entry(ledgerEntries.get(0).getAID(), ledgerEntries.get(0)),
+                entry(ledgerEntries.get(1).getAID(), ledgerEntries.get(1))
+            );
+        });
+    }
+
     @Test
     public void storeGetReplaceTest() {
         SoftAssertions.assertSoftly(softly -> {
@@ -145,6 +188,302 @@ public class BerkeleyRadixLedgerEntryStoreTests extends RadixTestWithStores {
         });
     }
 
+    @Test
+    public void clockViewReplaceAfterViewTest() {
+        StoreIndex index = new StoreIndex((byte) 7, new byte[] { 1 });
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(tempoAtomStore.store(ledgerEntries.get(0), ImmutableSet.of(), ImmutableSet.of(index)).isSuccess()).isTrue();
+            softly.assertThat(tempoAtomStore.store(ledgerEntries.get(1), ImmutableSet.of(), ImmutableSet.of(index)).isSuccess()).isTrue();
+            LedgerEntryClockView view = tempoAtomStore.clockView();
+
+            // pending entries at or before the logical clock of the view are visible in it
+            softly.assertThat(view.contains(ledgerEntries.get(1).getAID())).isTrue();
+            IndexScanner scanner = view.scan(StoreIndex.LedgerIndexType.DUPLICATE, index);
+            softly.assertThat(scanner.nextAids(1)).containsExactly(ledgerEntries.get(0).getAID());
+
+            // replace the entry the scan under way has not reached yet
+            softly.assertThat(tempoAtomStore.replace(ImmutableSet.of(ledgerEntries.get(1).getAID()), ledgerEntries.get(2), ImmutableSet.of(), ImmutableSet.of(index)).isSuccess()).isTrue();
+
+            // the view is not isolated, the replaced entry is gone from it and the replacement is after it
+            softly.assertThat(view.contains(ledgerEntries.get(1).getAID())).isFalse();
+            softly.assertThat(view.contains(ledgerEntries.get(2).getAID())).isFalse();
+            softly.assertThat(scanner.nextAids(2)).isEmpty();
+            softly.assertThat(scanner.isExhausted()).isTrue();
+            softly.assertThat(view.scan(StoreIndex.LedgerIndexType.DUPLICATE, index).nextAids(3)).containsExactly(ledgerEntries.get(0).getAID());
+        });
+    }
+
+    @Test
+    public void storeBatchCommitBatchTest() {
+        SoftAssertions.assertSoftly(softly -> {
+            List<IndexedLedgerEntry> batch = ledgerEntries.stream()
+                .map(ledgerEntry -> IndexedLedgerEntry.of(ledgerEntry, ImmutableSet.of(), ImmutableSet.of()))
+                .collect(Collectors.toList());
+
+            // all atoms in batch stored successfully
+            softly.assertThat(tempoAtomStore.storeBatch(batch)).allMatch(LedgerEntryStoreResult::isSuccess);
+
+            // all atoms in batch are pending
+            List<AID> aids = ledgerEntries.stream().map(LedgerEntry::getAID).collect(Collectors.toList());
+            softly.assertThat(tempoAtomStore.getPending()).containsAll(aids);
+
+            // commit all atoms at once
+            tempoAtomStore.commitBatch(aids);
+
+            // all atoms are committed
+            for (AID aid : aids) {
+                softly.assertThat(tempoAtomStore.getStatus(aid)).isEqualTo(LedgerEntryStatus.COMMITTED);
+            }
+            softly.assertThat(tempoAtomStore.getPending()).doesNotContainAnyElementsOf(aids);
+        });
+    }
+
+    @Test
+    public void storeBatchConflictTest() {
+        SoftAssertions.assertSoftly(softly -> {
+            StoreIndex conflictingIndex = new StoreIndex((byte) 200, Ints.toByteArray(1));
+            List<IndexedLedgerEntry> batch = ImmutableList.of(
+                IndexedLedgerEntry.of(ledgerEntries.get(0), ImmutableSet.of(conflictingIndex), ImmutableSet.of()),
+                IndexedLedgerEntry.of(ledgerEntries.get(1), ImmutableSet.of(conflictingIndex), ImmutableSet.of()),
+                IndexedLedgerEntry.of(ledgerEntries.get(2), ImmutableSet.of(), ImmutableSet.of())
+            );
+
+            List<LedgerEntryStoreResult> results = tempoAtomStore.storeBatch(batch);
+
+            // first atom claims the unique index
+            softly.assertThat(results.get(0).isSuccess()).isTrue();
+
+            // second atom is in conflict with the first atom of the same batch
+            softly.assertThat(results.get(1).isSuccess()).isFalse();
+            softly.assertThat(results.get(1).getConflictInfo().getConflictingAids()).containsExactly(ledgerEntries.get(0).getAID());
+
+            // conflict does not prevent the rest of the batch from being stored
+            softly.assertThat(results.get(2).isSuccess()).isTrue();
+            softly.assertThat(tempoAtomStore.contains(ledgerEntries.get(0).getAID())).isTrue();
+            softly.assertThat(tempoAtomStore.contains(ledgerEntries.get(1).getAID())).isFalse();
+            softly.assertThat(tempoAtomStore.contains(ledgerEntries.get(2).getAID())).isTrue();
+        });
+    }
+
+    @Test
+    public void storeBatchConcurrentConflictTest() {
+        StoreIndex concurrentIndex = new StoreIndex((byte) 200, Ints.toByteArray(2));
+        // a concurrent store writes the unique index without the probe seeing its atom, which happens between probe and write
+        Database uniqueIndices = getDbEnv().getEnvironment().openDatabase(null, "tempo2.unique_indices",
+            new DatabaseConfig().setTransactional(true));
+        try {
+            byte[] concurrentPKey = Bytes.concat(new byte[] { 0b0000_0001 }, Longs.toByteArray(Long.MAX_VALUE));
+            uniqueIndices.put(null, new DatabaseEntry(concurrentIndex.asKey()), new DatabaseEntry(concurrentPKey));
+        } finally {
+            uniqueIndices.close();
+        }
+
+        SoftAssertions.assertSoftly(softly -> {
+            List<IndexedLedgerEntry> batch = ImmutableList.of(
+                IndexedLedgerEntry.of(ledgerEntries.get(0), ImmutableSet.of(), ImmutableSet.of()),
+                IndexedLedgerEntry.of(ledgerEntries.get(1), ImmutableSet.of(concurrentIndex), ImmutableSet.of()),
+                IndexedLedgerEntry.of(ledgerEntries.get(2), ImmutableSet.of(), ImmutableSet.of())
+            );
+
+            List<LedgerEntryStoreResult> results = tempoAtomStore.storeBatch(batch);
+
+            // atom in conflict with the concurrent store is reported as conflict instead of failing the batch
+            softly.assertThat(results).hasSize(3);
+            softly.assertThat(results.get(1).isSuccess()).isFalse();
+
+            // the rest of the batch is stored when retried without it
+            softly.assertThat(results.get(0).isSuccess()).isTrue();
+            softly.assertThat(results.get(2).isSuccess()).isTrue();
+            softly.assertThat(tempoAtomStore.contains(ledgerEntries.get(0).getAID())).isTrue();
+            softly.assertThat(tempoAtomStore.contains(ledgerEntries.get(1).getAID())).isFalse();
+            softly.assertThat(tempoAtomStore.contains(ledgerEntries.get(2).getAID())).isTrue();
+            softly.assertThat(tempoAtomStore.getPending()).containsExactlyInAnyOrder(
+                ledgerEntries.get(0).getAID(),
+                ledgerEntries.get(2).getAID()
+            );
+        });
+    }
+
+    @Test
+    public void storeBatchLockConflictWithAbortedConcurrentStoreTest() throws Exception {
+        StoreIndex concurrentIndex = new StoreIndex((byte) 200, Ints.toByteArray(3));
+        reopenWithStoreLockTimeout(100L);
+        Database uniqueIndices = openUniqueIndices();
+        try {
+            // a concurrent store holds the lock of the unique index until it aborts
+            Transaction concurrentStore = lockUniqueIndex(uniqueIndices, concurrentIndex);
+            CompletableFuture<List<LedgerEntryStoreResult>> batch = CompletableFuture.supplyAsync(() -> tempoAtomStore.storeBatch(ImmutableList.of(
+                IndexedLedgerEntry.of(ledgerEntries.get(0), ImmutableSet.of(), ImmutableSet.of()),
+                IndexedLedgerEntry.of(ledgerEntries.get(1), ImmutableSet.of(concurrentIndex), ImmutableSet.of()),
+                IndexedLedgerEntry.of(ledgerEntries.get(2), ImmutableSet.of(), ImmutableSet.of())
+            )));
+            // long enough for the batch to run into the lock timeout at least once
+            Thread.sleep(500L);
+            concurrentStore.abort();
+            List<LedgerEntryStoreResult> results = batch.get(10, TimeUnit.SECONDS);
+
+            SoftAssertions.assertSoftly(softly -> {
+                // atom is not reported as conflict, as there is no atom it is in conflict with
+                softly.assertThat(results).hasSize(3);
+                softly.assertThat(results).allMatch(LedgerEntryStoreResult::isSuccess);
+                softly.assertThat(tempoAtomStore.getPending()).containsExactlyInAnyOrder(
+                    ledgerEntries.get(0).getAID(),
+                    ledgerEntries.get(1).getAID(),
+                    ledgerEntries.get(2).getAID()
+                );
+            });
+        } finally {
+            uniqueIndices.close();
+        }
+    }
+
+    @Test
+    public void storeBatchLockConflictWithCommittedConcurrentStoreTest() throws Exception {
+        StoreIndex concurrentIndex = new StoreIndex((byte) 200, Ints.toByteArray(4));
+        reopenWithStoreLockTimeout(100L);
+        Database uniqueIndices = openUniqueIndices();
+        try {
+            Transaction lock = lockUniqueIndex(uniqueIndices, concurrentIndex);
+            CompletableFuture<List<LedgerEntryStoreResult>> batch = CompletableFuture.supplyAsync(() -> tempoAtomStore.storeBatch(ImmutableList.of(
+                IndexedLedgerEntry.of(ledgerEntries.get(0), ImmutableSet.of(), ImmutableSet.of()),
+                IndexedLedgerEntry.of(ledgerEntries.get(1), ImmutableSet.of(concurrentIndex), ImmutableSet.of()),
+                IndexedLedgerEntry.of(ledgerEntries.get(2), ImmutableSet.of(), ImmutableSet.of())
+            )));
+            Thread.sleep(500L);
+            lock.abort();
+            // races the retries of the batch for the unique index
+            LedgerEntryStoreResult concurrentResult = tempoAtomStore.store(ledgerEntries.get(3), ImmutableSet.of(concurrentIndex), ImmutableSet.of());
+            List<LedgerEntryStoreResult> results = batch.get(10, TimeUnit.SECONDS);
+
+            SoftAssertions.assertSoftly(softly -> {
+                // exactly one of the stores claims the unique index, the other one is in conflict with its atom
+                softly.assertThat(results.get(1).isSuccess()).isNotEqualTo(concurrentResult.isSuccess());
+                LedgerEntryStoreResult conflict = concurrentResult.isSuccess() ? results.get(1) : concurrentResult;
+                AID claimed = concurrentResult.isSuccess() ? ledgerEntries.get(3).getAID() : ledgerEntries.get(1).getAID();
+                softly.assertThat(conflict.getConflictInfo().getConflictingAids()).containsExactly(claimed);
+
+                softly.assertThat(results.get(0).isSuccess()).isTrue();
+                softly.assertThat(results.get(2).isSuccess()).isTrue();
+            });
+        } finally {
+            uniqueIndices.close();
+        }
+    }
+
+    @Test
+    public void containsAfterReopenTest() {
+        SoftAssertions.assertSoftly(softly -> {
+            //atom added to store successfully
+            softly.assertThat(tempoAtomStore.store(ledgerEntries.get(0), ImmutableSet.of(), ImmutableSet.of()).isSuccess()).isTrue();
+
+            // reopen store, which rebuilds the in-memory AID filter from disk
+            tempoAtomStore.close();
+            tempoAtomStore = new BerkeleyLedgerEntryStore(getLocalSystem().getNID(), serialization, this.getDbEnv(),
+                BerkeleyLedgerEntryStoreConfiguration.fromRuntimeProperties(getProperties()));
+
+            //added atom is still present in store
+            softly.assertThat(tempoAtomStore.contains(ledgerEntries.get(0).getAID())).isTrue();
+            softly.assertThat(tempoAtomStore.get(ledgerEntries.get(0).getAID()).isPresent()).isTrue();
+
+            //not added atom is absent in store
+            softly.assertThat(tempoAtomStore.contains(ledgerEntries.get(1).getAID())).isFalse();
+        });
+    }
+
+    @Test
+    public void pendingAfterReopenTest() {
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(tempoAtomStore.store(ledgerEntries.get(0), ImmutableSet.of(), ImmutableSet.of()).isSuccess()).isTrue();
+            softly.assertThat(tempoAtomStore.store(ledgerEntries.get(1), ImmutableSet.of(), ImmutableSet.of()).isSuccess()).isTrue();
+            tempoAtomStore.commit(ledgerEntries.get(1).getAID());
+
+            // reopen store, which rebuilds the in-memory pending mirror from disk
+            tempoAtomStore.close();
+            tempoAtomStore = new BerkeleyLedgerEntryStore(getLocalSystem().getNID(), serialization, this.getDbEnv(),
+                BerkeleyLedgerEntryStoreConfiguration.fromRuntimeProperties(getProperties()));
+
+            softly.assertThat(tempoAtomStore.getPending()).containsExactly(ledgerEntries.get(0).getAID());
+            softly.assertThat(tempoAtomStore.getStatus(ledgerEntries.get(0).getAID())).isEqualTo(LedgerEntryStatus.PENDING);
+            softly.assertThat(tempoAtomStore.getStatus(ledgerEntries.get(1).getAID())).isEqualTo(LedgerEntryStatus.COMMITTED);
+            softly.assertThat(tempoAtomStore.getStatus(ledgerEntries.get(2).getAID())).isEqualTo(LedgerEntryStatus.UNAVAILABLE);
+        });
+    }
+
+    @Test
+    public void commitGetNextCommittedTest() {
+        SoftAssertions.assertSoftly(softly -> {
+            for (LedgerEntry ledgerEntry : ledgerEntries) {
+                softly.assertThat(tempoAtomStore.store(ledgerEntry, ImmutableSet.of(), ImmutableSet.of()).isSuccess()).isTrue();
+            }
+
+            // commit in reverse order of storing
+            for (int i = ledgerEntries.size() - 1; i >= 0; i--) {
+                tempoAtomStore.commit(ledgerEntries.get(i).getAID());
+            }
+
+            // committed atoms are discovered in commit order with dense logical clocks
+            List<AID> committed = tempoAtomStore.getNextCommitted(0, ledgerEntries.size());
+            softly.assertThat(committed).containsExactly(
+                ledgerEntries.get(4).getAID(),
+                ledgerEntries.get(3).getAID(),
+                ledgerEntries.get(2).getAID(),
+                ledgerEntries.get(1).getAID(),
+                ledgerEntries.get(0).getAID()
+            );
+            softly.assertThat(tempoAtomStore.getNextCommitted(3, ledgerEntries.size())).containsExactly(
+                ledgerEntries.get(1).getAID(),
+                ledgerEntries.get(0).getAID()
+            );
+
+            // committed atoms remain retrievable
+            softly.assertThat(tempoAtomStore.get(ledgerEntries.get(0).getAID())).contains(ledgerEntries.get(0));
+        });
+    }
+
+    @Test
+    public void snapshotRoundTripWithGapTest() throws Exception {
+        // committed logical clocks of migrated legacy commits have gaps
+        long[] logicalClocks = { 1L, 2L, 5L };
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        try (LedgerSnapshot.Writer writer = new LedgerSnapshot.Writer(snapshot)) {
+            for (int i = 0; i < logicalClocks.length; i++) {
+                LedgerEntry ledgerEntry = ledgerEntries.get(i);
+                byte[] indices = LedgerEntryIndices.from(ledgerEntry, ImmutableSet.of(), ImmutableSet.of()).toByteArray();
+                writer.write(new LedgerSnapshot.Record(logicalClocks[i], ledgerEntry.getAID(), serialization.toDson(ledgerEntry, Output.PERSIST), indices));
+            }
+            writer.finish();
+        }
+
+        assertThat(tempoAtomStore.importSnapshot(new ByteArrayInputStream(snapshot.toByteArray()), 2)).isEqualTo(3L);
+
+        // imported atoms keep their committed logical clocks
+        assertThat(tempoAtomStore.getNextCommitted(0, 10)).containsExactly(
+            ledgerEntries.get(0).getAID(),
+            ledgerEntries.get(1).getAID(),
+            ledgerEntries.get(2).getAID()
+        );
+        assertThat(tempoAtomStore.getNextCommitted(2, 10)).containsExactly(ledgerEntries.get(2).getAID());
+        assertThat(tempoAtomStore.get(ledgerEntries.get(2).getAID())).contains(ledgerEntries.get(2));
+
+        // exporting again yields the same logical clocks
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        assertThat(tempoAtomStore.exportSnapshot(exported)).isEqualTo(3L);
+        List<Long> exportedLogicalClocks = new ArrayList<>();
+        try (LedgerSnapshot.Reader reader = new LedgerSnapshot.Reader(new ByteArrayInputStream(exported.toByteArray()))) {
+            Optional<LedgerSnapshot.Record> record = reader.read();
+            while (record.isPresent()) {
+                exportedLogicalClocks.add(record.get().getLogicalClock());
+                record = reader.read();
+            }
+        }
+        assertThat(exportedLogicalClocks).containsExactly(1L, 2L, 5L);
+
+        // later commits continue after the last imported logical clock
+        assertThat(tempoAtomStore.store(ledgerEntries.get(3), ImmutableSet.of(), ImmutableSet.of()).isSuccess()).isTrue();
+        tempoAtomStore.commit(ledgerEntries.get(3).getAID());
+        assertThat(tempoAtomStore.getNextCommitted(5, 10)).containsExactly(ledgerEntries.get(3).getAID());
+    }
+
     @Test
     public void searchDuplicateExactTest() {
         storeAndCommitAtoms();
@@ -214,6 +553,31 @@ public class BerkeleyRadixLedgerEntryStoreTests extends RadixTestWithStores {
         });
     }
 
+    private void reopenWithStoreLockTimeout(long storeLockTimeout) {
+        tempoAtomStore.close();
+        getProperties().set("db.ledger.store.lock_timeout", storeLockTimeout);
+        try {
+            tempoAtomStore = new BerkeleyLedgerEntryStore(getLocalSystem().getNID(), serialization, this.getDbEnv(),
+                BerkeleyLedgerEntryStoreConfiguration.fromRuntimeProperties(getProperties()));
+        } finally {
+            getProperties().set("db.ledger.store.lock_timeout", 0L);
+        }
+    }
+
+    private Database openUniqueIndices() {
+        return getDbEnv().getEnvironment().openDatabase(null, "tempo2.unique_indices", new DatabaseConfig().setTransactional(true));
+    }
+
+    /**
+     * Writes the unique index in a transaction that is left open, so that it holds the lock of the index
+     */
+    private Transaction lockUniqueIndex(Database uniqueIndices, StoreIndex uniqueIndex) {
+        Transaction transaction = getDbEnv().getEnvironment().beginTransaction(null, null);
+        byte[] pKey = Bytes.concat(new byte[] { 0b0000_0001 }, Longs.toByteArray(Long.MAX_VALUE - 1));
+        uniqueIndices.put(transaction, new DatabaseEntry(uniqueIndex.asKey()), new DatabaseEntry(pKey));
+        return transaction;
+    }
+
     /**
      * Method for storing and committing atoms in atomStore with sharding
      * Atoms are committed because some tests rely on them being ordered, which is currently only guaranteed for committed atoms
@@ -0,0 +1,155 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Bytes;
+import com.radixdlt.common.AID;
+import com.radixdlt.consensus.tempo.LedgerEntryGenerator;
+import com.radixdlt.crypto.ECKeyPair;
+import com.radixdlt.serialization.DsonOutput.Output;
+import com.radixdlt.serialization.Serialization;
+import com.radixdlt.store.LedgerEntry;
+import com.radixdlt.store.StoreIndex;
+import com.radixdlt.utils.Longs;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.OperationStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.radix.integration.RadixTestWithStores;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.radixdlt.store.berkeley.LedgerEntryIndices.ENTRY_INDEX_PREFIX;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LedgerIntegrityVerifierTests extends RadixTestWithStores {
+    private static final long TIME_BUDGET = 60_000L;
+
+    private Serialization serialization = Serialization.getDefault();
+    private BerkeleyLedgerEntryStore ledgerStore;
+    private List<LedgerEntry> ledgerEntries;
+
+    @Before
+    public void setup() throws Exception {
+        ledgerStore = new BerkeleyLedgerEntryStore(getLocalSystem().getNID(), serialization, this.getDbEnv(),
+            BerkeleyLedgerEntryStoreConfiguration.fromRuntimeProperties(getProperties()));
+        ledgerEntries = new LedgerEntryGenerator().createLedgerEntries(new ECKeyPair(), 3);
+    }
+
+    @After
+    public void teardown() {
+        if (ledgerStore != null) {
+            ledgerStore.close();
+        }
+    }
+
+    @Test
+    public void consistent_store_has_no_errors() {
+        storeAndCommitFirst();
+
+        LedgerIntegrityVerifier.Report report = ledgerStore.verifyIntegrity(2, TIME_BUDGET);
+
+        assertThat(report.getErrors()).isEmpty();
+        assertThat(report.getErrorCount()).isZero();
+        assertThat(report.isComplete()).isTrue();
+        assertThat(report.getPrimaries()).isEqualTo(2L);
+        // one pending and one committed marker
+        assertThat(report.getMarkers()).isEqualTo(2L);
+    }
+
+    @Test
+    public void missing_entry_index_is_reported() {
+        storeAndCommitFirst();
+        AID aid = ledgerEntries.get(0).getAID();
+
+        withUniqueIndices(uniqueIndices -> assertThat(
+            uniqueIndices.delete(null, new DatabaseEntry(StoreIndex.from(ENTRY_INDEX_PREFIX, aid.getBytes())))
+        ).isEqualTo(OperationStatus.SUCCESS));
+
+        LedgerIntegrityVerifier.Report report = ledgerStore.verifyIntegrity(2, TIME_BUDGET);
+
+        assertThat(report.getErrorCount()).isGreaterThan(0L);
+        assertThat(report.getErrors()).anyMatch(error -> error.contains("index") && error.contains(aid.toString()) && error.contains("missing"));
+        assertThat(report.getErrors()).anyMatch(error -> error.equals("Committed atom '" + aid + "' is missing"));
+    }
+
+    @Test
+    public void index_of_missing_atom_is_reported() {
+        storeAndCommitFirst();
+        AID missing = ledgerEntries.get(2).getAID();
+        byte[] missingPKey = Bytes.concat(new byte[] { 0b0000_0001 }, Longs.toByteArray(Long.MAX_VALUE), missing.getBytes());
+
+        withUniqueIndices(uniqueIndices -> assertThat(
+            uniqueIndices.put(null, new DatabaseEntry(new StoreIndex((byte) 200, missing.getBytes()).asKey()), new DatabaseEntry(missingPKey))
+        ).isEqualTo(OperationStatus.SUCCESS));
+
+        LedgerIntegrityVerifier.Report report = ledgerStore.verifyIntegrity(2, TIME_BUDGET);
+
+        assertThat(report.getErrorCount()).isEqualTo(1L);
+        assertThat(report.getErrors()).hasSize(1);
+        assertThat(report.getErrors().get(0)).contains("points to missing atom '" + missing + "'");
+    }
+
+    @Test
+    public void gaps_in_committed_logical_clocks_are_not_errors() throws Exception {
+        // committed logical clocks of migrated legacy commits have gaps
+        long[] logicalClocks = { 2L, 7L };
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        try (LedgerSnapshot.Writer writer = new LedgerSnapshot.Writer(snapshot)) {
+            for (int i = 0; i < logicalClocks.length; i++) {
+                LedgerEntry ledgerEntry = ledgerEntries.get(i);
+                byte[] indices = LedgerEntryIndices.from(ledgerEntry, ImmutableSet.of(), ImmutableSet.of()).toByteArray();
+                writer.write(new LedgerSnapshot.Record(logicalClocks[i], ledgerEntry.getAID(), serialization.toDson(ledgerEntry, Output.PERSIST), indices));
+            }
+            writer.finish();
+        }
+        ledgerStore.importSnapshot(new ByteArrayInputStream(snapshot.toByteArray()), 10);
+
+        LedgerIntegrityVerifier.Report report = ledgerStore.verifyIntegrity(2, TIME_BUDGET);
+
+        assertThat(report.getErrors()).isEmpty();
+        assertThat(report.getMarkers()).isEqualTo(2L);
+    }
+
+    private void storeAndCommitFirst() {
+        assertThat(ledgerStore.store(ledgerEntries.get(0), ImmutableSet.of(), ImmutableSet.of()).isSuccess()).isTrue();
+        assertThat(ledgerStore.store(ledgerEntries.get(1), ImmutableSet.of(), ImmutableSet.of()).isSuccess()).isTrue();
+        ledgerStore.commit(ledgerEntries.get(0).getAID());
+    }
+
+    /**
+     * Modifies the unique indices database directly, bypassing the store.
+     */
+    private void withUniqueIndices(Consumer<Database> modification) {
+        Database uniqueIndices = getDbEnv().getEnvironment().openDatabase(null, "tempo2.unique_indices",
+            new DatabaseConfig().setTransactional(true));
+        try {
+            modification.accept(uniqueIndices);
+        } finally {
+            // databases can only be truncated on reset without other open handles
+            uniqueIndices.close();
+        }
+    }
+}
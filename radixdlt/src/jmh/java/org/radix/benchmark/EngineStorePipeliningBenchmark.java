@@ -0,0 +1,93 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package org.radix.benchmark;
+
+import com.radixdlt.common.Atom;
+import com.radixdlt.middleware2.converters.AtomToBinaryConverter;
+import com.radixdlt.middleware2.store.EngineAtomIndicesCache;
+import com.radixdlt.middleware2.store.LedgerEngineStore;
+import com.radixdlt.serialization.Serialization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JMH driven benchmarks of storing atoms from several worker threads that are validated one at a time,
+ * as done by {@code RadixEngineAtomProcessor}. Validation by the engine is simulated by consuming CPU under
+ * a shared lock. Either the ledger write is done under that lock as well, or it is deferred until after the
+ * lock is released with {@link LedgerEngineStore#deferWrites(Runnable)}, so that writes of atoms validated
+ * at about the same time are grouped into shared transactions. Validation is serialised in both.
+ * <p>
+ * See {@link CodecBenchmark} for how to run these benchmarks using gradle.
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class EngineStorePipeliningBenchmark {
+	@Param({"1000", "100000"})
+	private long validationTokens;
+
+	private final Object engineLock = new Object();
+	private final AtomicLong nextTimestamp = new AtomicLong();
+	private LedgerEngineStore engineStore;
+
+	@Setup(Level.Trial)
+	public void setup(LedgerEntryStoreState storeState) {
+		Serialization serialization = Serialization.getDefault();
+		this.engineStore = new LedgerEngineStore(
+			storeState.getStore(),
+			new AtomToBinaryConverter(serialization),
+			new EngineAtomIndicesCache(serialization),
+			defaultValue -> defaultValue
+		);
+	}
+
+	private Atom nextAtom() {
+		// atoms differing in timestamp only, so that each has its own aid
+		return new Atom(this.nextTimestamp.incrementAndGet());
+	}
+
+	private void validateAndStore(Atom atom) {
+		Blackhole.consumeCPU(this.validationTokens);
+		this.engineStore.storeAtom(atom);
+	}
+
+	@Benchmark
+	public void storeUnderEngineLockTest() {
+		Atom atom = nextAtom();
+		synchronized (this.engineLock) {
+			validateAndStore(atom);
+		}
+	}
+
+	@Benchmark
+	public void storeDeferredUntilAfterEngineLockTest() {
+		Atom atom = nextAtom();
+		final LedgerEngineStore.DeferredWrites writes;
+		synchronized (this.engineLock) {
+			writes = this.engineStore.deferWrites(() -> validateAndStore(atom));
+		}
+		writes.await();
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package org.radix.benchmark;
+
+import com.google.common.collect.ImmutableSet;
+import com.radixdlt.common.AID;
+import com.radixdlt.store.IndexedLedgerEntry;
+import com.radixdlt.store.LedgerEntry;
+import com.radixdlt.store.LedgerSearchMode;
+import com.radixdlt.store.SearchCursor;
+import com.radixdlt.store.StoreIndex;
+import com.radixdlt.store.berkeley.BerkeleyLedgerEntryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * JMH driven benchmarks for the main operations of {@link BerkeleyLedgerEntryStore}, against a
+ * store in a temporary database environment that is preloaded with committed entries.
+ * Each entry has {@code indexCount} unique indices and {@code indexCount} duplicate indices,
+ * where each duplicate index is shared by {@value #DUPLICATE_GROUP_SIZE} entries.
+ * The entry cache is disabled so that reads go to the database.
+ * <p>
+ * See {@link CodecBenchmark} for how to run these benchmarks using gradle.
+ */
+@State(Scope.Benchmark)
+public class LedgerEntryStoreBenchmark {
+	private static final int PRELOADED_ENTRIES = 20_000;
+	private static final int PRELOAD_BATCH_SIZE = 1_000;
+	private static final int DUPLICATE_GROUP_SIZE = 100;
+	private static final int CONTENTS = 64;
+	private static final int COMMITTED_PAGE_SIZE = 64;
+
+	private static final byte UNIQUE_PREFIX = 7; // benchmark values with no special significance
+	private static final byte DUPLICATE_PREFIX = 8;
+
+	@Param({"1", "8"})
+	private int indexCount;
+
+	@Param({"256", "4096"})
+	private int entrySize;
+
+	private BerkeleyLedgerEntryStore store;
+
+	private Random random;
+	private List<byte[]> contents;
+	private List<AID> preloadedAids;
+	private List<StoreIndex> preloadedUniqueIndices;
+	private int nextEntry;
+	private AID replaceableAid;
+
+	@Setup(Level.Trial)
+	public void setup(LedgerEntryStoreState storeState) {
+		this.store = storeState.getStore();
+
+		this.random = new Random(42);
+		this.contents = new ArrayList<>(CONTENTS);
+		for (int i = 0; i < CONTENTS; i++) {
+			byte[] content = new byte[this.entrySize];
+			this.random.nextBytes(content);
+			this.contents.add(content);
+		}
+
+		this.preloadedAids = new ArrayList<>(PRELOADED_ENTRIES);
+		this.preloadedUniqueIndices = new ArrayList<>(PRELOADED_ENTRIES);
+		List<IndexedLedgerEntry> batch = new ArrayList<>(PRELOAD_BATCH_SIZE);
+		while (this.preloadedAids.size() < PRELOADED_ENTRIES) {
+			IndexedLedgerEntry indexedEntry = nextIndexedEntry();
+			this.preloadedAids.add(indexedEntry.getLedgerEntry().getAID());
+			this.preloadedUniqueIndices.add(indexedEntry.getUniqueIndices().iterator().next());
+			batch.add(indexedEntry);
+			if (batch.size() == PRELOAD_BATCH_SIZE) {
+				this.store.storeBatch(batch);
+				this.store.commitBatch(batch.stream()
+					.map(entry -> entry.getLedgerEntry().getAID())
+					.collect(Collectors.toList()));
+				batch.clear();
+			}
+		}
+
+		IndexedLedgerEntry replaceable = nextIndexedEntry();
+		store(replaceable);
+		this.replaceableAid = replaceable.getLedgerEntry().getAID();
+	}
+
+	private IndexedLedgerEntry nextIndexedEntry() {
+		int entry = this.nextEntry++;
+		byte[] aidBytes = new byte[AID.BYTES];
+		this.random.nextBytes(aidBytes);
+		AID aid = AID.from(aidBytes);
+
+		ImmutableSet.Builder<StoreIndex> uniqueIndices = ImmutableSet.builder();
+		ImmutableSet.Builder<StoreIndex> duplicateIndices = ImmutableSet.builder();
+		for (int i = 0; i < this.indexCount; i++) {
+			byte[] uniqueIdentifier = ByteBuffer.allocate(Integer.BYTES + AID.BYTES).putInt(i).put(aidBytes).array();
+			uniqueIndices.add(new StoreIndex(UNIQUE_PREFIX, uniqueIdentifier));
+			duplicateIndices.add(duplicateIndex(i, entry / DUPLICATE_GROUP_SIZE));
+		}
+
+		LedgerEntry ledgerEntry = new LedgerEntry(this.contents.get(entry % CONTENTS), aid);
+		return IndexedLedgerEntry.of(ledgerEntry, uniqueIndices.build(), duplicateIndices.build());
+	}
+
+	private static StoreIndex duplicateIndex(int index, int group) {
+		byte[] identifier = ByteBuffer.allocate(Integer.BYTES * 2).putInt(index).putInt(group).array();
+		return new StoreIndex(DUPLICATE_PREFIX, identifier);
+	}
+
+	private void store(IndexedLedgerEntry indexedEntry) {
+		if (!this.store.store(indexedEntry.getLedgerEntry(), indexedEntry.getUniqueIndices(), indexedEntry.getDuplicateIndices()).isSuccess()) {
+			throw new IllegalStateException("Store of " + indexedEntry.getLedgerEntry().getAID() + " failed");
+		}
+	}
+
+	private int randomPreloaded() {
+		return this.random.nextInt(PRELOADED_ENTRIES);
+	}
+
+	@Benchmark
+	public void storeTest() {
+		store(nextIndexedEntry());
+	}
+
+	@Benchmark
+	public void storeAndCommitTest() {
+		IndexedLedgerEntry indexedEntry = nextIndexedEntry();
+		store(indexedEntry);
+		this.store.commit(indexedEntry.getLedgerEntry().getAID());
+	}
+
+	@Benchmark
+	public void replaceTest() {
+		IndexedLedgerEntry replacement = nextIndexedEntry();
+		LedgerEntry ledgerEntry = replacement.getLedgerEntry();
+		if (!this.store.replace(ImmutableSet.of(this.replaceableAid), ledgerEntry,
+				replacement.getUniqueIndices(), replacement.getDuplicateIndices()).isSuccess()) {
+			throw new IllegalStateException("Replace of " + this.replaceableAid + " failed");
+		}
+		this.replaceableAid = ledgerEntry.getAID();
+	}
+
+	@Benchmark
+	public void getTest(Blackhole bh) {
+		bh.consume(this.store.get(this.preloadedAids.get(randomPreloaded())));
+	}
+
+	@Benchmark
+	public void containsTest(Blackhole bh) {
+		bh.consume(this.store.contains(this.preloadedAids.get(randomPreloaded())));
+	}
+
+	@Benchmark
+	public void searchUniqueTest(Blackhole bh) {
+		StoreIndex index = this.preloadedUniqueIndices.get(randomPreloaded());
+		bh.consume(this.store.search(StoreIndex.LedgerIndexType.UNIQUE, index, LedgerSearchMode.EXACT).get());
+	}
+
+	@Benchmark
+	public void searchDuplicateAndIterateTest(Blackhole bh) {
+		StoreIndex index = duplicateIndex(0, randomPreloaded() / DUPLICATE_GROUP_SIZE);
+		SearchCursor cursor = this.store.search(StoreIndex.LedgerIndexType.DUPLICATE, index, LedgerSearchMode.EXACT);
+		while (cursor != null) {
+			bh.consume(cursor.get());
+			cursor = cursor.next();
+		}
+	}
+
+	@Benchmark
+	public void getNextCommittedTest(Blackhole bh) {
+		bh.consume(this.store.getNextCommitted(randomPreloaded() - COMMITTED_PAGE_SIZE, COMMITTED_PAGE_SIZE));
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package org.radix.benchmark;
+
+import com.google.common.collect.ImmutableSet;
+import com.radixdlt.common.AID;
+import com.radixdlt.store.IndexedLedgerEntry;
+import com.radixdlt.store.LedgerEntry;
+import com.radixdlt.store.berkeley.BerkeleyLedgerEntryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * JMH driven benchmarks comparing retrieval of ledger entries in bulk with
+ * {@link BerkeleyLedgerEntryStore#getAll(java.util.Collection)} against retrieval
+ * one by one with {@link BerkeleyLedgerEntryStore#get(AID)}, as done when serving
+ * delivery requests.  The entry cache is disabled so that both go to the database.
+ * <p>
+ * See {@link CodecBenchmark} for how to run these benchmarks using gradle.
+ */
+@State(Scope.Benchmark)
+public class LedgerEntryStoreGetBenchmark {
+	private static final int STORED_ENTRIES = 100_000;
+	private static final int STORE_BATCH_SIZE = 1_000;
+	private static final int CONTENT_SIZE = 1_024;
+	private static final int REQUESTS = 1_024;
+
+	@Param({"16", "256"})
+	private int requestSize;
+
+	private BerkeleyLedgerEntryStore store;
+
+	private List<List<AID>> requests;
+	private int nextRequest;
+
+	@Setup(Level.Trial)
+	public void setup(LedgerEntryStoreState storeState) {
+		this.store = storeState.getStore();
+
+		Random random = new Random(42);
+		List<AID> storedAids = new ArrayList<>(STORED_ENTRIES);
+		List<IndexedLedgerEntry> batch = new ArrayList<>(STORE_BATCH_SIZE);
+		for (int i = 0; i < STORED_ENTRIES; i++) {
+			byte[] content = new byte[CONTENT_SIZE];
+			random.nextBytes(content);
+			byte[] aidBytes = new byte[AID.BYTES];
+			random.nextBytes(aidBytes);
+			AID aid = AID.from(aidBytes);
+
+			storedAids.add(aid);
+			batch.add(IndexedLedgerEntry.of(new LedgerEntry(content, aid), ImmutableSet.of(), ImmutableSet.of()));
+			if (batch.size() == STORE_BATCH_SIZE) {
+				this.store.storeBatch(batch);
+				batch.clear();
+			}
+		}
+
+		this.requests = new ArrayList<>(REQUESTS);
+		for (int i = 0; i < REQUESTS; i++) {
+			List<AID> request = new ArrayList<>(this.requestSize);
+			for (int j = 0; j < this.requestSize; j++) {
+				request.add(storedAids.get(random.nextInt(storedAids.size())));
+			}
+			this.requests.add(request);
+		}
+	}
+
+	private List<AID> nextRequest() {
+		List<AID> request = this.requests.get(this.nextRequest);
+		this.nextRequest = (this.nextRequest + 1) % REQUESTS;
+		return request;
+	}
+
+	@Benchmark
+	public void getLoopTest(Blackhole bh) {
+		for (AID aid : nextRequest()) {
+			bh.consume(this.store.get(aid));
+		}
+	}
+
+	@Benchmark
+	public void getAllTest(Blackhole bh) {
+		bh.consume(this.store.getAll(nextRequest()));
+	}
+}
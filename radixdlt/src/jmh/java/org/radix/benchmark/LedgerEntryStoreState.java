@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package org.radix.benchmark;
+
+import com.radixdlt.TestSetupUtils;
+import com.radixdlt.common.EUID;
+import com.radixdlt.serialization.Serialization;
+import com.radixdlt.store.berkeley.BerkeleyLedgerEntryStore;
+import com.radixdlt.store.berkeley.BerkeleyLedgerEntryStoreConfiguration;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.radix.database.DatabaseEnvironment;
+import org.radix.logging.Logging;
+import org.radix.properties.RuntimeProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * JMH state holding an empty {@link BerkeleyLedgerEntryStore} in a temporary database environment,
+ * which is deleted after the trial. The entry cache is disabled so that reads go to the database.
+ * Benchmarks get the store by taking this state as a parameter of their setup.
+ */
+@State(Scope.Benchmark)
+public class LedgerEntryStoreState {
+	private Path dbLocation;
+	private DatabaseEnvironment dbEnv;
+	private BerkeleyLedgerEntryStore store;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		Logging.getLogger().setLevels(Logging.ALL & ~Logging.INFO & ~Logging.TRACE & ~Logging.DEBUG);
+		TestSetupUtils.installBouncyCastleProvider();
+
+		this.dbLocation = Files.createTempDirectory("ledger-benchmark");
+		RuntimeProperties properties = new RuntimeProperties(new JSONObject(), new String[0]);
+		properties.set("db.location", this.dbLocation.toString());
+		properties.set("db.ledger.entry_cache_max_bytes", 0L);
+
+		this.dbEnv = new DatabaseEnvironment(properties);
+		this.store = new BerkeleyLedgerEntryStore(
+			EUID.ZERO,
+			Serialization.getDefault(),
+			this.dbEnv,
+			BerkeleyLedgerEntryStoreConfiguration.fromRuntimeProperties(properties)
+		);
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() throws IOException {
+		this.store.close();
+		this.dbEnv.stop();
+		try (Stream<Path> files = Files.walk(this.dbLocation)) {
+			files.sorted(Comparator.reverseOrder())
+				.map(Path::toFile)
+				.forEach(File::delete);
+		}
+	}
+
+	public BerkeleyLedgerEntryStore getStore() {
+		return this.store;
+	}
+}
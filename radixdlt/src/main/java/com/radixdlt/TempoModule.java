@@ -30,9 +30,13 @@ import com.radixdlt.consensus.tempo.WallclockTimeSupplier;
 import com.radixdlt.engine.RadixEngine;
 import com.radixdlt.middleware2.converters.AtomToBinaryConverter;
 import com.radixdlt.middleware2.processing.RadixEngineAtomProcessor;
+import com.radixdlt.middleware2.processing.RadixEngineAtomProcessorConfiguration;
+import com.radixdlt.middleware2.store.EngineAtomIndicesCache;
+import com.radixdlt.middleware2.store.LedgerEngineStore;
 import com.radixdlt.serialization.Serialization;
 import com.radixdlt.store.LedgerEntryStore;
 
+import org.radix.properties.RuntimeProperties;
 import org.radix.time.Time;
 
 // FIXME: static dependency on Time
@@ -54,10 +58,22 @@ public class TempoModule extends AbstractModule {
 		Consensus consensus,
 		LedgerEntryStore store,
 		RadixEngine radixEngine,
+		LedgerEngineStore engineStore,
 		Serialization serialization,
-		AtomToBinaryConverter atomToBinaryConverter
+		AtomToBinaryConverter atomToBinaryConverter,
+		EngineAtomIndicesCache indicesCache,
+		RuntimeProperties properties
 	) {
-		return new RadixEngineAtomProcessor(consensus, store, radixEngine, serialization, atomToBinaryConverter);
+		return new RadixEngineAtomProcessor(
+			consensus,
+			store,
+			radixEngine,
+			engineStore,
+			serialization,
+			atomToBinaryConverter,
+			indicesCache,
+			RadixEngineAtomProcessorConfiguration.fromRuntimeProperties(properties)
+		);
 	}
 
 }
@@ -17,6 +17,10 @@
 
 package com.radixdlt.consensus;
 
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
 /**
  * An instance of a consensus protocol which may be a participant in a network of nodes.
  * TODO this has been gutted and is now a temporary intermediate for consensus events
@@ -28,4 +32,16 @@ public interface Consensus {
 	 * @return The consensus observation
 	 */
 	ConsensusObservation observe() throws InterruptedException;
+
+	/**
+	 * Observes consensus in batches, blocking until an observation becomes available and
+	 * then waiting up to a certain time for more observations to fill the batch.
+	 *
+	 * @param maxObservations The maximum number of observations
+	 * @param maxWaitMillis The maximum time to wait for more observations once one is available
+	 * @return The consensus observations, at least one
+	 */
+	default List<ConsensusObservation> observe(int maxObservations, long maxWaitMillis) throws InterruptedException {
+		return ImmutableList.of(observe());
+	}
 }
@@ -24,4 +24,11 @@ import com.radixdlt.store.LedgerEntry;
  */
 public interface Application {
 	LedgerEntry takeNextEntry() throws InterruptedException;
+
+	/**
+	 * Returns an entry that was taken but will not be committed, so that it is taken again.
+	 *
+	 * @param entry The entry taken with {@link #takeNextEntry()}
+	 */
+	void returnEntry(LedgerEntry entry);
 }
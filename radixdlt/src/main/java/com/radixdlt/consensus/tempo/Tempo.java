@@ -17,11 +17,13 @@
 
 package com.radixdlt.consensus.tempo;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 import com.radixdlt.common.AID;
 import com.radixdlt.consensus.Consensus;
 import com.radixdlt.consensus.ConsensusObservation;
+import com.radixdlt.delivery.DeliveryResult;
 import com.radixdlt.delivery.LazyRequestDeliverer;
 import com.radixdlt.discovery.AtomDiscoverer;
 import com.radixdlt.store.LedgerEntry;
@@ -29,23 +31,44 @@ import org.radix.logging.Logger;
 import org.radix.logging.Logging;
 import org.radix.network2.addressbook.Peer;
 import org.radix.utils.SimpleThreadPool;
+import org.radix.utils.SystemMetaData;
 
 import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The Tempo implementation of a ledger.
  */
 public final class Tempo implements Consensus, Closeable {
 	private static final Logger log = Logging.getLogger("tempo");
-	private static final int INBOUND_QUEUE_CAPACITY = 16384;
+	static final int INBOUND_QUEUE_CAPACITY = 16384;
+	// discovered aids are requested in batches of at most this many
+	private static final int DISCOVERY_BATCH_SIZE = 256;
 
+	private final Application application;
 	private final LazyRequestDeliverer requestDeliverer;
 
 	private final BlockingQueue<ConsensusObservation> consensusObservations;
+	// free slots in the observations queue, reserved by producers before producing so that they wait instead of failing
+	private final Semaphore inboundCapacity = new Semaphore(INBOUND_QUEUE_CAPACITY);
+	private final AtomicInteger inboundHighWaterMark = new AtomicInteger();
+	// discovered aids waiting for inbound capacity, guarded by itself
+	private final Deque<PendingDiscovery> pendingDiscoveries = new ArrayDeque<>();
+	private final AtomicInteger pendingDiscoveredAids = new AtomicInteger();
+	// requests to drain the pending discoveries, only the thread raising this from zero drains
+	private final AtomicInteger drainRequests = new AtomicInteger();
 	private final SimpleThreadPool<LedgerEntry> consensusThreadPool;
 
 	@Inject
@@ -54,7 +77,7 @@ public final class Tempo implements Consensus, Closeable {
 		Set<AtomDiscoverer> atomDiscoverers,
 		LazyRequestDeliverer requestDeliverer
 	) {
-		Objects.requireNonNull(application);
+		this.application = Objects.requireNonNull(application);
 		Objects.requireNonNull(atomDiscoverers);
 		this.requestDeliverer = Objects.requireNonNull(requestDeliverer);
 
@@ -70,28 +93,183 @@ public final class Tempo implements Consensus, Closeable {
 	}
 
 	private void doConsensus(LedgerEntry entry) {
+		try {
+			// waits for the application to catch up before taking on more entries
+			reserveInboundCapacity(1);
+		} catch (InterruptedException e) {
+			log.warn("Interrupted while waiting for inbound capacity, returning entry '" + entry.getAID() + "'");
+			// the entry is taken again rather than holding on to application resources
+			this.application.returnEntry(entry);
+			// Re-interrupt, as we are not directly dealing with this.
+			Thread.currentThread().interrupt();
+			return;
+		}
 		// stupid simple "consensus", just immediately commit anything we get our hands on
-		this.consensusObservations.add(ConsensusObservation.commit(entry));
+		injectObservation(ConsensusObservation.commit(entry));
 	}
 
 	@Override
 	public ConsensusObservation observe() throws InterruptedException {
-		return this.consensusObservations.take();
+		ConsensusObservation observation = this.consensusObservations.take();
+		releaseInboundCapacity(1);
+		return observation;
+	}
+
+	@Override
+	public List<ConsensusObservation> observe(int maxObservations, long maxWaitMillis) throws InterruptedException {
+		if (maxObservations <= 0) {
+			throw new IllegalArgumentException("maxObservations must be positive: " + maxObservations);
+		}
+
+		List<ConsensusObservation> observations = new ArrayList<>(maxObservations);
+		observations.add(this.consensusObservations.take());
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+		try {
+			while (observations.size() < maxObservations) {
+				if (this.consensusObservations.drainTo(observations, maxObservations - observations.size()) > 0) {
+					continue;
+				}
+				long remainingNanos = deadline - System.nanoTime();
+				if (remainingNanos <= 0) {
+					break;
+				}
+				ConsensusObservation observation = this.consensusObservations.poll(remainingNanos, TimeUnit.NANOSECONDS);
+				if (observation == null) {
+					break;
+				}
+				observations.add(observation);
+			}
+		} catch (InterruptedException e) {
+			// the observations taken so far are returned rather than lost
+			Thread.currentThread().interrupt();
+		}
+		releaseInboundCapacity(observations.size());
+		return observations;
 	}
 
+	/**
+	 * Parks discovered aids until there is room for them in the observations queue.
+	 * This is called on the thread receiving messages, which also receives the deliveries that make room,
+	 * so it must not wait. The discoverer has already moved past these aids, so none of them may be dropped.
+	 */
 	private void onDiscovered(Set<AID> aids, Peer peer) {
-		requestDeliverer.deliver(aids, ImmutableSet.of(peer)).forEach((aid, future) -> future.thenAccept(result -> {
-			if (result.isSuccess()) {
+		if (aids.isEmpty()) {
+			return;
+		}
+		synchronized (this.pendingDiscoveries) {
+			this.pendingDiscoveries.add(new PendingDiscovery(ImmutableList.copyOf(aids), peer));
+		}
+		int pending = this.pendingDiscoveredAids.addAndGet(aids.size());
+		SystemMetaData.ifPresent(a -> a.put("tempo.inbound.discovery_pending", pending));
+		drainPendingDiscoveries();
+	}
+
+	/**
+	 * Requests delivery of as many pending discovered aids as there is room for.
+	 * Called whenever capacity is released, concurrent calls are coalesced into the one already draining.
+	 */
+	private void drainPendingDiscoveries() {
+		if (this.drainRequests.getAndIncrement() != 0) {
+			return;
+		}
+		int requests = 1;
+		do {
+			drainPendingDiscoveriesOnce();
+			requests = this.drainRequests.addAndGet(-requests);
+		} while (requests != 0);
+	}
+
+	private void drainPendingDiscoveriesOnce() {
+		while (true) {
+			List<AID> batch;
+			Peer peer;
+			synchronized (this.pendingDiscoveries) {
+				PendingDiscovery pending = this.pendingDiscoveries.peek();
+				if (pending == null) {
+					return;
+				}
+				// every delivered atom needs a slot
+				int slots = tryReserveInboundCapacity(Math.min(pending.remaining(), DISCOVERY_BATCH_SIZE));
+				if (slots == 0) {
+					return;
+				}
+				batch = pending.take(slots);
+				peer = pending.peer;
+				if (pending.remaining() == 0) {
+					this.pendingDiscoveries.poll();
+				}
+			}
+			int remaining = this.pendingDiscoveredAids.addAndGet(-batch.size());
+			SystemMetaData.ifPresent(a -> a.put("tempo.inbound.discovery_pending", remaining));
+			requestDelivery(batch, peer);
+		}
+	}
+
+	private void requestDelivery(List<AID> aids, Peer peer) {
+		Map<AID, CompletableFuture<DeliveryResult>> deliveries = requestDeliverer.deliver(ImmutableSet.copyOf(aids), ImmutableSet.of(peer));
+		releaseInboundCapacity(aids.size() - deliveries.size());
+		deliveries.forEach((aid, future) -> future.whenComplete((result, e) -> {
+			if (e == null && result.isSuccess()) {
 				injectObservation(ConsensusObservation.commit(result.getLedgerEntry()));
+			} else {
+				releaseInboundCapacity(1);
 			}
 		}));
 	}
 
+	/**
+	 * Reserves up to the given number of slots in the observations queue without waiting.
+	 *
+	 * @return The number of slots reserved
+	 */
+	private int tryReserveInboundCapacity(int maxSlots) {
+		while (true) {
+			int slots = Math.min(this.inboundCapacity.availablePermits(), maxSlots);
+			if (slots <= 0) {
+				return 0;
+			}
+			// fails if another producer reserved slots in the meantime
+			if (this.inboundCapacity.tryAcquire(slots)) {
+				return slots;
+			}
+		}
+	}
+
+	private void releaseInboundCapacity(int slots) {
+		if (slots > 0) {
+			this.inboundCapacity.release(slots);
+			drainPendingDiscoveries();
+		}
+	}
+
+	/**
+	 * Reserves slots in the observations queue, waiting for the application to take observations if necessary.
+	 */
+	private void reserveInboundCapacity(int slots) throws InterruptedException {
+		if (this.inboundCapacity.tryAcquire(slots)) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		this.inboundCapacity.acquire(slots);
+		long stallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		SystemMetaData.ifPresent(a -> {
+			a.increment("tempo.inbound.stalls");
+			a.increment("tempo.inbound.stall_time", stallMillis);
+		});
+	}
+
+	/**
+	 * Adds an observation to the queue, for which a slot must have been reserved.
+	 */
 	private void injectObservation(ConsensusObservation observation) {
-		if (!this.consensusObservations.add(observation)) {
-			// TODO more graceful queue full handling
-			log.error("Atom observations queue full");
+		this.consensusObservations.add(observation);
+		int depth = this.consensusObservations.size();
+		int previousHighWaterMark = this.inboundHighWaterMark.getAndAccumulate(depth, Math::max);
+		if (depth > previousHighWaterMark) {
+			SystemMetaData.ifPresent(a -> a.put("tempo.inbound.high_water_mark", depth));
 		}
+		SystemMetaData.ifPresent(a -> a.put("tempo.inbound.depth", depth));
 	}
 
 	@Override
@@ -99,4 +277,28 @@ public final class Tempo implements Consensus, Closeable {
 		this.requestDeliverer.close();
 		this.consensusThreadPool.stop();
 	}
+
+	/**
+	 * Discovered aids of which delivery has not been requested yet.
+	 */
+	private static final class PendingDiscovery {
+		private final List<AID> aids;
+		private final Peer peer;
+		private int next;
+
+		private PendingDiscovery(List<AID> aids, Peer peer) {
+			this.aids = aids;
+			this.peer = peer;
+		}
+
+		private int remaining() {
+			return this.aids.size() - this.next;
+		}
+
+		private List<AID> take(int count) {
+			List<AID> taken = this.aids.subList(this.next, this.next + count);
+			this.next += count;
+			return taken;
+		}
+	}
 }
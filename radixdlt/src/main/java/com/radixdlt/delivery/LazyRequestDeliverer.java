@@ -44,7 +44,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -107,10 +106,7 @@ public final class LazyRequestDeliverer {
 				request.getMessage().getAids().size(), request.getPeer()));
 		}
 
-		request.getMessage().getAids().stream()
-			.map(storeView::get)
-			.filter(Optional::isPresent)
-			.map(Optional::get)
+		storeView.getAll(request.getMessage().getAids()).values().stream()
 			.map(ledgerEntry -> new DeliveryResponseMessage(ledgerEntry, this.universe.getMagic()))
 			.forEach(response -> messageCentral.send(request.getPeer(), response));
 	}
@@ -31,7 +31,9 @@ import com.radixdlt.engine.RadixEngine;
 import com.radixdlt.middleware.AtomCheckHook;
 import com.radixdlt.middleware2.converters.AtomToBinaryConverter;
 import com.radixdlt.middleware2.processing.EngineAtomEventListener;
+import com.radixdlt.middleware2.store.EngineAtomIndicesCache;
 import com.radixdlt.middleware2.store.LedgerEngineStore;
+import com.radixdlt.middleware2.store.LedgerEngineStoreConfiguration;
 import com.radixdlt.serialization.Serialization;
 import com.radixdlt.store.CMStore;
 import com.radixdlt.store.EngineStore;
@@ -79,7 +81,7 @@ public class MiddlewareModule extends AbstractModule {
 			ConstraintMachine constraintMachine,
 			UnaryOperator<CMStore> virtualStoreLayer,
 			EngineStore engineStore,
-			Serialization serialization,
+			EngineAtomIndicesCache indicesCache,
 			RuntimeProperties properties,
 			Universe universe
 	) {
@@ -100,14 +102,22 @@ public class MiddlewareModule extends AbstractModule {
 				)
 		);
 
-		radixEngine.addAtomEventListener(new EngineAtomEventListener(serialization));
+		radixEngine.addAtomEventListener(new EngineAtomEventListener(indicesCache));
 		radixEngine.start();
 		return radixEngine;
 	}
 
+	@Provides
+	private LedgerEngineStoreConfiguration ledgerEngineStoreConfiguration(RuntimeProperties properties) {
+		return LedgerEngineStoreConfiguration.fromRuntimeProperties(properties);
+	}
+
 	@Override
 	protected void configure() {
-		bind(EngineStore.class).to(LedgerEngineStore.class).in(Scopes.SINGLETON);
+		// the engine and the atom processor share the same store
+		bind(LedgerEngineStore.class).in(Scopes.SINGLETON);
+		bind(EngineStore.class).to(LedgerEngineStore.class);
+		bind(EngineAtomIndicesCache.class).in(Scopes.SINGLETON);
 		bind(AtomToBinaryConverter.class).toInstance(new AtomToBinaryConverter(Serialization.getDefault()));
 	}
 }
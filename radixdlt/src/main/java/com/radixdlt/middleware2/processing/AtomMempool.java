@@ -0,0 +1,184 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package com.radixdlt.middleware2.processing;
+
+import com.radixdlt.common.AID;
+import com.radixdlt.store.LedgerEntry;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of submitted atoms waiting to be committed, indexed by AID.
+ * Atoms are taken for consensus in order of submission, but stay in the pool (and count
+ * towards its capacity) until they are removed once committed.
+ */
+public final class AtomMempool {
+	private final int maxAtoms;
+	private final long maxBytes;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = this.lock.newCondition();
+	// all atoms in the pool by AID, including atoms that were taken but are not removed yet
+	private final Map<AID, LedgerEntry> atoms = new HashMap<>();
+	// atoms that were not taken yet, in order of submission
+	private final LinkedHashMap<AID, LedgerEntry> queued = new LinkedHashMap<>();
+	private long bytes;
+
+	public AtomMempool(int maxAtoms, long maxBytes) {
+		if (maxAtoms <= 0) {
+			throw new IllegalArgumentException("maxAtoms must be positive: " + maxAtoms);
+		}
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+		}
+		this.maxAtoms = maxAtoms;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Adds an atom to the end of the pool unless an atom with the same AID is already in it.
+	 *
+	 * @param ledgerEntry The atom as ledger entry
+	 * @return Whether the atom was added, false if it is a duplicate
+	 * @throws MempoolFullException if adding the atom would exceed the capacity of the pool
+	 */
+	public boolean add(LedgerEntry ledgerEntry) {
+		Objects.requireNonNull(ledgerEntry, "ledgerEntry is required");
+		long size = ledgerEntry.getContent().length;
+		this.lock.lock();
+		try {
+			if (this.atoms.containsKey(ledgerEntry.getAID())) {
+				return false;
+			}
+			if (this.atoms.size() >= this.maxAtoms || this.bytes + size > this.maxBytes) {
+				throw new MempoolFullException(String.format(
+					"Mempool is full with %d atoms of %d bytes, rejecting atom '%s' of %d bytes",
+					this.atoms.size(), this.bytes, ledgerEntry.getAID(), size));
+			}
+
+			this.atoms.put(ledgerEntry.getAID(), ledgerEntry);
+			this.queued.put(ledgerEntry.getAID(), ledgerEntry);
+			this.bytes += size;
+			this.notEmpty.signal();
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes the atom that was submitted first among those not taken yet, waiting for one if necessary.
+	 *
+	 * @return The taken atom as ledger entry
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public LedgerEntry take() throws InterruptedException {
+		this.lock.lockInterruptibly();
+		try {
+			while (this.queued.isEmpty()) {
+				this.notEmpty.await();
+			}
+			Iterator<LedgerEntry> first = this.queued.values().iterator();
+			LedgerEntry ledgerEntry = first.next();
+			first.remove();
+			return ledgerEntry;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Puts an atom that was taken but will not be committed back into the pool,
+	 * to be taken again before the atoms that were not taken yet.
+	 *
+	 * @param aid The aid of the atom
+	 * @return Whether the atom was put back, false if it is not in the pool or was not taken
+	 */
+	public boolean putBack(AID aid) {
+		this.lock.lock();
+		try {
+			LedgerEntry ledgerEntry = this.atoms.get(aid);
+			if (ledgerEntry == null || this.queued.containsKey(aid)) {
+				return false;
+			}
+
+			// atoms are rarely put back, so rebuilding the queue to put the atom first is fine
+			LinkedHashMap<AID, LedgerEntry> remaining = new LinkedHashMap<>(this.queued);
+			this.queued.clear();
+			this.queued.put(aid, ledgerEntry);
+			this.queued.putAll(remaining);
+			this.notEmpty.signal();
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes an atom from the pool, whether taken or not.
+	 *
+	 * @param aid The aid of the atom
+	 * @return Whether the atom was in the pool
+	 */
+	public boolean remove(AID aid) {
+		this.lock.lock();
+		try {
+			LedgerEntry ledgerEntry = this.atoms.remove(aid);
+			if (ledgerEntry == null) {
+				return false;
+			}
+			this.queued.remove(aid);
+			this.bytes -= ledgerEntry.getContent().length;
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public boolean contains(AID aid) {
+		this.lock.lock();
+		try {
+			return this.atoms.containsKey(aid);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.atoms.size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	public long getBytes() {
+		this.lock.lock();
+		try {
+			return this.bytes;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+}
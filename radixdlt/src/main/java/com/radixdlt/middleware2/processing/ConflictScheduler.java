@@ -0,0 +1,138 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package com.radixdlt.middleware2.processing;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.radix.logging.Logger;
+import org.radix.logging.Logging;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks on a pool of workers, keeping tasks that share a conflict key in order of submission.
+ * Tasks with disjoint conflict keys run concurrently, submissions block while too many tasks are outstanding.
+ *
+ * @param <K> The type of conflict keys
+ */
+final class ConflictScheduler<K> {
+	private static final Logger log = Logging.getLogger("middleware2.atomProcessor");
+
+	private static final long STOP_TIMEOUT_SECONDS = 10;
+
+	private final ExecutorService executor;
+	private final int maxOutstanding;
+	private final Semaphore outstanding;
+	// completion of the last submitted task by conflict key, removed once that task is done
+	private final Map<K, CompletableFuture<Void>> lastTasks = new HashMap<>();
+
+	ConflictScheduler(String name, int threads, int maxOutstanding) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		if (maxOutstanding <= 0) {
+			throw new IllegalArgumentException("maxOutstanding must be positive: " + maxOutstanding);
+		}
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+		this.maxOutstanding = maxOutstanding;
+		this.outstanding = new Semaphore(maxOutstanding);
+	}
+
+	/**
+	 * Submits a task to run once all previously submitted tasks sharing any of its conflict keys are done.
+	 * Failures of a task are logged and do not hold up later tasks.
+	 *
+	 * @param conflictKeys The conflict keys of the task
+	 * @param task The task
+	 * @throws InterruptedException if interrupted while waiting for outstanding tasks
+	 */
+	void submit(Set<K> conflictKeys, Runnable task) throws InterruptedException {
+		Objects.requireNonNull(conflictKeys, "conflictKeys is required");
+		Objects.requireNonNull(task, "task is required");
+		this.outstanding.acquire();
+
+		CompletableFuture<Void> future;
+		synchronized (this.lastTasks) {
+			CompletableFuture<?>[] predecessors = conflictKeys.stream()
+				.map(this.lastTasks::get)
+				.filter(Objects::nonNull)
+				.distinct()
+				.toArray(CompletableFuture[]::new);
+			// predecessors that completed exceptionally must not keep this task from running
+			CompletableFuture<Void> ready = predecessors.length == 0
+				? CompletableFuture.completedFuture(null)
+				: CompletableFuture.allOf(predecessors).exceptionally(e -> null);
+			future = ready.thenRunAsync(() -> runSafely(task), this.executor);
+			for (K conflictKey : conflictKeys) {
+				this.lastTasks.put(conflictKey, future);
+			}
+		}
+
+		// also releases tasks rejected after the scheduler is stopped
+		future.whenComplete((result, e) -> {
+			synchronized (this.lastTasks) {
+				for (K conflictKey : conflictKeys) {
+					this.lastTasks.remove(conflictKey, future);
+				}
+			}
+			this.outstanding.release();
+		});
+	}
+
+	private static void runSafely(Runnable task) {
+		try {
+			task.run();
+		} catch (Exception e) {
+			log.error("Scheduled task failed", e);
+		}
+	}
+
+	/**
+	 * Waits until all submitted tasks are done.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	void awaitIdle() throws InterruptedException {
+		this.outstanding.acquire(this.maxOutstanding);
+		this.outstanding.release(this.maxOutstanding);
+	}
+
+	/**
+	 * Stops the workers once the submitted tasks are done, dropping tasks that are not done within a timeout.
+	 */
+	void stop() {
+		try {
+			if (this.outstanding.tryAcquire(this.maxOutstanding, STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				this.outstanding.release(this.maxOutstanding);
+			} else {
+				log.warn("Scheduled tasks not done after " + STOP_TIMEOUT_SECONDS + " seconds, dropping them");
+			}
+		} catch (InterruptedException e) {
+			// Re-interrupt, as we are not directly dealing with this.
+			Thread.currentThread().interrupt();
+		} finally {
+			this.executor.shutdownNow();
+		}
+	}
+}
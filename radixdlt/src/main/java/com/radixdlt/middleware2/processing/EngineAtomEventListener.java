@@ -24,8 +24,7 @@ import com.radixdlt.constraintmachine.CMError;
 import com.radixdlt.constraintmachine.DataPointer;
 import com.radixdlt.constraintmachine.Particle;
 import com.radixdlt.engine.AtomEventListener;
-import com.radixdlt.middleware2.store.EngineAtomIndices;
-import com.radixdlt.serialization.Serialization;
+import com.radixdlt.middleware2.store.EngineAtomIndicesCache;
 import org.radix.atoms.AtomDependencyNotFoundException;
 import org.radix.atoms.events.AtomExceptionEvent;
 import org.radix.atoms.events.AtomStoredEvent;
@@ -37,14 +36,13 @@ import org.radix.logging.Logging;
 import org.radix.validation.ConstraintMachineValidationException;
 
 import java.util.Collections;
-import java.util.stream.Collectors;
 
 public class EngineAtomEventListener implements AtomEventListener {
 	private static final Logger log = Logging.getLogger("middleware2.eventListener");
-	private final Serialization serialization;
+	private final EngineAtomIndicesCache indicesCache;
 
-	public EngineAtomEventListener(Serialization serialization) {
-		this.serialization = serialization;
+	public EngineAtomEventListener(EngineAtomIndicesCache indicesCache) {
+		this.indicesCache = indicesCache;
 	}
 
 	@Override
@@ -56,12 +54,8 @@ public class EngineAtomEventListener implements AtomEventListener {
 	@Override
 	public void onStateStore(Atom atom) {
 		try {
-			EngineAtomIndices engineAtomIndices = EngineAtomIndices.from(atom, serialization);
-			Events.getInstance().broadcastWithException(new AtomStoredEvent(atom, () ->
-					engineAtomIndices.getDuplicateIndices().stream().filter(e -> e.getPrefix() == EngineAtomIndices.IndexType.DESTINATION.getValue())
-					.map(e -> EngineAtomIndices.toEUID(e.asKey()))
-					.collect(Collectors.toSet()))
-			);
+			// the indices were computed when the atom was stored
+			Events.getInstance().broadcastWithException(new AtomStoredEvent(atom, indicesCache.get(atom)::getDestinations));
 		} catch (Throwable e) {
 			log.error("Store of atom failed", e);
 		}
@@ -17,9 +17,9 @@
 
 package com.radixdlt.middleware2.processing;
 
-import com.google.inject.Inject;
 import com.radixdlt.common.AID;
 import com.radixdlt.common.Atom;
+import com.radixdlt.common.EUID;
 import com.radixdlt.consensus.tempo.Application;
 import com.radixdlt.constraintmachine.CMError;
 import com.radixdlt.constraintmachine.DataPointer;
@@ -29,94 +29,226 @@ import com.radixdlt.engine.RadixEngine;
 import com.radixdlt.consensus.Consensus;
 import com.radixdlt.consensus.ConsensusObservation;
 import com.radixdlt.middleware2.converters.AtomToBinaryConverter;
+import com.radixdlt.middleware2.store.EngineAtomIndices;
+import com.radixdlt.middleware2.store.EngineAtomIndicesCache;
+import com.radixdlt.middleware2.store.LedgerEngineStore;
 import com.radixdlt.serialization.Serialization;
 import com.radixdlt.store.LedgerEntry;
 import com.radixdlt.store.LedgerEntryStore;
+import com.radixdlt.store.StoreIndex;
 import com.radixdlt.universe.Universe;
 import org.json.JSONObject;
 import org.radix.logging.Logger;
 import org.radix.logging.Logging;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.BlockingDeque;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class RadixEngineAtomProcessor implements Application {
 	private static final Logger log = Logging.getLogger("middleware2.atomProcessor");
 
+	// maximum number of committed atoms queued for the workers per worker thread
+	private static final int MAX_OUTSTANDING_PER_THREAD = 64;
+	private static final int DEFAULT_OBSERVATION_BATCH_SIZE = 64;
+	private static final long DEFAULT_OBSERVATION_BATCH_MAX_WAIT = 5L;
+	private static final int DEFAULT_MEMPOOL_MAX_ATOMS = 10_000;
+	private static final long DEFAULT_MEMPOOL_MAX_BYTES = 64L * 1024 * 1024;
+
 	private volatile boolean interrupted;
 	private final Object threadLock = new Object();
 	private Thread thread;
+	private ConflictScheduler<EUID> scheduler;
 
 	private final Consensus consensus;
 	private final LedgerEntryStore store;
 	private final RadixEngine radixEngine;
+	// the engine is not known to be thread-safe, so atoms are validated one at a time, whatever the worker threads
+	private final Object engineLock = new Object();
+	private final LedgerEngineStore engineStore;
 	private final Serialization serialization;
 	private final AtomToBinaryConverter atomToBinaryConverter;
-	private final BlockingDeque<Atom> parkedAtoms;
-	private final Map<Atom, ProcessorAtomEventListener> parkedListeners;
+	private final EngineAtomIndicesCache indicesCache;
+	private final int workerThreads;
+	private final int observationBatchSize;
+	private final long observationBatchMaxWait;
+	private final AtomMempool mempool;
+	// listeners of all submissions of parked atoms, as an atom may be submitted more than once
+	private final Map<AID, List<ProcessorAtomEventListener>> parkedListeners;
 
-	@Inject
 	public RadixEngineAtomProcessor(
 		Consensus consensus,
 		LedgerEntryStore store,
 		RadixEngine radixEngine,
+		LedgerEngineStore engineStore,
 		Serialization serialization,
-		AtomToBinaryConverter atomToBinaryConverter
+		AtomToBinaryConverter atomToBinaryConverter,
+		EngineAtomIndicesCache indicesCache,
+		RadixEngineAtomProcessorConfiguration configuration
 	) {
 		this.consensus = consensus;
 		this.store = store;
 		this.radixEngine = radixEngine;
+		this.engineStore = engineStore;
 		this.serialization = serialization;
 		this.atomToBinaryConverter = atomToBinaryConverter;
-		this.parkedAtoms = new LinkedBlockingDeque<>();
+		this.indicesCache = indicesCache;
+		this.workerThreads = configuration.workerThreads(Runtime.getRuntime().availableProcessors());
+		if (this.workerThreads <= 0) {
+			throw new IllegalArgumentException("workerThreads must be positive: " + this.workerThreads);
+		}
+		this.observationBatchSize = configuration.observationBatchSize(DEFAULT_OBSERVATION_BATCH_SIZE);
+		if (this.observationBatchSize <= 0) {
+			throw new IllegalArgumentException("observationBatchSize must be positive: " + this.observationBatchSize);
+		}
+		this.observationBatchMaxWait = configuration.observationBatchMaxWait(DEFAULT_OBSERVATION_BATCH_MAX_WAIT);
+		this.mempool = new AtomMempool(
+			configuration.mempoolMaxAtoms(DEFAULT_MEMPOOL_MAX_ATOMS),
+			configuration.mempoolMaxBytes(DEFAULT_MEMPOOL_MAX_BYTES)
+		);
 		this.parkedListeners = new ConcurrentHashMap<>();
 	}
 
 	@Override
 	public LedgerEntry takeNextEntry() throws InterruptedException {
-		Atom atom = parkedAtoms.take();
-		return new LedgerEntry(atomToBinaryConverter.toLedgerEntryContent(atom), atom.getAID());
+		return mempool.take();
 	}
 
-	private void process() throws InterruptedException {
+	@Override
+	public void returnEntry(LedgerEntry entry) {
+		if (!mempool.putBack(entry.getAID())) {
+			log.debug("Returned atom '" + entry.getAID() + "' was not taken from the mempool");
+		}
+	}
+
+	/**
+	 * Stores committed atoms on the workers of the given scheduler, draining observations in batches.
+	 * Atoms spinning any of the same particles are stored in order of commitment.
+	 * <p>
+	 * Note that this only pipelines the ledger writes, validation is not parallel: atoms are validated by the
+	 * engine one at a time under {@link #engineLock}, while the ledger writes of atoms validated before are
+	 * still being done, so that the ledger store can write atoms validated at about the same time in a single
+	 * transaction. More worker threads therefore help as far as writes dominate, not with validation.
+	 */
+	private void process(ConflictScheduler<EUID> scheduler) throws InterruptedException {
 		while (!interrupted) {
-			ConsensusObservation consensusObservation = consensus.observe();
-			if (consensusObservation.getType() == ConsensusObservation.Type.COMMIT) {
-				Atom atom = atomToBinaryConverter.toAtom(consensusObservation.getEntry().getContent());
-				try {
-					radixEngine.store(atom, new AtomEventListener() {
-					});
-					if (!parkedAtoms.remove(atom)) {
-						log.error("Removing unknown atom in RadixEngineAtomProcessor.process()");
-					}
-				} catch (Exception e) {
-					parkedListeners.computeIfPresent(atom, (a, listener) -> {
-						listener.onError(e);
-						return null;
-					});
-					log.error("Storing atom failed", e);
+			for (ConsensusObservation consensusObservation : consensus.observe(observationBatchSize, observationBatchMaxWait)) {
+				if (consensusObservation.getType() == ConsensusObservation.Type.COMMIT) {
+					processCommit(scheduler, consensusObservation.getEntry());
 				}
+			}
+		}
+	}
 
-				log.info("Committing to '" + consensusObservation.getEntry().getAID());
-				// TODO actual commit mechanism stub
+	private void processCommit(ConflictScheduler<EUID> scheduler, LedgerEntry ledgerEntry) throws InterruptedException {
+		Atom atom = atomToBinaryConverter.toAtom(ledgerEntry.getContent());
+		final Set<EUID> spunParticles;
+		try {
+			spunParticles = getSpunParticles(atom);
+		} catch (Exception e) {
+			mempool.remove(atom.getAID());
+			onStoreFailed(atom, e);
+			return;
+		}
+
+		try {
+			scheduler.submit(spunParticles, () -> storeCommitted(atom, ledgerEntry.getAID()));
+		} catch (InterruptedException e) {
+			// the atom is taken again if processing is restarted
+			returnEntry(ledgerEntry);
+			throw e;
+		}
+	}
+
+	/**
+	 * Stores a committed atom, after which it is removed from the mempool whether it could be stored or not.
+	 * Like an atom taken from the parked atoms before, an atom failing to store is not kept for another attempt.
+	 * It is removed before its submitters are notified of the failure, so that they can submit it again.
+	 */
+	private void storeCommitted(Atom atom, AID aid) {
+		Exception failure = null;
+		try {
+			final LedgerEngineStore.DeferredWrites writes;
+			synchronized (engineLock) {
+				writes = engineStore.deferWrites(() -> radixEngine.store(atom, new AtomEventListener() {
+				}));
 			}
+			// atoms spinning the same particles are only stored once this write is done
+			writes.await();
+			parkedListeners.remove(aid);
+		} catch (Exception e) {
+			failure = e;
+		}
+		// committed atoms submitted through other nodes are not in the mempool
+		if (!mempool.remove(aid)) {
+			log.debug("Committed atom '" + aid + "' was not parked in the mempool");
 		}
+		if (failure != null) {
+			onStoreFailed(atom, failure);
+		}
+
+		log.info("Committing to '" + aid);
+		// TODO actual commit mechanism stub
+	}
+
+	private void onStoreFailed(Atom atom, Exception e) {
+		List<ProcessorAtomEventListener> listeners = parkedListeners.remove(atom.getAID());
+		if (listeners != null) {
+			listeners.forEach(listener -> listener.onError(e));
+		}
+		log.error("Storing atom failed", e);
+	}
+
+	private void parkListener(AID aid, ProcessorAtomEventListener listener) {
+		// lists are only modified within the map's atomic operations
+		parkedListeners.compute(aid, (a, listeners) -> {
+			List<ProcessorAtomEventListener> parked = listeners == null ? new ArrayList<>() : listeners;
+			parked.add(listener);
+			return parked;
+		});
+	}
+
+	private void unparkListener(AID aid, ProcessorAtomEventListener listener) {
+		parkedListeners.computeIfPresent(aid, (a, listeners) -> {
+			listeners.remove(listener);
+			return listeners.isEmpty() ? null : listeners;
+		});
+	}
+
+	/**
+	 * Gets the HIDs of the particles spun by an atom, which are the same whether spun up or down.
+	 * The indices computed here are reused when the atom is stored, as long as it is the same atom instance.
+	 */
+	private Set<EUID> getSpunParticles(Atom atom) {
+		return indicesCache.get(atom).getUniqueIndices().stream()
+			.filter(index -> index.getPrefix() == EngineAtomIndices.IndexType.PARTICLE_UP.getValue()
+				|| index.getPrefix() == EngineAtomIndices.IndexType.PARTICLE_DOWN.getValue())
+			.map(StoreIndex::getIdentifier)
+			.map(EUID::new)
+			.collect(Collectors.toSet());
 	}
 
 	public AID process(JSONObject jsonAtom, Optional<ProcessorAtomEventListener> processorAtomEventListener) {
 		final Atom atom = serialization.fromJsonObject(jsonAtom, Atom.class);
 		processorAtomEventListener.ifPresent(listener -> listener.onDeserializationCompleted(atom.getAID()));
 		try {
-			processorAtomEventListener.ifPresent(listener -> parkedListeners.put(atom, listener));
-			parkedAtoms.add(atom);
+			LedgerEntry ledgerEntry = new LedgerEntry(atomToBinaryConverter.toLedgerEntryContent(atom), atom.getAID());
+			// every submission of an atom that is already parked is notified if storing it fails
+			processorAtomEventListener.ifPresent(listener -> parkListener(atom.getAID(), listener));
+			if (!mempool.add(ledgerEntry)) {
+				log.debug("Atom '" + atom.getAID() + "' is already parked in the mempool");
+			}
 		} catch (Exception e) {
-			processorAtomEventListener.ifPresent(listener -> listener.onError(e));
+			processorAtomEventListener.ifPresent(listener -> {
+				unparkListener(atom.getAID(), listener);
+				listener.onError(e);
+			});
 			log.error("Engine processing exception ", e);
 		}
 		return atom.getAID();
@@ -127,9 +259,11 @@ public class RadixEngineAtomProcessor implements Application {
 			if (this.thread == null) {
 				initGenesis(universe);
 				this.interrupted = false;
+				this.scheduler = new ConflictScheduler<>("RadixEngineAtomProcessor", this.workerThreads, this.workerThreads * MAX_OUTSTANDING_PER_THREAD);
+				final ConflictScheduler<EUID> threadScheduler = this.scheduler;
 				this.thread = new Thread(() -> {
 					try {
-						process();
+						process(threadScheduler);
 					} catch (InterruptedException e) {
 						log.error("Starting of RadixEngineAtomProcessor failed", e);
 						// Re-interrupt, as we are not directly dealing with this.
@@ -145,7 +279,6 @@ public class RadixEngineAtomProcessor implements Application {
 		synchronized (this.threadLock) {
 			if (this.thread != null) {
 				this.interrupted = true;
-				this.store.close();
 				try {
 					this.thread.interrupt();
 					this.thread.join();
@@ -153,7 +286,11 @@ public class RadixEngineAtomProcessor implements Application {
 					// Ignore and re-interrupt. Someone else will have to deal with it
 					Thread.currentThread().interrupt();
 				} finally {
+					// atoms already committed are stored before the store is closed
+					this.scheduler.stop();
+					this.store.close();
 					this.thread = null;
+					this.scheduler = null;
 				}
 			}
 		}
@@ -0,0 +1,65 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package com.radixdlt.middleware2.processing;
+
+import com.google.inject.Provides;
+import org.radix.properties.RuntimeProperties;
+
+/**
+ * Static configuration for a {@link RadixEngineAtomProcessor}
+ */
+public interface RadixEngineAtomProcessorConfiguration {
+	int workerThreads(int defaultValue);
+
+	int observationBatchSize(int defaultValue);
+
+	long observationBatchMaxWait(long defaultValue);
+
+	int mempoolMaxAtoms(int defaultValue);
+
+	long mempoolMaxBytes(long defaultValue);
+
+	@Provides
+	static RadixEngineAtomProcessorConfiguration fromRuntimeProperties(RuntimeProperties properties) {
+		return new RadixEngineAtomProcessorConfiguration() {
+			@Override
+			public int workerThreads(int defaultValue) {
+				return properties.get("engine.processor.threads", defaultValue);
+			}
+
+			@Override
+			public int observationBatchSize(int defaultValue) {
+				return properties.get("engine.processor.batch_size", defaultValue);
+			}
+
+			@Override
+			public long observationBatchMaxWait(long defaultValue) {
+				return properties.get("engine.processor.batch_max_wait", defaultValue);
+			}
+
+			@Override
+			public int mempoolMaxAtoms(int defaultValue) {
+				return properties.get("mempool.max_atoms", defaultValue);
+			}
+
+			@Override
+			public long mempoolMaxBytes(long defaultValue) {
+				return properties.get("mempool.max_bytes", defaultValue);
+			}
+		};
+	}
+}
@@ -56,10 +56,16 @@ public class EngineAtomIndices {
 
 	private final Set<StoreIndex> uniqueIndices;
 	private final Set<StoreIndex> duplicateIndices;
+	private final Set<Long> shards;
 
 	public EngineAtomIndices(Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices) {
+		this(uniqueIndices, duplicateIndices, ImmutableSet.of());
+	}
+
+	public EngineAtomIndices(Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices, Set<Long> shards) {
 		this.uniqueIndices = uniqueIndices;
 		this.duplicateIndices = duplicateIndices;
+		this.shards = shards;
 	}
 
 	public static EngineAtomIndices from(Atom atom, Serialization serialization) {
@@ -124,7 +130,11 @@ public class EngineAtomIndices {
 					final EUID numericClassId = SerializationUtils.stringToNumericID(idForClass);
 					duplicateIndices.add(new StoreIndex(IndexType.PARTICLE_CLASS.getValue(), toByteArray(IndexType.PARTICLE_CLASS, numericClassId)));
 				});
-		return new EngineAtomIndices(uniqueIndices.build(), duplicateIndices.build());
+		final ImmutableSet<Long> shards = destinations.stream()
+				.map(EUID::getShard)
+				.collect(ImmutableSet.toImmutableSet());
+
+		return new EngineAtomIndices(uniqueIndices.build(), duplicateIndices.build(), shards);
 	}
 
 	public Set<StoreIndex> getUniqueIndices() {
@@ -135,6 +145,17 @@ public class EngineAtomIndices {
 		return duplicateIndices;
 	}
 
+	public Set<Long> getShards() {
+		return shards;
+	}
+
+	public Set<EUID> getDestinations() {
+		return duplicateIndices.stream()
+				.filter(index -> index.getPrefix() == IndexType.DESTINATION.getValue())
+				.map(index -> toEUID(index.asKey()))
+				.collect(Collectors.toSet());
+	}
+
 	public static byte[] toByteArray(IndexType type, EUID id) {
 		if (id == null) {
 			throw new IllegalArgumentException("EUID is null");
@@ -0,0 +1,55 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package com.radixdlt.middleware2.store;
+
+import com.google.common.collect.MapMaker;
+import com.google.inject.Inject;
+import com.radixdlt.common.Atom;
+import com.radixdlt.serialization.Serialization;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Indices of the atoms being processed, computed once per atom and shared by the stages handling it.
+ * Atoms are held weakly and compared by identity, so the indices of an atom are dropped along with the atom.
+ */
+public final class EngineAtomIndicesCache {
+	private final Function<Atom, EngineAtomIndices> computeIndices;
+	private final ConcurrentMap<Atom, EngineAtomIndices> indices = new MapMaker().weakKeys().makeMap();
+
+	@Inject
+	public EngineAtomIndicesCache(Serialization serialization) {
+		Objects.requireNonNull(serialization);
+		this.computeIndices = atom -> EngineAtomIndices.from(atom, serialization);
+	}
+
+	EngineAtomIndicesCache(Function<Atom, EngineAtomIndices> computeIndices) {
+		this.computeIndices = Objects.requireNonNull(computeIndices);
+	}
+
+	/**
+	 * Gets the indices of an atom, computing them if this atom instance was not seen before.
+	 *
+	 * @param atom The atom
+	 * @return The indices of the atom
+	 */
+	public EngineAtomIndices get(Atom atom) {
+		return this.indices.computeIfAbsent(atom, this.computeIndices);
+	}
+}
@@ -23,35 +23,44 @@ import com.radixdlt.common.Atom;
 import com.radixdlt.common.EUID;
 import com.radixdlt.constraintmachine.Particle;
 import com.radixdlt.constraintmachine.Spin;
-import com.radixdlt.serialization.Serialization;
 import com.radixdlt.store.SearchCursor;
 import com.radixdlt.store.StoreIndex;
 import com.radixdlt.store.LedgerSearchMode;
 import com.radixdlt.middleware2.converters.AtomToBinaryConverter;
 import com.radixdlt.store.EngineStore;
+import com.radixdlt.store.IndexedLedgerEntry;
 import com.radixdlt.store.LedgerEntry;
 import com.radixdlt.store.LedgerEntryStore;
 import org.radix.logging.Logger;
 import org.radix.logging.Logging;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 
 public class LedgerEngineStore implements EngineStore {
     private static final Logger log = Logging.getLogger("middleware2.store");
+    private static final int DEFAULT_MAX_BATCH_SIZE = 256;
 
-    private final Serialization serialization;
+    private final EngineAtomIndicesCache indicesCache;
     private final LedgerEntryStore store;
     private AtomToBinaryConverter atomToBinaryConverter;
+    // atoms stored concurrently by the engine are written to the ledger in shared transactions
+    private final LedgerEntryBatcher batcher;
+    // writes of the current thread while it runs an action with deferred writes
+    private final ThreadLocal<List<LedgerEntryBatcher.PendingEntry>> deferredWrites = new ThreadLocal<>();
 
     @Inject
     public LedgerEngineStore(LedgerEntryStore store,
                              AtomToBinaryConverter atomToBinaryConverter,
-                             Serialization serialization) {
-        this.serialization = serialization;
+                             EngineAtomIndicesCache indicesCache,
+                             LedgerEngineStoreConfiguration configuration) {
+        this.indicesCache = indicesCache;
         this.store = store;
         this.atomToBinaryConverter = atomToBinaryConverter;
+        this.batcher = new LedgerEntryBatcher(store, configuration.maxBatchSize(DEFAULT_MAX_BATCH_SIZE));
     }
 
     @Override
@@ -77,8 +86,44 @@ public class LedgerEngineStore implements EngineStore {
     public void storeAtom(Atom atom) {
         byte binaryAtom[] = atomToBinaryConverter.toLedgerEntryContent(atom);
         LedgerEntry ledgerEntry = new LedgerEntry(binaryAtom,atom.getAID());
-        EngineAtomIndices engineAtomIndices = EngineAtomIndices.from(atom, serialization);
-        store.store(ledgerEntry, engineAtomIndices.getUniqueIndices(), engineAtomIndices.getDuplicateIndices());
+        EngineAtomIndices engineAtomIndices = indicesCache.get(atom);
+        IndexedLedgerEntry indexedEntry = IndexedLedgerEntry.of(ledgerEntry, engineAtomIndices.getUniqueIndices(), engineAtomIndices.getDuplicateIndices(), engineAtomIndices.getShards());
+        List<LedgerEntryBatcher.PendingEntry> writes = deferredWrites.get();
+        if (writes != null) {
+            writes.add(batcher.enqueue(indexedEntry));
+        } else {
+            batcher.store(indexedEntry);
+        }
+    }
+
+    /**
+     * Runs an action storing atoms with the ledger writes of atoms stored on the calling thread deferred
+     * until they are waited for, so that the action can run under a lock while the writes of several
+     * threads are grouped into shared batches. Atoms stored on other threads are written as usual.
+     *
+     * @param action The action storing atoms
+     * @return The deferred writes, which must be waited for
+     */
+    public DeferredWrites deferWrites(Runnable action) {
+        if (deferredWrites.get() != null) {
+            throw new IllegalStateException("Writes of this thread are already deferred");
+        }
+        DeferredWrites writes = new DeferredWrites(new ArrayList<>());
+        deferredWrites.set(writes.pendingEntries);
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            // atoms stored before the failure are written all the same
+            try {
+                writes.await();
+            } catch (RuntimeException writeFailure) {
+                e.addSuppressed(writeFailure);
+            }
+            throw e;
+        } finally {
+            deferredWrites.remove();
+        }
+        return writes;
     }
 
     @Override
@@ -92,6 +137,41 @@ public class LedgerEngineStore implements EngineStore {
         return true;
     }
 
+    /**
+     * Ledger writes deferred by {@link #deferWrites(Runnable)}.
+     */
+    public final class DeferredWrites {
+        private final List<LedgerEntryBatcher.PendingEntry> pendingEntries;
+
+        private DeferredWrites(List<LedgerEntryBatcher.PendingEntry> pendingEntries) {
+            this.pendingEntries = pendingEntries;
+        }
+
+        /**
+         * Waits until all deferred writes are done.
+         *
+         * @throws RuntimeException if writing any of the atoms failed
+         */
+        public void await() {
+            RuntimeException failure = null;
+            for (LedgerEntryBatcher.PendingEntry pendingEntry : pendingEntries) {
+                // the remaining writes are waited for even if one failed, so that all of them are done
+                try {
+                    batcher.await(pendingEntry);
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
     @Override
     public Spin getSpin(Particle particle) {
         if (getAtomByParticle(particle, true).isPresent()) {
@@ -0,0 +1,39 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.middleware2.store;
+
+import org.radix.properties.RuntimeProperties;
+
+/**
+ * Static configuration for a {@link LedgerEngineStore}
+ */
+public interface LedgerEngineStoreConfiguration {
+	/**
+	 * Maximum number of atoms written to the ledger in a single transaction
+	 */
+	int maxBatchSize(int defaultValue);
+
+	static LedgerEngineStoreConfiguration fromRuntimeProperties(RuntimeProperties properties) {
+		return new LedgerEngineStoreConfiguration() {
+			@Override
+			public int maxBatchSize(int defaultValue) {
+				return properties.get("engine.store.max_batch_size", defaultValue);
+			}
+		};
+	}
+}
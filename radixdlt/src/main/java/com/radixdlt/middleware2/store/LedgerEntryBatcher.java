@@ -0,0 +1,182 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package com.radixdlt.middleware2.store;
+
+import com.google.common.collect.ImmutableList;
+import com.radixdlt.store.IndexedLedgerEntry;
+import com.radixdlt.store.LedgerEntryStore;
+import com.radixdlt.store.LedgerEntryStoreResult;
+import org.radix.utils.SystemMetaData;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+
+/**
+ * Groups ledger entries stored concurrently into batches written in a single store transaction.
+ * The first caller to find no batch being written writes everything queued so far on behalf of the
+ * others, entries queued in the meantime are written in the next batch. Callers wait for their own entry
+ * only, so the latency added to a store is at most the time taken to write one batch.
+ */
+final class LedgerEntryBatcher {
+	private final LedgerEntryStore store;
+	private final int maxBatchSize;
+
+	private final Object lock = new Object();
+	private final Queue<PendingEntry> queue = new ArrayDeque<>();
+	private boolean writing;
+
+	LedgerEntryBatcher(LedgerEntryStore store, int maxBatchSize) {
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+		}
+		this.store = Objects.requireNonNull(store);
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Stores an entry as part of the next batch, waiting until that batch is written.
+	 *
+	 * @param indexedEntry The entry and its indices
+	 * @return The result of storing the entry
+	 */
+	LedgerEntryStoreResult store(IndexedLedgerEntry indexedEntry) {
+		return await(enqueue(indexedEntry));
+	}
+
+	/**
+	 * Queues an entry for the next batch without waiting for it to be written.
+	 * The entry is only guaranteed to be written once it is waited for with {@link #await(PendingEntry)}.
+	 *
+	 * @param indexedEntry The entry and its indices
+	 * @return The queued entry
+	 */
+	PendingEntry enqueue(IndexedLedgerEntry indexedEntry) {
+		PendingEntry pendingEntry = new PendingEntry(Objects.requireNonNull(indexedEntry));
+		synchronized (this.lock) {
+			this.queue.add(pendingEntry);
+		}
+		return pendingEntry;
+	}
+
+	/**
+	 * Waits until a queued entry is written, writing the next batch if no batch is being written.
+	 *
+	 * @param pendingEntry The queued entry
+	 * @return The result of storing the entry
+	 */
+	LedgerEntryStoreResult await(PendingEntry pendingEntry) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				List<PendingEntry> batch;
+				synchronized (this.lock) {
+					while (!pendingEntry.isDone() && this.writing) {
+						try {
+							this.lock.wait();
+						} catch (InterruptedException e) {
+							// the entry is queued already, so finish waiting for it
+							interrupted = true;
+						}
+					}
+					if (pendingEntry.isDone()) {
+						return pendingEntry.getResult();
+					}
+
+					this.writing = true;
+					batch = new ArrayList<>(Math.min(this.queue.size(), this.maxBatchSize));
+					while (!this.queue.isEmpty() && batch.size() < this.maxBatchSize) {
+						batch.add(this.queue.poll());
+					}
+				}
+
+				try {
+					write(batch);
+				} finally {
+					synchronized (this.lock) {
+						this.writing = false;
+						this.lock.notifyAll();
+					}
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void write(List<PendingEntry> batch) {
+		try {
+			ImmutableList<LedgerEntryStoreResult> results = this.store.storeBatch(batch.stream()
+				.map(PendingEntry::getIndexedEntry)
+				.collect(ImmutableList.toImmutableList()));
+			for (int i = 0; i < batch.size(); i++) {
+				batch.get(i).complete(results.get(i), null);
+			}
+			SystemMetaData.ifPresent(a -> {
+				a.increment("ledger.batches");
+				a.put("ledger.batch.size", batch.size());
+			});
+		} catch (RuntimeException e) {
+			// none of the entries are stored, so all of them fail
+			batch.forEach(pendingEntry -> pendingEntry.complete(null, e));
+		} finally {
+			// callers of entries left incomplete by an error would otherwise wait forever
+			for (PendingEntry pendingEntry : batch) {
+				if (!pendingEntry.isDone()) {
+					pendingEntry.complete(null, new IllegalStateException("Writing batch of " + batch.size() + " entries failed"));
+				}
+			}
+		}
+	}
+
+	static final class PendingEntry {
+		private final IndexedLedgerEntry indexedEntry;
+		// completed by whichever caller writes the batch, read by the caller that queued the entry
+		private volatile boolean done;
+		private volatile LedgerEntryStoreResult result;
+		private volatile RuntimeException failure;
+
+		private PendingEntry(IndexedLedgerEntry indexedEntry) {
+			this.indexedEntry = indexedEntry;
+		}
+
+		private IndexedLedgerEntry getIndexedEntry() {
+			return this.indexedEntry;
+		}
+
+		private void complete(LedgerEntryStoreResult result, RuntimeException failure) {
+			this.result = result;
+			this.failure = failure;
+			this.done = true;
+		}
+
+		private boolean isDone() {
+			return this.done;
+		}
+
+		private LedgerEntryStoreResult getResult() {
+			if (this.failure != null) {
+				throw this.failure;
+			}
+			return this.result;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.google.common.collect.ImmutableList;
+import com.radixdlt.common.AID;
+
+/**
+ * A forward-only scanner over all entries under a certain index, returning them in pages.
+ * Unlike a {@link SearchCursor}, which seeks to its position for every step, a scanner
+ * seeks at most once per page.
+ */
+public interface IndexScanner {
+	/**
+	 * Gets the type of index being scanned
+	 * @return The type of index
+	 */
+	StoreIndex.LedgerIndexType getType();
+
+	/**
+	 * Advances the scanner by up to a certain number of aids
+	 * @param limit The maximum number of aids
+	 * @return The next aids, empty if exhausted
+	 */
+	ImmutableList<AID> nextAids(int limit);
+
+	/**
+	 * Advances the scanner by up to a certain number of entries, reading the entries in the same pass
+	 * @param limit The maximum number of entries
+	 * @return The next entries, empty if exhausted
+	 */
+	ImmutableList<LedgerEntry> nextEntries(int limit);
+
+	/**
+	 * Checks whether this scanner is known to have no more entries
+	 * @return Whether this scanner is exhausted
+	 */
+	boolean isExhausted();
+}
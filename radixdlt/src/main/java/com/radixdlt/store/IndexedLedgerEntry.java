@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A {@link LedgerEntry} together with the indices and shards it should be stored with.
+ */
+public final class IndexedLedgerEntry {
+	private final LedgerEntry ledgerEntry;
+	private final ImmutableSet<StoreIndex> uniqueIndices;
+	private final ImmutableSet<StoreIndex> duplicateIndices;
+	private final ImmutableSet<Long> shards;
+
+	private IndexedLedgerEntry(
+		LedgerEntry ledgerEntry,
+		ImmutableSet<StoreIndex> uniqueIndices,
+		ImmutableSet<StoreIndex> duplicateIndices,
+		ImmutableSet<Long> shards
+	) {
+		this.ledgerEntry = ledgerEntry;
+		this.uniqueIndices = uniqueIndices;
+		this.duplicateIndices = duplicateIndices;
+		this.shards = shards;
+	}
+
+	public static IndexedLedgerEntry of(LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices) {
+		return of(ledgerEntry, uniqueIndices, duplicateIndices, ImmutableSet.of());
+	}
+
+	public static IndexedLedgerEntry of(LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices, Set<Long> shards) {
+		Objects.requireNonNull(ledgerEntry, "ledgerEntry is required");
+		Objects.requireNonNull(uniqueIndices, "uniqueIndices is required");
+		Objects.requireNonNull(duplicateIndices, "duplicateIndices is required");
+		Objects.requireNonNull(shards, "shards is required");
+		return new IndexedLedgerEntry(
+			ledgerEntry,
+			ImmutableSet.copyOf(uniqueIndices),
+			ImmutableSet.copyOf(duplicateIndices),
+			ImmutableSet.copyOf(shards)
+		);
+	}
+
+	public LedgerEntry getLedgerEntry() {
+		return ledgerEntry;
+	}
+
+	public ImmutableSet<StoreIndex> getUniqueIndices() {
+		return uniqueIndices;
+	}
+
+	public ImmutableSet<StoreIndex> getDuplicateIndices() {
+		return duplicateIndices;
+	}
+
+	public ImmutableSet<Long> getShards() {
+		return shards;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		IndexedLedgerEntry that = (IndexedLedgerEntry) o;
+		return ledgerEntry.equals(that.ledgerEntry)
+			&& uniqueIndices.equals(that.uniqueIndices)
+			&& duplicateIndices.equals(that.duplicateIndices)
+			&& shards.equals(that.shards);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(ledgerEntry, uniqueIndices, duplicateIndices, shards);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("IndexedLedgerEntry{ledgerEntry=%s, unique=%s, duplicate=%s, shards=%s}",
+			ledgerEntry, uniqueIndices, duplicateIndices, shards);
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package com.radixdlt.store;
+
+import com.radixdlt.common.AID;
+import org.radix.shards.ShardRange;
+
+/**
+ * A read-only view of a {@link LedgerEntryStoreView} bounded by a certain logical clock.
+ * Entries stored after that logical clock are not visible, so scans of the view do not chase entries
+ * stored concurrently and no writers are blocked while reading it.
+ * <p>
+ * This is not an isolated snapshot, everything else is read from the live store:
+ * <ul>
+ *     <li>pending entries deleted or replaced after the view was taken are no longer visible in it,
+ *     also to scans and lookups that are already under way</li>
+ *     <li>pending entries at or before the logical clock are visible, even though they may still be replaced</li>
+ *     <li>entries stored before logical clocks were kept in primary keys are always visible</li>
+ * </ul>
+ * Readers that must not see an entry twice or miss one that was deleted have to keep track of what they read.
+ */
+public interface LedgerEntryClockView {
+	/**
+	 * Gets the logical clock bounding this view
+	 * @return The logical clock of this view
+	 */
+	long getLogicalClock();
+
+	/**
+	 * Checks whether the given aid is currently stored at or before the logical clock of this view
+	 * @param aid The aid
+	 * @return Whether the given aid is contained in this view
+	 */
+	boolean contains(AID aid);
+
+	/**
+	 * Scans all entries in this view under a certain index in ledger order, in pages.
+	 *
+	 * @param type The type of index
+	 * @param index The index
+	 * @return The resulting scanner, positioned before the first entry
+	 */
+	IndexScanner scan(StoreIndex.LedgerIndexType type, StoreIndex index);
+
+	/**
+	 * Scans all entries in this view stored in a shard within a certain shard range in order of shard, in pages.
+	 * An entry in multiple shards within the range is returned once for each of those shards.
+	 *
+	 * @param range The shard range
+	 * @return The resulting scanner, positioned before the first entry
+	 */
+	IndexScanner scanShards(ShardRange range);
+}
@@ -17,8 +17,12 @@
 
 package com.radixdlt.store;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.radixdlt.common.AID;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -34,15 +38,49 @@ public interface LedgerEntryStore extends LedgerEntryStoreView {
 	void commit(AID aid);
 
 	/**
-	 * Stores a {@link LedgerEntry} with certain indices.
+	 * Irreversibly commits a batch of atoms in a single transaction.
+	 * Either all of the given atoms are committed or none of them are.
+	 *
+	 * @param aids The aids to commit
+	 */
+	void commitBatch(Collection<AID> aids);
+
+	/**
+	 * Stores a {@link LedgerEntry} with certain indices and no shards.
+	 * The stored atom will be treated as 'pending' until it is eventually deleted or committed.
+	 *
+	 * @param ledgerEntry The ledgerEntry
+	 * @param uniqueIndices The unique indices
+	 * @param duplicateIndices The duplicate indices
+	 * @return Whether the {@link LedgerEntry} was stored
+	 */
+	default LedgerEntryStoreResult store(LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices) {
+		return store(ledgerEntry, uniqueIndices, duplicateIndices, ImmutableSet.of());
+	}
+
+	/**
+	 * Stores a {@link LedgerEntry} with certain indices in certain shards.
 	 * The stored atom will be treated as 'pending' until it is eventually deleted or committed.
 	 *
 	 * @param ledgerEntry The ledgerEntry
 	 * @param uniqueIndices The unique indices
 	 * @param duplicateIndices The duplicate indices
+	 * @param shards The shards the ledgerEntry is in, as found by {@link LedgerEntryStoreView#scanShards}
 	 * @return Whether the {@link LedgerEntry} was stored
 	 */
-	LedgerEntryStoreResult store(LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices);
+	LedgerEntryStoreResult store(LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices, Set<Long> shards);
+
+	/**
+	 * Stores a batch of {@link LedgerEntry}s with their indices in a single transaction.
+	 * Entries are stored independently, so an entry that is in conflict with the store
+	 * (or with an earlier entry in the same batch) is reported in its result without
+	 * preventing the other entries from being stored.
+	 * The stored atoms will be treated as 'pending' until they are eventually deleted or committed.
+	 *
+	 * @param ledgerEntries The ledger entries and their indices
+	 * @return The result for each entry, in the same order as the given entries
+	 */
+	ImmutableList<LedgerEntryStoreResult> storeBatch(List<IndexedLedgerEntry> ledgerEntries);
 
 	/**
 	 * Replaces a set of atoms with another atom in an atomic operation
@@ -54,7 +92,22 @@ public interface LedgerEntryStore extends LedgerEntryStoreView {
 	 * @param duplicateIndices The duplicate indices of that atom
 	 * @return Whether all {@link AID}s were successfully deleted
 	 */
-	LedgerEntryStoreResult replace(Set<AID> aids, LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices);
+	default LedgerEntryStoreResult replace(Set<AID> aids, LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices) {
+		return replace(aids, ledgerEntry, uniqueIndices, duplicateIndices, ImmutableSet.of());
+	}
+
+	/**
+	 * Replaces a set of atoms with another atom in certain shards in an atomic operation
+	 * The stored atom will be treated as 'pending' until it is eventually deleted or committed.
+
+	 * @param aids The aids to delete
+	 * @param ledgerEntry The new ledgerEntry
+	 * @param uniqueIndices The unique indices of that atom
+	 * @param duplicateIndices The duplicate indices of that atom
+	 * @param shards The shards of that atom
+	 * @return Whether all {@link AID}s were successfully deleted
+	 */
+	LedgerEntryStoreResult replace(Set<AID> aids, LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices, Set<Long> shards);
 
 	void reset();
 
@@ -18,8 +18,11 @@
 package com.radixdlt.store;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.radixdlt.common.AID;
+import org.radix.shards.ShardRange;
 
+import java.util.Collection;
 import java.util.Optional;
 import java.util.Set;
 
@@ -54,6 +57,13 @@ public interface LedgerEntryStoreView {
 	 */
 	Optional<LedgerEntry> get(AID aid);
 
+	/**
+	 * Gets the atoms associated with certain aids in bulk
+	 * @param aids The aids
+	 * @return The atoms by aid for all of the given aids that are present
+	 */
+	ImmutableMap<AID, LedgerEntry> getAll(Collection<AID> aids);
+
 	/**
 	 * Gets the unique indices associated with a certain aid
 	 * @param aid The aid
@@ -71,6 +81,42 @@ public interface LedgerEntryStoreView {
 	 */
 	SearchCursor search(StoreIndex.LedgerIndexType type, StoreIndex index, LedgerSearchMode mode);
 
+	/**
+	 * Scans all entries under a certain index in ledger order, in pages.
+	 *
+	 * @param type The type of index
+	 * @param index The index
+	 * @return The resulting scanner, positioned before the first entry
+	 */
+	IndexScanner scan(StoreIndex.LedgerIndexType type, StoreIndex index);
+
+	/**
+	 * Scans all entries stored in a shard within a certain shard range in order of shard, in pages.
+	 * An entry in multiple shards within the range is returned once for each of those shards.
+	 *
+	 * @param range The shard range
+	 * @return The resulting scanner, positioned before the first entry
+	 */
+	IndexScanner scanShards(ShardRange range);
+
+	/**
+	 * Gets a view of this store bounded by the latest logical clock up to which all entries are fully stored.
+	 * Note that this is not an isolated snapshot, see {@link LedgerEntryClockView}.
+	 *
+	 * @return The resulting view
+	 */
+	LedgerEntryClockView clockView();
+
+	/**
+	 * Gets a view of this store bounded by a certain logical clock.
+	 * Note that this is not an isolated snapshot, see {@link LedgerEntryClockView}.
+	 *
+	 * @param logicalClock The logical clock, at most the logical clock of {@link #clockView()}
+	 * @return The resulting view
+	 * @throws IllegalArgumentException if entries at the given logical clock may not be fully stored yet
+	 */
+	LedgerEntryClockView clockViewAt(long logicalClock);
+
 	/**
 	 * Checks whether a certain index is contained in this ledger.
 	 *
@@ -82,7 +128,9 @@ public interface LedgerEntryStoreView {
 	boolean contains(StoreIndex.LedgerIndexType type, StoreIndex index, LedgerSearchMode mode);
 
 	/**
-	 * Advance the cursor to discover up to certain number of aids within a shard range
+	 * Advance the cursor to discover up to certain number of committed aids of all shards.
+	 * Committed logical clocks are strictly increasing but not necessarily dense, atoms committed
+	 * by older versions of a store may keep the sparse logical clocks they were committed at.
 	 * @param logicalClock The current cursor
 	 * @param limit The maximum number of aids
 	 * @return The relevant aids and the advanced cursor
@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.radixdlt.common.AID;
+
+/**
+ * An in-memory Bloom filter over the {@link AID}s of stored ledger entries, used to answer
+ * "definitely absent" without going to disk. Entries are never removed, so deleted entries
+ * remain possibly present until the filter is rebuilt.
+ */
+final class AidBloomFilter {
+	private final long expectedEntries;
+	private final double falsePositiveRate;
+
+	private volatile BloomFilter<byte[]> filter;
+
+	AidBloomFilter(long expectedEntries, double falsePositiveRate) {
+		if (expectedEntries <= 0) {
+			throw new IllegalArgumentException("expectedEntries must be positive: " + expectedEntries);
+		}
+		if (falsePositiveRate <= 0.0 || falsePositiveRate >= 1.0) {
+			throw new IllegalArgumentException("falsePositiveRate must be in (0, 1): " + falsePositiveRate);
+		}
+		this.expectedEntries = expectedEntries;
+		this.falsePositiveRate = falsePositiveRate;
+		this.filter = create();
+	}
+
+	private BloomFilter<byte[]> create() {
+		return BloomFilter.create(Funnels.byteArrayFunnel(), this.expectedEntries, this.falsePositiveRate);
+	}
+
+	void put(AID aid) {
+		this.filter.put(aid.getBytes());
+	}
+
+	boolean mightContain(AID aid) {
+		return this.filter.mightContain(aid.getBytes());
+	}
+
+	long approximateEntryCount() {
+		return this.filter.approximateElementCount();
+	}
+
+	long getExpectedEntries() {
+		return this.expectedEntries;
+	}
+
+	void clear() {
+		this.filter = create();
+	}
+}
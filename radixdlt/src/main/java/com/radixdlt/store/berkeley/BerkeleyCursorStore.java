@@ -23,6 +23,7 @@ import com.radixdlt.common.EUID;
 import com.radixdlt.consensus.tempo.TempoException;
 import com.radixdlt.store.CursorStore;
 import com.radixdlt.utils.Longs;
+import com.sleepycat.je.Cursor;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
 import com.sleepycat.je.DatabaseEntry;
@@ -32,6 +33,7 @@ import com.sleepycat.je.LockMode;
 import com.sleepycat.je.OperationStatus;
 import com.sleepycat.je.Transaction;
 import com.sleepycat.je.TransactionConfig;
+import org.bouncycastle.util.encoders.Hex;
 import org.radix.database.DatabaseEnvironment;
 import org.radix.logging.Logger;
 import org.radix.logging.Logging;
@@ -42,6 +44,8 @@ import java.util.OptionalLong;
 @Singleton
 public final class BerkeleyCursorStore implements CursorStore {
 	private static final String LC_CURSOR_STORE_NAME = "tempo2.sync.iterative.cursors";
+	// durability of the store is configured with db.durability.cursors
+	private static final String DURABILITY_STORE_NAME = "cursors";
 	private static final Logger logger = Logging.getLogger("store.cursors");
 
 	private final DatabaseEnvironment dbEnv;
@@ -76,8 +80,32 @@ public final class BerkeleyCursorStore implements CursorStore {
 			throw new TempoException("Error while opening database", e);
 		}
 
-		if (System.getProperty("db.check_integrity", "1").equals("1")) {
-			// TODO implement intergrity check
+		if (this.dbEnv.isIntegrityCheckEnabled()) {
+			checkIntegrity();
+		}
+	}
+
+	/**
+	 * Checks that every stored cursor is a logical clock, there is one cursor per peer so this is cheap.
+	 */
+	private void checkIntegrity() {
+		long checked = 0;
+		long errors = 0;
+		try (Cursor cursor = this.cursors.openCursor(null, null)) {
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry value = new DatabaseEntry();
+			OperationStatus status = cursor.getFirst(key, value, LockMode.READ_UNCOMMITTED);
+			while (status == OperationStatus.SUCCESS) {
+				if (key.getData().length == 0 || value.getData().length != Long.BYTES) {
+					logger.error("Cursor for '" + Hex.toHexString(key.getData()) + "' is corrupt");
+					errors++;
+				}
+				checked++;
+				status = cursor.getNext(key, value, LockMode.READ_UNCOMMITTED);
+			}
+		}
+		if (errors > 0) {
+			logger.error("Integrity check of " + checked + " cursors found " + errors + " errors");
 		}
 	}
 
@@ -113,7 +141,7 @@ public final class BerkeleyCursorStore implements CursorStore {
 
 	@Override
 	public void put(EUID nid, long cursor) {
-		Transaction transaction = dbEnv.getEnvironment().beginTransaction(null, null);
+		Transaction transaction = dbEnv.beginTransaction(DURABILITY_STORE_NAME);
 		try {
 			DatabaseEntry key = new DatabaseEntry(toPKey(nid));
 			DatabaseEntry value = new DatabaseEntry(Longs.toByteArray(cursor));
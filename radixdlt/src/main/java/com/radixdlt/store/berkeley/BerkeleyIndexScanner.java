@@ -0,0 +1,102 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import com.google.common.collect.ImmutableList;
+import com.radixdlt.common.AID;
+import com.radixdlt.store.IndexScanner;
+import com.radixdlt.store.LedgerEntry;
+import com.radixdlt.store.StoreIndex;
+import org.bouncycastle.util.Arrays;
+
+import java.util.Objects;
+
+/**
+ * A Tempo implementation of an {@link IndexScanner} over an inclusive range of indices.
+ * The underlying database cursor is held open for the duration of a page only, so that no locks
+ * are held between pages, and is positioned once per page after the last returned index and primary key.
+ */
+public class BerkeleyIndexScanner implements IndexScanner {
+	/**
+	 * Maps a scanned index, primary key and ledger entry (null if entries are not read) to a result.
+	 */
+	@FunctionalInterface
+	interface EntryMapper<T> {
+		T map(byte[] index, byte[] primary, LedgerEntry ledgerEntry);
+	}
+
+	private final BerkeleyLedgerEntryStore store;
+	private final StoreIndex.LedgerIndexType type;
+	private final byte[] fromIndex;
+	private final byte[] toIndex;
+	// entries stored after this logical clock are skipped
+	private final long maxLogicalClock;
+
+	// index and primary key of the last returned entry, null if nothing was returned yet
+	private byte[] lastIndex;
+	private byte[] lastPrimary;
+	private boolean exhausted;
+
+	BerkeleyIndexScanner(BerkeleyLedgerEntryStore store, StoreIndex.LedgerIndexType type, byte[] fromIndex, byte[] toIndex, long maxLogicalClock) {
+		this.store = Objects.requireNonNull(store);
+		this.type = Objects.requireNonNull(type);
+		this.fromIndex = Arrays.clone(Objects.requireNonNull(fromIndex));
+		this.toIndex = Arrays.clone(Objects.requireNonNull(toIndex));
+		this.maxLogicalClock = maxLogicalClock;
+	}
+
+	@Override
+	public StoreIndex.LedgerIndexType getType() {
+		return this.type;
+	}
+
+	@Override
+	public ImmutableList<AID> nextAids(int limit) {
+		return next(limit, false, (index, primary, ledgerEntry) -> AID.from(primary, Long.BYTES + 1));
+	}
+
+	@Override
+	public ImmutableList<LedgerEntry> nextEntries(int limit) {
+		return next(limit, true, (index, primary, ledgerEntry) -> ledgerEntry);
+	}
+
+	@Override
+	public synchronized boolean isExhausted() {
+		return this.exhausted;
+	}
+
+	private synchronized <T> ImmutableList<T> next(int limit, boolean readEntries, EntryMapper<T> mapper) {
+		if (limit <= 0) {
+			throw new IllegalArgumentException("limit must be positive: " + limit);
+		}
+		if (this.exhausted) {
+			return ImmutableList.of();
+		}
+
+		ImmutableList<T> page = this.store.scan(this.type, this.fromIndex, this.toIndex, this.lastIndex, this.lastPrimary, this.maxLogicalClock, limit, readEntries,
+			(index, primary, ledgerEntry) -> {
+				this.lastIndex = index;
+				this.lastPrimary = primary;
+				return mapper.map(index, primary, ledgerEntry);
+			});
+		if (page.size() < limit) {
+			this.exhausted = true;
+		}
+		return page;
+	}
+}
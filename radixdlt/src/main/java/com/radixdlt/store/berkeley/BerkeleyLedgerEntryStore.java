@@ -20,6 +20,7 @@ package com.radixdlt.store.berkeley;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.primitives.UnsignedBytes;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -37,8 +38,11 @@ import com.radixdlt.store.LedgerEntry;
 import com.radixdlt.consensus.tempo.TempoException;
 import com.radixdlt.store.LedgerEntryConflict;
 import com.radixdlt.store.LedgerEntryStoreResult;
+import com.radixdlt.store.LedgerEntryClockView;
 import com.radixdlt.store.LedgerEntryStatus;
 import com.radixdlt.store.LedgerEntryStore;
+import com.radixdlt.store.IndexedLedgerEntry;
+import com.radixdlt.store.IndexScanner;
 import com.radixdlt.utils.Longs;
 import com.sleepycat.je.Cursor;
 import com.sleepycat.je.Database;
@@ -46,32 +50,40 @@ import com.sleepycat.je.DatabaseConfig;
 import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.DatabaseNotFoundException;
 import com.sleepycat.je.Environment;
+import com.sleepycat.je.LockConflictException;
 import com.sleepycat.je.LockMode;
 import com.sleepycat.je.OperationStatus;
-import com.sleepycat.je.SecondaryConfig;
-import com.sleepycat.je.SecondaryCursor;
-import com.sleepycat.je.SecondaryDatabase;
-import com.sleepycat.je.SecondaryMultiKeyCreator;
 import com.sleepycat.je.Transaction;
 import com.sleepycat.je.TransactionConfig;
-import com.sleepycat.je.UniqueConstraintException;
 import org.radix.database.DatabaseEnvironment;
-import org.radix.database.exceptions.DatabaseException;
+import org.radix.database.DurabilityMode;
 import org.radix.logging.Logger;
 import org.radix.logging.Logging;
 import org.radix.shards.ShardRange;
-import org.radix.shards.ShardSpace;
-
+import org.radix.utils.SystemMetaData;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.radixdlt.store.berkeley.LedgerEntryIndices.ENTRY_INDEX_PREFIX;
@@ -86,39 +98,119 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 	private static final String UNIQUE_INDICES_DB_NAME = "tempo2.unique_indices";
 	private static final String PENDING_DB_NAME = "tempo2.pending";
 	private static final String ATOMS_DB_NAME = "tempo2.atoms";
+	private static final String COMMITTED_DB_NAME = "tempo2.committed";
+	// durability of the store is configured with db.durability.atoms
+	private static final String DURABILITY_STORE_NAME = "atoms";
 
-	private static final byte PREFIX_COMMITTED = 0b0000_0000;
-	private static final byte PREFIX_PENDING = 0b0000_0001;
+	// entries are stored under a single prefix for their whole lifetime, their status is tracked in separate databases
+	private static final byte PREFIX_ENTRY = 0b0000_0001;
+	// entries committed before commits were tracked in the committed database were moved to this prefix
+	private static final byte PREFIX_LEGACY_COMMITTED = 0b0000_0000;
 
 	private static final byte[] EMPTY_DATA = new byte[0];
 
+	private static final long DEFAULT_ENTRY_CACHE_MAX_BYTES = 32L * 1024 * 1024;
+	private static final long DEFAULT_AID_FILTER_EXPECTED_ENTRIES = 4_000_000L;
+	private static final double DEFAULT_AID_FILTER_FALSE_POSITIVE_RATE = 0.01;
+	private static final String DEFAULT_ENTRY_CODEC = LedgerEntryCodec.Format.SNAPPY.name();
+	private static final long DEFAULT_INDEX_PRELOAD_MAX_BYTES = 0L;
+	private static final long DEFAULT_INTEGRITY_CHECK_TIME_BUDGET = 60_000L;
+	private static final boolean DEFAULT_PAYLOAD_LOG = false;
+	private static final int DEFAULT_PAYLOAD_LOG_SEGMENT_SIZE = 256 * 1024 * 1024;
+	private static final int DEFAULT_PAYLOAD_LOG_MAX_MAPPED_SEGMENTS = 16;
+	private static final String PAYLOAD_LOG_DIRECTORY = "payloads";
+	private static final long DEFAULT_STORE_LOCK_TIMEOUT = 0L;
+	private static final int MAX_STORE_BATCH_LOCK_CONFLICTS = 16;
+	private static final long STORE_BATCH_RETRY_BACKOFF_MS = 10L;
+
+	private static final String ATOM_INDICES_FORMAT_KEY = "format";
+	private static final String LEGACY_COMMITTED_MIGRATED_KEY = "legacy_migrated";
+	private static final int MIGRATION_BATCH_SIZE = 10_000;
+
+	private static final String ENTRY_CODEC_DICTIONARY_KEY = "entry_codec.dictionary";
+	private static final int ENTRY_CODEC_DICTIONARY_SIZE = 32 * 1024; // deflate window size
+	private static final int ENTRY_CODEC_DICTIONARY_MIN_SAMPLES = 100;
+	private static final int ENTRY_CODEC_DICTIONARY_MAX_SAMPLES = 2_000;
+	private static final double ENTRY_CODEC_DICTIONARY_MIN_SHARE = 0.1;
+
 	private final EUID self;
 	private final Serialization serialization;
 	private final DatabaseEnvironment dbEnv;
+	private final LedgerEntryCache entryCache;
+	private final AidBloomFilter aidFilter;
+	private final LedgerEntryCodec entryCodec;
+	// entry records are stored in here instead of the atoms database if enabled, null otherwise
+	private final SegmentPayloadLog payloadLog;
+	// lock timeout of batch stores in milliseconds, or zero for the lock timeout of the environment
+	private final long storeLockTimeout;
+	private IndexPreloader indexPreloader;
 
 	private final AtomicLong pendingLogicalClock;
-	private final Map<AID, LedgerEntryIndices> currentIndices = new ConcurrentHashMap<>();
+	private final Object commitLock = new Object();
+	private final AtomicLong committedLogicalClock;
+	// mirror of the pending database, pending logical clocks by AID
+	private final Map<AID, Long> pendingAids = new ConcurrentHashMap<>();
+	// pending logical clocks of stores that are not committed or aborted yet, guarded by itself when reserving
+	private final NavigableSet<Long> inflightLogicalClocks = new ConcurrentSkipListSet<>();
 
 	private Database atoms; // TempoAtoms by primary keys (logical clock + AID bytes, no prefixes)
-	private SecondaryDatabase uniqueIndices; // TempoAtoms by secondary unique indices (with prefixes)
-	private SecondaryDatabase duplicatedIndices; // TempoAtoms by secondary duplicate indices (with prefixes)
+	private Database uniqueIndices; // primary keys by unique indices (with prefixes), written along with the atoms
+	private Database duplicatedIndices; // primary keys by duplicate indices (with prefixes), written along with the atoms
 	private Database atomIndices; // TempoAtomIndices by same primary keys
 	private Database pending; // AIDs marked as 'pending'
+	private Database committed; // AIDs of committed atoms by committed logical clock
 
 	@Inject
 	public BerkeleyLedgerEntryStore(
 		@Named("self") EUID self,
 		Serialization serialization,
-		DatabaseEnvironment dbEnv
+		DatabaseEnvironment dbEnv,
+		BerkeleyLedgerEntryStoreConfiguration configuration
 	) {
 		this.self = Objects.requireNonNull(self);
 		this.serialization = Objects.requireNonNull(serialization);
 		this.dbEnv = Objects.requireNonNull(dbEnv);
-
+		this.entryCache = new LedgerEntryCache(configuration.entryCacheMaxBytes(DEFAULT_ENTRY_CACHE_MAX_BYTES));
+		this.aidFilter = new AidBloomFilter(
+			configuration.aidFilterExpectedEntries(DEFAULT_AID_FILTER_EXPECTED_ENTRIES),
+			configuration.aidFilterFalsePositiveRate(DEFAULT_AID_FILTER_FALSE_POSITIVE_RATE)
+		);
+
+		this.payloadLog = openPayloadLog(configuration);
+		this.storeLockTimeout = configuration.storeLockTimeout(DEFAULT_STORE_LOCK_TIMEOUT);
 		this.open();
+		this.entryCodec = openEntryCodec(LedgerEntryCodec.Format.from(configuration.entryCodec(DEFAULT_ENTRY_CODEC)));
+
+		this.pendingLogicalClock = new AtomicLong(getLastLogicalClock(PREFIX_ENTRY));
+		this.committedLogicalClock = new AtomicLong(getLastCommittedLogicalClock());
+
+		if (this.dbEnv.isIntegrityCheckEnabled()) {
+			checkIntegrity(
+				configuration.integrityCheckThreads(Runtime.getRuntime().availableProcessors()),
+				configuration.integrityCheckTimeBudget(DEFAULT_INTEGRITY_CHECK_TIME_BUDGET)
+			);
+		}
 
-		// TODO is this LC persistence sufficient? might be reset if there are no pending at some point in time
-		this.pendingLogicalClock = new AtomicLong(getLastPendingCursor());
+		long indexPreloadMaxBytes = configuration.indexPreloadMaxBytes(DEFAULT_INDEX_PRELOAD_MAX_BYTES);
+		if (indexPreloadMaxBytes > 0) {
+			// warms the cache for index lookups while the rest of the node starts up
+			this.indexPreloader = new IndexPreloader(this.dbEnv.getEnvironment(), indexPreloadMaxBytes, this.uniqueIndices, this.duplicatedIndices);
+			this.indexPreloader.start();
+		}
+	}
+
+	private SegmentPayloadLog openPayloadLog(BerkeleyLedgerEntryStoreConfiguration configuration) {
+		if (!configuration.payloadLog(DEFAULT_PAYLOAD_LOG)) {
+			return null;
+		}
+		try {
+			File directory = new File(this.dbEnv.getEnvironment().getHome(), PAYLOAD_LOG_DIRECTORY);
+			return new SegmentPayloadLog(directory,
+				configuration.payloadLogSegmentSize(DEFAULT_PAYLOAD_LOG_SEGMENT_SIZE),
+				configuration.payloadLogMaxMappedSegments(DEFAULT_PAYLOAD_LOG_MAX_MAPPED_SEGMENTS));
+		} catch (IOException | UncheckedIOException e) {
+			throw new TempoException("Error while opening payload log", e);
+		}
 	}
 
 	private void open() {
@@ -128,16 +220,15 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 		primaryConfig.setKeyPrefixing(true);
 		primaryConfig.setBtreeComparator(BerkeleyLedgerEntryStore.AtomStorePackedPrimaryKeyComparator.class);
 
-		SecondaryConfig uniqueIndicesConfig = new SecondaryConfig();
+		// index databases have the same layout as the secondary databases they replace
+		DatabaseConfig uniqueIndicesConfig = new DatabaseConfig();
 		uniqueIndicesConfig.setAllowCreate(true);
 		uniqueIndicesConfig.setTransactional(true);
-		uniqueIndicesConfig.setMultiKeyCreator(AtomSecondaryCreator.from(this.currentIndices, LedgerEntryIndices::getUniqueIndices));
 
-		SecondaryConfig duplicateIndicesConfig = new SecondaryConfig();
+		DatabaseConfig duplicateIndicesConfig = new DatabaseConfig();
 		duplicateIndicesConfig.setAllowCreate(true);
 		duplicateIndicesConfig.setTransactional(true);
 		duplicateIndicesConfig.setSortedDuplicates(true);
-		duplicateIndicesConfig.setMultiKeyCreator(AtomSecondaryCreator.from(this.currentIndices, LedgerEntryIndices::getDuplicateIndices));
 
 		DatabaseConfig indicesConfig = new DatabaseConfig();
 		indicesConfig.setAllowCreate(true);
@@ -149,20 +240,26 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 		pendingConfig.setTransactional(true);
 		pendingConfig.setBtreeComparator(BerkeleyLedgerEntryStore.AtomStorePackedPrimaryKeyComparator.class);
 
+		DatabaseConfig committedConfig = new DatabaseConfig();
+		committedConfig.setAllowCreate(true);
+		committedConfig.setTransactional(true);
+
 		try {
 			Environment dbEnv = this.dbEnv.getEnvironment();
 			this.atoms = dbEnv.openDatabase(null, ATOMS_DB_NAME, primaryConfig);
-			this.uniqueIndices = dbEnv.openSecondaryDatabase(null, UNIQUE_INDICES_DB_NAME, this.atoms, uniqueIndicesConfig);
-			this.duplicatedIndices = dbEnv.openSecondaryDatabase(null, DUPLICATE_INDICES_DB_NAME, this.atoms, duplicateIndicesConfig);
+			this.uniqueIndices = dbEnv.openDatabase(null, UNIQUE_INDICES_DB_NAME, uniqueIndicesConfig);
+			this.duplicatedIndices = dbEnv.openDatabase(null, DUPLICATE_INDICES_DB_NAME, duplicateIndicesConfig);
 			this.atomIndices = dbEnv.openDatabase(null, ATOM_INDICES_DB_NAME, primaryConfig);
 			this.pending = dbEnv.openDatabase(null, PENDING_DB_NAME, pendingConfig);
+			this.committed = dbEnv.openDatabase(null, COMMITTED_DB_NAME, committedConfig);
 		} catch (Exception e) {
 			throw new TempoException("Error while opening databases", e);
 		}
 
-		if (System.getProperty("db.check_integrity", "1").equals("1")) {
-			// TODO implement integrity check
-		}
+		migrateLegacyCommitted();
+		migrateLegacyIndices();
+		rebuildAidFilter();
+		rebuildPendingAids();
 	}
 
 	@Override
@@ -177,7 +274,14 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 				env.truncateDatabase(transaction, DUPLICATE_INDICES_DB_NAME, false);
 				env.truncateDatabase(transaction, ATOM_INDICES_DB_NAME, false);
 				env.truncateDatabase(transaction, PENDING_DB_NAME, false);
+				env.truncateDatabase(transaction, COMMITTED_DB_NAME, false);
 				transaction.commit();
+				this.entryCache.invalidateAll();
+				this.aidFilter.clear();
+				this.pendingAids.clear();
+				if (this.payloadLog != null) {
+					this.payloadLog.clear();
+				}
 			} catch (DatabaseNotFoundException e) {
 				if (transaction != null) {
 					transaction.abort();
@@ -196,6 +300,10 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 
 	@Override
 	public void close() {
+		if (this.indexPreloader != null) {
+			this.indexPreloader.stop();
+			this.indexPreloader = null;
+		}
 		if (this.uniqueIndices != null) {
 			this.uniqueIndices.close();
 		}
@@ -211,6 +319,12 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 		if (this.pending != null) {
 			this.pending.close();
 		}
+		if (this.committed != null) {
+			this.committed.close();
+		}
+		if (this.payloadLog != null) {
+			this.payloadLog.close();
+		}
 	}
 
 	private void fail(String message) {
@@ -223,38 +337,58 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 		throw new TempoException(message, cause);
 	}
 
+	private static void abortIfValid(Transaction transaction) {
+		// transaction may already have been aborted by a conflicting store
+		if (transaction.isValid()) {
+			transaction.abort();
+		}
+	}
+
 	@Override
 	public boolean contains(AID aid) {
+		if (!this.aidFilter.mightContain(aid)) {
+			return false;
+		}
+
 		DatabaseEntry key = new DatabaseEntry(StoreIndex.from(ENTRY_INDEX_PREFIX, aid.getBytes()));
-		return OperationStatus.SUCCESS == this.uniqueIndices.get(null, key, null, LockMode.DEFAULT);
+		DatabaseEntry pKey = new DatabaseEntry();
+		return OperationStatus.SUCCESS == this.uniqueIndices.get(null, key, pKey, LockMode.DEFAULT);
 	}
 
 	@Override
 	public LedgerEntryStatus getStatus(AID aid) {
-		if (!contains(aid)) {
-			return LedgerEntryStatus.UNAVAILABLE;
+		if (this.pendingAids.containsKey(aid)) {
+			return LedgerEntryStatus.PENDING;
 		}
 
-		if (isPending(aid)) {
-			return LedgerEntryStatus.PENDING;
-		} else {
+		if (contains(aid)) {
 			return LedgerEntryStatus.COMMITTED;
+		} else {
+			return LedgerEntryStatus.UNAVAILABLE;
 		}
 	}
 
-	private boolean isPending(AID aid) {
+	private boolean isPending(AID aid, Transaction transaction) {
 			DatabaseEntry key = new DatabaseEntry(aid.getBytes());
-			return OperationStatus.SUCCESS == this.pending.get(null, key, null, LockMode.DEFAULT);
+			return OperationStatus.SUCCESS == this.pending.get(transaction, key, null, LockMode.DEFAULT);
 	}
 
 	@Override
 	public Optional<LedgerEntry> get(AID aid) {
+		return this.entryCache.get(aid, this::doGet);
+	}
+
+	private Optional<LedgerEntry> doGet(AID aid) {
+		if (!this.aidFilter.mightContain(aid)) {
+			return Optional.empty();
+		}
+
 		try {
 			DatabaseEntry key = new DatabaseEntry(StoreIndex.from(ENTRY_INDEX_PREFIX, aid.getBytes()));
 			DatabaseEntry value = new DatabaseEntry();
 
-			if (this.uniqueIndices.get(null, key, value, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-				return Optional.of(serialization.fromDson(value.getData(), LedgerEntry.class));
+			if (getByUniqueIndex(null, key, new DatabaseEntry(), value, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				return Optional.of(toLedgerEntry(value.getData()));
 			}
 		} catch (Exception e) {
 			fail("Get of atom '" + aid + "' failed", e);
@@ -263,6 +397,49 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 		return Optional.empty();
 	}
 
+	@Override
+	public ImmutableMap<AID, LedgerEntry> getAll(Collection<AID> aids) {
+		if (aids.isEmpty()) {
+			return ImmutableMap.of();
+		}
+		return this.entryCache.getAll(aids, this::doGetAll);
+	}
+
+	private Map<AID, LedgerEntry> doGetAll(Collection<AID> aids) {
+		// look up in key order so that consecutive lookups hit nearby parts of the tree
+		List<AID> sortedAids = aids.stream()
+			.filter(this.aidFilter::mightContain)
+			.sorted(Comparator.comparing(AID::getBytes, UnsignedBytes.lexicographicalComparator()))
+			.collect(Collectors.toList());
+
+		Map<AID, LedgerEntry> ledgerEntries = new HashMap<>();
+		try (Cursor indexCursor = this.uniqueIndices.openCursor(null, null);
+			 Cursor atomCursor = this.atoms.openCursor(null, null)) {
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry pKey = new DatabaseEntry();
+			List<byte[]> pKeys = new ArrayList<>(sortedAids.size());
+			for (AID aid : sortedAids) {
+				key.setData(StoreIndex.from(ENTRY_INDEX_PREFIX, aid.getBytes()));
+				if (indexCursor.getSearchKey(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+					pKeys.add(pKey.getData().clone());
+				}
+			}
+
+			// read the atoms in primary key order as well
+			pKeys.sort(UnsignedBytes.lexicographicalComparator());
+			DatabaseEntry value = new DatabaseEntry();
+			for (byte[] primary : pKeys) {
+				pKey.setData(primary);
+				if (atomCursor.getSearchKey(pKey, value, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+					ledgerEntries.put(AID.from(primary, Long.BYTES + 1), toLedgerEntry(value.getData()));
+				}
+			}
+		} catch (Exception e) {
+			fail("Get of " + aids.size() + " atoms failed", e);
+		}
+		return ledgerEntries;
+	}
+
 	@Override
 	public Set<StoreIndex> getUniqueIndices(AID aid) {
 		try {
@@ -275,125 +452,387 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 
 	@Override
 	public void commit(AID aid) {
-		// delete from pending and move to committed
-		Transaction transaction = dbEnv.getEnvironment().beginTransaction(null, null);
-		try {
-			// TODO there must be a better way to change primary keys
-			DatabaseEntry pKey = new DatabaseEntry();
-			LedgerEntryIndices indices = doGetIndices(transaction, aid, pKey);
-			DatabaseEntry value = new DatabaseEntry();
-			OperationStatus status = atoms.get(transaction, pKey, value, LockMode.DEFAULT);
-			if (status != OperationStatus.SUCCESS) {
-				fail("Getting pending atom '" + aid + "' failed with status " + status);
-			}
-			if (!doDelete(aid, transaction, pKey, indices)) {
-				fail("Delete of pending atom '" + aid + "' failed");
-			}
-			doRemovePending(aid, transaction);
+		commitBatch(ImmutableList.of(aid));
+	}
 
-			long logicalClock = lcFromPKey(pKey.getData());
-			// transaction is aborted in doStore in case of conflict
-			LedgerEntryStoreResult result = doStore(PREFIX_COMMITTED, logicalClock, aid, value.getData(), indices, transaction);
-			if (result.isSuccess()) {
+	@Override
+	public void commitBatch(Collection<AID> aids) {
+		if (aids.isEmpty()) {
+			return;
+		}
+
+		// new committed logical clocks are dense, so commits are serialised to be able to roll back the clock on abort
+		synchronized (this.commitLock) {
+			long initialCommittedLogicalClock = committedLogicalClock.get();
+			Transaction transaction = dbEnv.beginTransaction(DURABILITY_STORE_NAME);
+			try {
+				for (AID aid : aids) {
+					doCommit(aid, transaction);
+				}
 				transaction.commit();
+				aids.forEach(this.pendingAids::remove);
+				this.entryCache.invalidateAll(aids);
+			} catch (Exception e) {
+				transaction.abort();
+				committedLogicalClock.set(initialCommittedLogicalClock);
+				fail("Commit of pending atoms " + aids + " failed", e);
 			}
-		} catch (Exception e) {
-			transaction.abort();
-			fail("Commit of pending atom '" + aid + "' failed", e);
+		}
+		// wait outside of the commit lock, so that concurrent commits can be synced together
+		dbEnv.awaitDurable(DURABILITY_STORE_NAME);
+	}
+
+	private void doCommit(AID aid, Transaction transaction) {
+		// the primary record and its indices stay in place, only the status of the atom changes
+		doRemovePending(aid, transaction);
+
+		long committedLogicalClock = this.committedLogicalClock.incrementAndGet();
+		DatabaseEntry key = new DatabaseEntry(Longs.toByteArray(committedLogicalClock));
+		DatabaseEntry value = new DatabaseEntry(aid.getBytes());
+		OperationStatus status = committed.putNoOverwrite(transaction, key, value);
+		if (status != OperationStatus.SUCCESS) {
+			fail("Marking atom '" + aid + "' as committed at " + committedLogicalClock + " failed with status " + status);
 		}
 	}
 
 	@Override
-	public LedgerEntryStoreResult store(LedgerEntry atom, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices) {
-		Transaction transaction = dbEnv.getEnvironment().beginTransaction(null, null);
+	public LedgerEntryStoreResult store(LedgerEntry atom, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices, Set<Long> shards) {
+		Transaction transaction = dbEnv.beginTransaction(DURABILITY_STORE_NAME);
+		Map<AID, Long> addedPending = new HashMap<>();
+		List<Long> reservedLogicalClocks = new ArrayList<>();
+		List<byte[]> appendedPayloads = new ArrayList<>();
 		try {
 			// transaction is aborted in doStore in case of conflict
-			LedgerEntryStoreResult result = doStorePending(atom, uniqueIndices, duplicateIndices, transaction);
+			LedgerEntryStoreResult result = doStorePending(atom, LedgerEntryIndices.from(atom, uniqueIndices, duplicateIndices, shards), transaction, addedPending, reservedLogicalClocks, appendedPayloads);
 			if (result.isSuccess()) {
+				syncPayloads();
 				transaction.commit();
+				appendedPayloads.clear();
+				this.entryCache.invalidate(atom.getAID());
+				dbEnv.awaitDurable(DURABILITY_STORE_NAME);
+			} else {
+				undoAddPending(addedPending);
+				discardPayloads(appendedPayloads);
 			}
 			return result;
 		} catch (Exception e) {
-			transaction.abort();
+			abortIfValid(transaction);
+			undoAddPending(addedPending);
+			discardPayloads(appendedPayloads);
 			fail("Store of atom '" + atom.getAID() + "' failed", e);
+		} finally {
+			releaseLogicalClocks(reservedLogicalClocks);
+		}
+		throw new IllegalStateException("Should never reach here");
+	}
+
+	@Override
+	public ImmutableList<LedgerEntryStoreResult> storeBatch(List<IndexedLedgerEntry> ledgerEntries) {
+		if (ledgerEntries.isEmpty()) {
+			return ImmutableList.of();
+		}
+
+		// retries after a conflict exclude the entry in conflict with a concurrent store, so they end after all entries,
+		// whereas retries after lock conflicts are bounded as they may not have anything to exclude yet
+		Map<Integer, LedgerEntryStoreResult> concurrentConflicts = new HashMap<>();
+		int lockConflicts = 0;
+		while (true) {
+			try {
+				Optional<ImmutableList<LedgerEntryStoreResult>> results = tryStoreBatch(ledgerEntries, concurrentConflicts);
+				if (results.isPresent()) {
+					return results.get();
+				}
+			} catch (LockConflictException e) {
+				lockConflicts += 1;
+				if (lockConflicts > MAX_STORE_BATCH_LOCK_CONFLICTS) {
+					fail("Store of " + ledgerEntries.size() + " atoms failed after " + lockConflicts + " lock conflicts", e);
+				}
+				log.warn("Store of " + ledgerEntries.size() + " atoms is in conflict with a concurrent store, retrying: " + e.getMessage());
+				awaitStoreBatchRetry(lockConflicts);
+			}
+		}
+	}
+
+	/**
+	 * Waits a random time growing with the number of lock conflicts so far, so that concurrent stores
+	 * of the same unique indices do not keep running into each other.
+	 */
+	private void awaitStoreBatchRetry(int lockConflicts) {
+		long backoff = STORE_BATCH_RETRY_BACKOFF_MS * lockConflicts;
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			fail("Interrupted while retrying store after lock conflict", e);
+		}
+	}
+
+	/**
+	 * Stores all entries of a batch that are not known to be in conflict with a concurrent store yet.
+	 * If an entry turns out to be in conflict with a concurrent store, the transaction is aborted and
+	 * the conflict of that entry is recorded so that the batch can be retried without it.
+	 * <p>
+	 * Lock timeouts and deadlocks do not tell whether the concurrent store holding the lock will commit,
+	 * so nothing is recorded for them. The transaction is aborted and the {@link LockConflictException}
+	 * is rethrown, after which a retry either stores the entry or finds the committed conflicting atoms.
+	 *
+	 * @return The results of all entries if the batch was stored, or empty if it needs to be retried
+	 * @throws LockConflictException if the batch needs to be retried after a lock conflict
+	 */
+	private Optional<ImmutableList<LedgerEntryStoreResult>> tryStoreBatch(
+		List<IndexedLedgerEntry> ledgerEntries,
+		Map<Integer, LedgerEntryStoreResult> concurrentConflicts
+	) {
+		Transaction transaction = dbEnv.beginTransaction(DURABILITY_STORE_NAME);
+		if (this.storeLockTimeout > 0) {
+			transaction.setLockTimeout(this.storeLockTimeout, TimeUnit.MILLISECONDS);
+		}
+		Map<AID, Long> addedPending = new HashMap<>();
+		List<Long> reservedLogicalClocks = new ArrayList<>();
+		List<byte[]> appendedPayloads = new ArrayList<>();
+		try {
+			ImmutableList.Builder<LedgerEntryStoreResult> results = ImmutableList.builder();
+			for (int i = 0; i < ledgerEntries.size(); i++) {
+				LedgerEntryStoreResult concurrentConflict = concurrentConflicts.get(i);
+				if (concurrentConflict != null) {
+					results.add(concurrentConflict);
+					continue;
+				}
+
+				IndexedLedgerEntry indexedEntry = ledgerEntries.get(i);
+				LedgerEntry ledgerEntry = indexedEntry.getLedgerEntry();
+				LedgerEntryIndices indices = LedgerEntryIndices.from(
+					ledgerEntry,
+					indexedEntry.getUniqueIndices(),
+					indexedEntry.getDuplicateIndices(),
+					indexedEntry.getShards()
+				);
+				// probe for conflicts up front, as a conflicting unique index write aborts the whole transaction
+				ImmutableMap<StoreIndex, LedgerEntry> conflictingAtoms = doGetConflictingAtoms(indices.getUniqueIndices(), transaction);
+				if (!conflictingAtoms.isEmpty()) {
+					results.add(LedgerEntryStoreResult.conflict(new LedgerEntryConflict(ledgerEntry, conflictingAtoms)));
+					continue;
+				}
+
+				LedgerEntryStoreResult result = doStorePending(ledgerEntry, indices, transaction, addedPending, reservedLogicalClocks, appendedPayloads);
+				if (!result.isSuccess()) {
+					// a concurrent store wrote one of the unique indices after the probe, doStore aborted the transaction
+					undoAddPending(addedPending);
+					discardPayloads(appendedPayloads);
+					concurrentConflicts.put(i, result);
+					return Optional.empty();
+				}
+				results.add(result);
+			}
+			syncPayloads();
+			transaction.commit();
+			appendedPayloads.clear();
+			this.entryCache.invalidateAll(ledgerEntries.stream()
+				.map(indexedEntry -> indexedEntry.getLedgerEntry().getAID())
+				.collect(Collectors.toList()));
+			dbEnv.awaitDurable(DURABILITY_STORE_NAME);
+			return Optional.of(results.build());
+		} catch (LockConflictException e) {
+			abortIfValid(transaction);
+			undoAddPending(addedPending);
+			discardPayloads(appendedPayloads);
+			throw e;
+		} catch (Exception e) {
+			abortIfValid(transaction);
+			undoAddPending(addedPending);
+			discardPayloads(appendedPayloads);
+			fail("Store of " + ledgerEntries.size() + " atoms failed", e);
+		} finally {
+			releaseLogicalClocks(reservedLogicalClocks);
 		}
 		throw new IllegalStateException("Should never reach here");
 	}
 
 	@Override
-	public LedgerEntryStoreResult replace(Set<AID> aids, LedgerEntry atom, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices) {
-		Transaction transaction = dbEnv.getEnvironment().beginTransaction(null, null);
+	public LedgerEntryStoreResult replace(Set<AID> aids, LedgerEntry atom, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices, Set<Long> shards) {
+		Transaction transaction = dbEnv.beginTransaction(DURABILITY_STORE_NAME);
+		Map<AID, Long> addedPending = new HashMap<>();
+		List<Long> reservedLogicalClocks = new ArrayList<>();
+		List<byte[]> appendedPayloads = new ArrayList<>();
+		List<byte[]> deletedPayloads = new ArrayList<>();
 		try {
 			for (AID aid : aids) {
-				if (!doDelete(aid, transaction)) {
+				if (!doDelete(aid, transaction, deletedPayloads)) {
 					transaction.abort();
 					fail("Could not delete '" + aid + "'");
 				}
 			}
 			// transaction is aborted in doStore in case of conflict
-			LedgerEntryStoreResult result = doStorePending(atom, uniqueIndices, duplicateIndices, transaction);
+			LedgerEntryStoreResult result = doStorePending(atom, LedgerEntryIndices.from(atom, uniqueIndices, duplicateIndices, shards), transaction, addedPending, reservedLogicalClocks, appendedPayloads);
 			if (result.isSuccess()) {
+				syncPayloads();
 				transaction.commit();
+				appendedPayloads.clear();
+				discardPayloads(deletedPayloads);
+				aids.forEach(this.pendingAids::remove);
+				this.entryCache.invalidateAll(aids);
+				this.entryCache.invalidate(atom.getAID());
+				dbEnv.awaitDurable(DURABILITY_STORE_NAME);
+			} else {
+				undoAddPending(addedPending);
+				discardPayloads(appendedPayloads);
 			}
 			return result;
 		} catch (Exception e) {
-			transaction.abort();
+			abortIfValid(transaction);
+			undoAddPending(addedPending);
+			discardPayloads(appendedPayloads);
 			fail("Replace of atoms '" + aids + "' with atom '" + atom.getAID() + "' failed", e);
+		} finally {
+			releaseLogicalClocks(reservedLogicalClocks);
 		}
 		throw new IllegalStateException("Should never reach here");
 	}
 
-	private LedgerEntryStoreResult doStorePending(LedgerEntry atom, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices, Transaction transaction) throws SerializationException {
-		byte[] atomData = serialization.toDson(atom, Output.PERSIST);
-		LedgerEntryIndices indices = LedgerEntryIndices.from(atom, uniqueIndices, duplicateIndices);
+	private LedgerEntryStoreResult doStorePending(
+		LedgerEntry atom,
+		LedgerEntryIndices indices,
+		Transaction transaction,
+		Map<AID, Long> addedPending,
+		List<Long> reservedLogicalClocks,
+		List<byte[]> appendedPayloads
+	) throws SerializationException {
+		byte[] atomData = toRecord(atom);
+		if (SegmentPayloadLog.isPointer(atomData)) {
+			appendedPayloads.add(atomData);
+		}
 		// TODO should probably do some ordering on pending atoms
-		long pendingLC = pendingLogicalClock.incrementAndGet();
-		doAddPending(atom.getAID(), pendingLC, transaction);
-		return doStore(PREFIX_PENDING, pendingLC, atom.getAID(), atomData, indices, transaction);
+		long pendingLC = reserveLogicalClock();
+		reservedLogicalClocks.add(pendingLC);
+		doAddPending(atom.getAID(), pendingLC, transaction, addedPending);
+		return doStore(PREFIX_ENTRY, pendingLC, atom, atomData, indices, transaction);
 	}
 
-	private LedgerEntryStoreResult doStore(byte prefix, long logicalClock, AID aid, byte[] ledgerEntryData, LedgerEntryIndices indices, Transaction transaction) throws SerializationException {
-		try {
-			DatabaseEntry pKey = toPKey(prefix, logicalClock, aid);
-			DatabaseEntry pData = new DatabaseEntry(ledgerEntryData);
+	private LedgerEntryStoreResult doStore(byte prefix, long logicalClock, LedgerEntry ledgerEntry, byte[] ledgerEntryData, LedgerEntryIndices indices, Transaction transaction) {
+		AID aid = ledgerEntry.getAID();
+		DatabaseEntry pKey = toPKey(prefix, logicalClock, aid);
+		DatabaseEntry pData = new DatabaseEntry(ledgerEntryData);
 
-			// put indices in temporary map for key creator to pick up
-			this.currentIndices.put(aid, indices);
-			OperationStatus status = this.atoms.putNoOverwrite(transaction, pKey, pData);
-			if (status != OperationStatus.SUCCESS) {
-				fail("Atom write for '" + aid + "' failed with status " + status);
+		OperationStatus status = this.atoms.putNoOverwrite(transaction, pKey, pData);
+		if (status != OperationStatus.SUCCESS) {
+			fail("Atom write for '" + aid + "' failed with status " + status);
+		}
+		// added before the transaction commits so the filter never misses a visible entry
+		this.aidFilter.put(aid);
+
+		// writing a unique index that already exists is how conflicts are detected, as the write locks the index
+		for (StoreIndex uniqueIndex : indices.getUniqueIndices()) {
+			status = this.uniqueIndices.putNoOverwrite(transaction, new DatabaseEntry(uniqueIndex.asKey()), pKey);
+			if (status == OperationStatus.KEYEXIST) {
+				log.error("Unique indices of ledgerEntry '" + aid + "' are in conflict, aborting transaction");
+				transaction.abort();
+
+				ImmutableMap<StoreIndex, LedgerEntry> conflictingAtoms = doGetConflictingAtoms(indices.getUniqueIndices(), null);
+				return LedgerEntryStoreResult.conflict(new LedgerEntryConflict(ledgerEntry, conflictingAtoms));
+			} else if (status != OperationStatus.SUCCESS) {
+				fail("Unique index write for '" + aid + "' failed with status " + status);
 			}
-
-			DatabaseEntry indicesData = new DatabaseEntry(serialization.toDson(indices, Output.PERSIST));
-			status = this.atomIndices.putNoOverwrite(transaction, pKey, indicesData);
+		}
+		for (StoreIndex duplicateIndex : indices.getDuplicateIndices()) {
+			status = this.duplicatedIndices.put(transaction, new DatabaseEntry(duplicateIndex.asKey()), pKey);
 			if (status != OperationStatus.SUCCESS) {
-				fail("LedgerEntry indices write for '" + aid + "' failed with status " + status);
+				fail("Duplicate index write for '" + aid + "' failed with status " + status);
 			}
-		} catch (UniqueConstraintException e) {
-			log.error("Unique indices of ledgerEntry '" + aid + "' are in conflict, aborting transaction");
-			transaction.abort();
+		}
 
-			LedgerEntry ledgerEntry = serialization.fromDson(ledgerEntryData, LedgerEntry.class);
-			ImmutableMap<StoreIndex, LedgerEntry> conflictingAtoms = doGetConflictingAtoms(indices.getUniqueIndices(), null);
-			return LedgerEntryStoreResult.conflict(new LedgerEntryConflict(ledgerEntry, conflictingAtoms));
-		} finally {
-			this.currentIndices.remove(aid);
+		DatabaseEntry indicesData = new DatabaseEntry(indices.toByteArray());
+		status = this.atomIndices.putNoOverwrite(transaction, pKey, indicesData);
+		if (status != OperationStatus.SUCCESS) {
+			fail("LedgerEntry indices write for '" + aid + "' failed with status " + status);
 		}
 		return LedgerEntryStoreResult.success();
 	}
 
+	private byte[] toRecord(LedgerEntry ledgerEntry) throws SerializationException {
+		byte[] ledgerEntryData = serialization.toDson(ledgerEntry, Output.PERSIST);
+		try {
+			return toStoredRecord(entryCodec.encode(ledgerEntryData));
+		} catch (IOException e) {
+			throw new TempoException("Error while encoding ledger entry '" + ledgerEntry.getAID() + "'", e);
+		}
+	}
+
+	private LedgerEntry toLedgerEntry(byte[] record) throws SerializationException {
+		try {
+			return serialization.fromDson(entryCodec.decode(resolveRecord(record)), LedgerEntry.class);
+		} catch (IOException e) {
+			throw new TempoException("Error while decoding ledger entry", e);
+		}
+	}
+
+	/**
+	 * Gets the record to store in the atoms database for an encoded entry record,
+	 * which is a pointer to the record in the payload log if enabled.
+	 */
+	private byte[] toStoredRecord(byte[] record) {
+		return this.payloadLog == null ? record : this.payloadLog.append(record);
+	}
+
+	/**
+	 * Gets the encoded entry record for a record stored in the atoms database, following payload log pointers.
+	 * Records in the payload log are read-only slices of the mapped segment, which are decoded without copying
+	 * them first. Inline records written before the payload log was enabled are wrapped as they are.
+	 */
+	private ByteBuffer resolveRecord(byte[] storedRecord) {
+		if (!SegmentPayloadLog.isPointer(storedRecord)) {
+			return ByteBuffer.wrap(storedRecord);
+		}
+		if (this.payloadLog == null) {
+			throw new TempoException("Entry record is stored in the payload log, which is not enabled");
+		}
+		try {
+			return this.payloadLog.read(storedRecord);
+		} catch (IllegalStateException e) {
+			throw new TempoException("Error while reading entry record from payload log", e);
+		}
+	}
+
+	/**
+	 * Accounts for payloads in the payload log that are no longer referred to, as their transaction was aborted
+	 * or the entries referring to them were deleted.
+	 */
+	private void discardPayloads(List<byte[]> pointerRecords) {
+		// only pointer records are collected, so there are none unless the payload log is enabled
+		for (byte[] pointerRecord : pointerRecords) {
+			this.payloadLog.discard(pointerRecord);
+		}
+		pointerRecords.clear();
+	}
+
+	/**
+	 * Forces appended payloads to disk ahead of a commit if the store is configured to sync commits,
+	 * so that no committed pointer refers to a payload lost in a crash.
+	 */
+	private void syncPayloads() {
+		if (this.payloadLog != null) {
+			DurabilityMode durabilityMode = this.dbEnv.getDurabilityMode(DURABILITY_STORE_NAME);
+			if (durabilityMode == DurabilityMode.SYNC || durabilityMode == DurabilityMode.GROUP_SYNC) {
+				this.payloadLog.sync();
+			}
+		}
+	}
+
 	private ImmutableMap<StoreIndex, LedgerEntry> doGetConflictingAtoms(Set<StoreIndex> uniqueIndices, Transaction transaction) {
 		ImmutableMap.Builder<StoreIndex, LedgerEntry> conflictingAtoms = ImmutableMap.builder();
 		try {
 			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry pKey = new DatabaseEntry();
 			DatabaseEntry value = new DatabaseEntry();
 			for (StoreIndex uniqueIndex : uniqueIndices) {
 				key.setData(uniqueIndex.asKey());
-				if (this.uniqueIndices.get(transaction, key, value, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-					LedgerEntry conflictingAtom = serialization.fromDson(value.getData(), LedgerEntry.class);
+				if (getByUniqueIndex(transaction, key, pKey, value, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+					LedgerEntry conflictingAtom = toLedgerEntry(value.getData());
 					conflictingAtoms.put(uniqueIndex, conflictingAtom);
 				}
 			}
+		} catch (LockConflictException e) {
+			// left to callers, which can tell which of their stores is in conflict
+			throw e;
 		} catch (Exception e) {
 			fail(String.format("Failed getting conflicting atom for unique indices %s: '%s'",
 				uniqueIndices.stream()
@@ -405,34 +844,60 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 		return conflictingAtoms.build();
 	}
 
-	private boolean doDelete(AID aid, Transaction transaction) throws SerializationException {
-		if (!isPending(aid)) {
+	private boolean doDelete(AID aid, Transaction transaction, List<byte[]> deletedPayloads) throws SerializationException {
+		if (!isPending(aid, transaction)) {
 			fail("Attempted to delete committed atom '" + aid + "'");
 		}
+		doRemovePending(aid, transaction);
 
 		DatabaseEntry pKey = new DatabaseEntry();
 		LedgerEntryIndices indices = doGetIndices(transaction, aid, pKey);
+		if (this.payloadLog != null) {
+			// only a pointer record's worth of the record is read, the payload it refers to is dead once deleted
+			DatabaseEntry record = new DatabaseEntry();
+			record.setPartial(0, SegmentPayloadLog.POINTER_RECORD_LENGTH, true);
+			if (atoms.get(transaction, pKey, record, LockMode.RMW) == OperationStatus.SUCCESS && SegmentPayloadLog.isPointer(record.getData())) {
+				deletedPayloads.add(record.getData());
+			}
+		}
 		return doDelete(aid, transaction, pKey, indices);
 	}
 
 	private boolean doDelete(AID aid, Transaction transaction, DatabaseEntry pKey, LedgerEntryIndices indices) {
-		try {
-			OperationStatus status = atomIndices.delete(transaction, pKey);
+		OperationStatus status = atomIndices.delete(transaction, pKey);
+		if (status != OperationStatus.SUCCESS) {
+			fail("Deleting indices of atom '" + aid + "' failed with status " + status);
+		}
+
+		for (StoreIndex uniqueIndex : indices.getUniqueIndices()) {
+			status = uniqueIndices.delete(transaction, new DatabaseEntry(uniqueIndex.asKey()));
 			if (status != OperationStatus.SUCCESS) {
-				fail("Deleting indices of atom '" + aid + "' failed with status " + status);
+				fail("Deleting unique index of atom '" + aid + "' failed with status " + status);
 			}
-			currentIndices.put(aid, indices);
-			return atoms.delete(transaction, pKey) == OperationStatus.SUCCESS;
-		} finally {
-			currentIndices.remove(aid);
 		}
+		// only the entry of this atom is deleted from each duplicate index
+		try (Cursor cursor = duplicatedIndices.openCursor(transaction, null)) {
+			for (StoreIndex duplicateIndex : indices.getDuplicateIndices()) {
+				DatabaseEntry key = new DatabaseEntry(duplicateIndex.asKey());
+				DatabaseEntry value = new DatabaseEntry(pKey.getData().clone());
+				status = cursor.getSearchBoth(key, value, LockMode.RMW);
+				if (status == OperationStatus.SUCCESS) {
+					status = cursor.delete();
+				}
+				if (status != OperationStatus.SUCCESS) {
+					fail("Deleting duplicate index of atom '" + aid + "' failed with status " + status);
+				}
+			}
+		}
+
+		return atoms.delete(transaction, pKey) == OperationStatus.SUCCESS;
 	}
 
 	private LedgerEntryIndices doGetIndices(Transaction transaction, AID aid, DatabaseEntry pKey) throws SerializationException {
 		DatabaseEntry key = new DatabaseEntry(StoreIndex.from(ENTRY_INDEX_PREFIX, aid.getBytes()));
 		DatabaseEntry value = new DatabaseEntry();
 
-		OperationStatus status = uniqueIndices.get(transaction, key, pKey, value, LockMode.DEFAULT);
+		OperationStatus status = uniqueIndices.get(transaction, key, pKey, LockMode.DEFAULT);
 		if (status != OperationStatus.SUCCESS) {
 			fail("Getting primary key of atom '" + aid + "' failed with status " + status);
 		}
@@ -442,14 +907,71 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 			fail("Getting indices of atom '" + aid + "' failed with status " + status);
 		}
 
-		return serialization.fromDson(value.getData(), LedgerEntryIndices.class);
+		return toIndices(value.getData());
 	}
 
-	private void doAddPending(AID aid, long pendingLC, Transaction transaction) {
+	/**
+	 * Reads the primary key under a unique index and the atom record under that primary key.
+	 */
+	private OperationStatus getByUniqueIndex(Transaction transaction, DatabaseEntry key, DatabaseEntry pKey, DatabaseEntry value, LockMode lockMode) {
+		OperationStatus status = this.uniqueIndices.get(transaction, key, pKey, lockMode);
+		if (status != OperationStatus.SUCCESS) {
+			return status;
+		}
+		return this.atoms.get(transaction, pKey, value, lockMode);
+	}
+
+	private LedgerEntryIndices toIndices(byte[] data) throws SerializationException {
+		if (LedgerEntryIndices.isBinary(data)) {
+			return LedgerEntryIndices.fromByteArray(data);
+		} else {
+			// written before the binary encoding was introduced and not migrated yet
+			return serialization.fromDson(data, LedgerEntryIndices.class);
+		}
+	}
+
+	private void doAddPending(AID aid, long pendingLC, Transaction transaction, Map<AID, Long> addedPending) {
 		DatabaseEntry key = new DatabaseEntry(aid.getBytes());
 		// TODO anything more useful that could be used as value for pending markers?
 		DatabaseEntry value = new DatabaseEntry(Longs.toByteArray(pendingLC));
 		pending.putNoOverwrite(transaction, key, value);
+
+		// mirrored before the transaction commits so that a visible pending atom is never reported as committed
+		if (this.pendingAids.putIfAbsent(aid, pendingLC) == null) {
+			addedPending.put(aid, pendingLC);
+		}
+	}
+
+	/**
+	 * Assigns the next pending logical clock, which is in flight until released once its transaction is done.
+	 */
+	private long reserveLogicalClock() {
+		synchronized (this.inflightLogicalClocks) {
+			long pendingLC = this.pendingLogicalClock.incrementAndGet();
+			this.inflightLogicalClocks.add(pendingLC);
+			return pendingLC;
+		}
+	}
+
+	private void releaseLogicalClocks(List<Long> reservedLogicalClocks) {
+		this.inflightLogicalClocks.removeAll(reservedLogicalClocks);
+	}
+
+	/**
+	 * Gets the logical clock up to which all stores are committed or aborted, so no more entries can appear at or before it.
+	 */
+	private long getStableLogicalClock() {
+		synchronized (this.inflightLogicalClocks) {
+			Long oldestInflight = this.inflightLogicalClocks.ceiling(Long.MIN_VALUE);
+			return oldestInflight == null ? this.pendingLogicalClock.get() : oldestInflight - 1;
+		}
+	}
+
+	/**
+	 * Removes pending atoms added by an aborted transaction from the pending mirror.
+	 */
+	private void undoAddPending(Map<AID, Long> addedPending) {
+		addedPending.forEach((aid, pendingLC) -> this.pendingAids.remove(aid, pendingLC));
 	}
 
 	private void doRemovePending(AID aid, Transaction transaction) {
@@ -459,43 +981,42 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 		}
 	}
 
-	// TODO missing shardspace check, should be added?
+	// not restricted to a shard space, as every node holds all shards since sharding support was removed (see
+	// LedgerEngineStore#supports), and iterative discovery advances cursors by the number of AIDs returned, which
+	// filtering out AIDs would break; scanShards serves lookups that are restricted to a shard range
 	@Override
 	public ImmutableList<AID> getNextCommitted(long logicalClock, int limit) {
-		try (Cursor cursor = this.atoms.openCursor(null, null)) {
+		try (Cursor cursor = this.committed.openCursor(null, null)) {
 			ImmutableList.Builder<AID> aids = ImmutableList.builder();
-			DatabaseEntry search = toPKey(PREFIX_COMMITTED, logicalClock + 1);
-			OperationStatus status = cursor.getSearchKeyRange(search, null, LockMode.DEFAULT);
+			DatabaseEntry search = new DatabaseEntry(Longs.toByteArray(logicalClock + 1));
+			DatabaseEntry value = new DatabaseEntry();
+			OperationStatus status = cursor.getSearchKeyRange(search, value, LockMode.DEFAULT);
 
 			int size = 0;
 			while (status == OperationStatus.SUCCESS && size < limit) {
-				if (search.getData()[0] != PREFIX_COMMITTED) {
-					// if we've gone behind committed keys, abort, as this is only for committed atoms
-					break;
-				}
-
-				aids.add(getAidFromPKey(search));
-				status = cursor.getNext(search, null, LockMode.DEFAULT);
+				aids.add(AID.from(value.getData()));
+				status = cursor.getNext(search, value, LockMode.DEFAULT);
 				size++;
 			}
 
 			return aids.build();
 		}
 	}
+
 	@Override
 	public SearchCursor search(LedgerIndexType type, StoreIndex index, LedgerSearchMode mode) {
 		Objects.requireNonNull(type, "type is required");
 		Objects.requireNonNull(index, "index is required");
 		Objects.requireNonNull(mode, "mode is required");
-		try (SecondaryCursor databaseCursor = toSecondaryCursor(type)) {
+		try (Cursor databaseCursor = toIndexCursor(type)) {
 			DatabaseEntry pKey = new DatabaseEntry();
 			DatabaseEntry key = new DatabaseEntry(index.asKey());
 			if (mode == LedgerSearchMode.EXACT) {
-				if (databaseCursor.getSearchKey(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				if (databaseCursor.getSearchKey(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 					return new BerkeleySearchCursor(this, type, pKey.getData(), key.getData());
 				}
 			} else if (mode == LedgerSearchMode.RANGE) {
-				if (databaseCursor.getSearchKeyRange(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				if (databaseCursor.getSearchKeyRange(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 					return new BerkeleySearchCursor(this, type, pKey.getData(), key.getData());
 				}
 			}
@@ -509,15 +1030,15 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 		Objects.requireNonNull(type, "type is required");
 		Objects.requireNonNull(index, "index is required");
 		Objects.requireNonNull(mode, "mode is required");
-		try (SecondaryCursor databaseCursor = toSecondaryCursor(type)) {
+		try (Cursor databaseCursor = toIndexCursor(type)) {
 			DatabaseEntry pKey = new DatabaseEntry();
 			DatabaseEntry key = new DatabaseEntry(index.asKey());
 			if (mode == LedgerSearchMode.EXACT) {
-				if (databaseCursor.getSearchKey(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				if (databaseCursor.getSearchKey(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 					return true;
 				}
 			} else if (mode == LedgerSearchMode.RANGE) {
-				if (databaseCursor.getSearchKeyRange(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				if (databaseCursor.getSearchKeyRange(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 					return true;
 				}
 			}
@@ -526,117 +1047,577 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 		}
 	}
 
+	@Override
+	public IndexScanner scan(LedgerIndexType type, StoreIndex index) {
+		return scan(type, index, Long.MAX_VALUE);
+	}
+
+	private IndexScanner scan(LedgerIndexType type, StoreIndex index, long maxLogicalClock) {
+		Objects.requireNonNull(type, "type is required");
+		Objects.requireNonNull(index, "index is required");
+		return new BerkeleyIndexScanner(this, type, index.asKey(), index.asKey(), maxLogicalClock);
+	}
+
+	@Override
+	public IndexScanner scanShards(ShardRange range) {
+		return scanShards(range, Long.MAX_VALUE);
+	}
+
+	private IndexScanner scanShards(ShardRange range, long maxLogicalClock) {
+		Objects.requireNonNull(range, "range is required");
+		byte[] from = StoreIndex.from(SHARD_INDEX_PREFIX, LedgerEntryIndices.toShardIdentifier(range.getLow()));
+		byte[] to = StoreIndex.from(SHARD_INDEX_PREFIX, LedgerEntryIndices.toShardIdentifier(range.getHigh()));
+		return new BerkeleyIndexScanner(this, LedgerIndexType.DUPLICATE, from, to, maxLogicalClock);
+	}
+
+	@Override
+	public LedgerEntryClockView clockView() {
+		return new BerkeleyClockView(getStableLogicalClock());
+	}
+
+	@Override
+	public LedgerEntryClockView clockViewAt(long logicalClock) {
+		long stableLogicalClock = getStableLogicalClock();
+		if (logicalClock < 0 || logicalClock > stableLogicalClock) {
+			throw new IllegalArgumentException("Cannot take a view at logical clock " + logicalClock
+				+ ", entries are fully stored up to " + stableLogicalClock);
+		}
+		return new BerkeleyClockView(logicalClock);
+	}
+
+	/**
+	 * Checks whether an entry is visible at a certain logical clock, legacy entries are always visible.
+	 */
+	private static boolean isVisibleAt(byte[] pKey, long maxLogicalClock) {
+		return pKey[0] != PREFIX_ENTRY || lcFromPKey(pKey) <= maxLogicalClock;
+	}
+
+	/**
+	 * Reads up to limit entries with an index within the given (inclusive) index range, in a single cursor pass.
+	 * Entries are read in order of index and primary key, continuing after the given index and primary key if any.
+	 *
+	 * @param afterIndex The index to continue after, or null to start from the first entry
+	 * @param afterPrimary The primary key to continue after, or null to start from the first entry
+	 * @param maxLogicalClock The logical clock after which stored entries are skipped
+	 * @param readEntries Whether to read and deserialize the ledger entries, otherwise only keys are read
+	 * @param mapper Mapper from a (copied) index, primary key and the ledger entry (null if not read) to a result
+	 */
+	<T> ImmutableList<T> scan(
+		LedgerIndexType type,
+		byte[] fromIndex,
+		byte[] toIndex,
+		byte[] afterIndex,
+		byte[] afterPrimary,
+		long maxLogicalClock,
+		int limit,
+		boolean readEntries,
+		BerkeleyIndexScanner.EntryMapper<T> mapper
+	) {
+		Comparator<byte[]> indexComparator = UnsignedBytes.lexicographicalComparator();
+		try (Cursor databaseCursor = toIndexCursor(type);
+			 Cursor atomCursor = this.atoms.openCursor(null, null)) {
+			ImmutableList.Builder<T> results = ImmutableList.builder();
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry pKey = new DatabaseEntry();
+
+			OperationStatus status;
+			if (afterIndex == null) {
+				key.setData(fromIndex.clone());
+				status = databaseCursor.getSearchKeyRange(key, pKey, LockMode.DEFAULT);
+			} else {
+				key.setData(afterIndex.clone());
+				pKey.setData(afterPrimary.clone());
+				status = databaseCursor.getSearchBothRange(key, pKey, LockMode.DEFAULT);
+				if (status == OperationStatus.SUCCESS) {
+					// the last returned entry may have been deleted since, in which case we are already past it
+					if (Arrays.equals(afterPrimary, pKey.getData())) {
+						status = databaseCursor.getNext(key, pKey, LockMode.DEFAULT);
+					}
+				} else {
+					// no entries left under the last returned index, continue with the next index
+					key.setData(afterIndex.clone());
+					status = databaseCursor.getSearchKeyRange(key, pKey, LockMode.DEFAULT);
+					if (status == OperationStatus.SUCCESS && Arrays.equals(afterIndex, key.getData())) {
+						status = databaseCursor.getNextNoDup(key, pKey, LockMode.DEFAULT);
+					}
+				}
+			}
+
+			DatabaseEntry value = new DatabaseEntry();
+			int size = 0;
+			while (status == OperationStatus.SUCCESS && size < limit && indexComparator.compare(key.getData(), toIndex) <= 0) {
+				if (!isVisibleAt(pKey.getData(), maxLogicalClock)) {
+					status = databaseCursor.getNext(key, pKey, LockMode.DEFAULT);
+					continue;
+				}
+
+				byte[] primary = pKey.getData().clone();
+				LedgerEntry ledgerEntry = null;
+				if (readEntries) {
+					if (atomCursor.getSearchKey(new DatabaseEntry(primary), value, LockMode.DEFAULT) != OperationStatus.SUCCESS) {
+						fail("Reading scanned atom '" + AID.from(primary, Long.BYTES + 1) + "' failed");
+					}
+					ledgerEntry = toLedgerEntry(value.getData());
+				}
+				results.add(mapper.map(key.getData().clone(), primary, ledgerEntry));
+				size++;
+				if (size < limit) {
+					status = databaseCursor.getNext(key, pKey, LockMode.DEFAULT);
+				}
+			}
+
+			return results.build();
+		} catch (Exception e) {
+			throw new TempoException("Error while scanning index", e);
+		}
+	}
+
 	@Override
 	public Set<AID> getPending() {
-		ImmutableSet.Builder<AID> pendingAids = ImmutableSet.builder();
-		try (com.sleepycat.je.Cursor cursor = this.pending.openCursor(null, null)) {
+		return ImmutableSet.copyOf(this.pendingAids.keySet());
+	}
+
+	/**
+	 * Exports all committed ledger entries with their indices to a snapshot segment, in committed logical clock order.
+	 * Entries keep their committed logical clocks, which are not necessarily dense.
+	 *
+	 * @return the number of exported ledger entries
+	 * @throws IOException if writing the snapshot fails
+	 */
+	public long exportSnapshot(OutputStream output) throws IOException {
+		try (LedgerSnapshot.Writer writer = new LedgerSnapshot.Writer(output);
+			 Cursor cursor = this.committed.openCursor(null, null)) {
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry value = new DatabaseEntry();
 			DatabaseEntry pKey = new DatabaseEntry();
-			OperationStatus status = cursor.getFirst(pKey, null, LockMode.DEFAULT);
+			DatabaseEntry record = new DatabaseEntry();
+			OperationStatus status = cursor.getFirst(key, value, LockMode.READ_COMMITTED);
 			while (status == OperationStatus.SUCCESS) {
-				AID aid = AID.from(pKey.getData());
-				pendingAids.add(aid);
-				status = cursor.getNext(pKey, null, LockMode.DEFAULT);
+				long logicalClock = Longs.fromByteArray(key.getData());
+				AID aid = AID.from(value.getData());
+				LedgerEntryIndices indices = doGetIndices(null, aid, pKey);
+				status = this.atoms.get(null, pKey, record, LockMode.READ_COMMITTED);
+				if (status != OperationStatus.SUCCESS) {
+					fail("Reading committed atom '" + aid + "' failed with status " + status);
+				}
+				writer.write(new LedgerSnapshot.Record(logicalClock, aid, this.entryCodec.decode(resolveRecord(record.getData())), indices.toByteArray()));
+				status = cursor.getNext(key, value, LockMode.READ_COMMITTED);
 			}
+			// only complete snapshots get an end record, anything else is detected as truncated
+			writer.finish();
+			log.info("Exported " + writer.getRecords() + " committed atoms to snapshot");
+			return writer.getRecords();
+		} catch (SerializationException e) {
+			throw new TempoException("Error while exporting snapshot", e);
+		}
+	}
+
+	/**
+	 * Imports committed ledger entries from a snapshot segment into this store, which must be empty.
+	 * Entries are committed at their logical clocks in the snapshot, so peers' discovery cursors stay valid.
+	 * Entries are written in transactions of the given batch size, and their indices are built in
+	 * index order once all entries are loaded. If the import fails, the store is left partially loaded
+	 * and should be deleted before trying again.
+	 *
+	 * @return the number of imported ledger entries
+	 * @throws IOException if reading the snapshot fails or the snapshot is corrupt
+	 */
+	public long importSnapshot(InputStream input, int batchSize) throws IOException {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		}
+		if (this.pendingLogicalClock.get() != 0L || this.committedLogicalClock.get() != 0L) {
+			throw new IllegalStateException("Snapshots can only be imported into an empty store");
+		}
+
+		long start = System.currentTimeMillis();
+		try (LedgerSnapshot.Reader reader = new LedgerSnapshot.Reader(input)) {
+			Optional<LedgerSnapshot.Record> record = reader.read();
+			while (record.isPresent()) {
+				Transaction transaction = dbEnv.beginTransaction(DURABILITY_STORE_NAME);
+				try {
+					int batch = 0;
+					while (record.isPresent() && batch < batchSize) {
+						doLoad(record.get(), transaction);
+						batch++;
+						record = reader.read();
+					}
+					syncPayloads();
+					transaction.commit();
+				} catch (Exception e) {
+					abortIfValid(transaction);
+					throw e;
+				}
+				log.info("Loaded " + reader.getRecords() + " atoms from snapshot");
+			}
+
+			long indexed = buildIndices(batchSize);
+			log.info("Imported " + reader.getRecords() + " atoms and built indices for " + indexed + " atoms in "
+				+ (System.currentTimeMillis() - start) + "ms");
+			return reader.getRecords();
 		}
-		return pendingAids.build();
 	}
 
-	private long getLastPendingCursor() {
-		try (com.sleepycat.je.Cursor cursor = this.pending.openCursor(null, null)) {
+	private void doLoad(LedgerSnapshot.Record record, Transaction transaction) throws IOException {
+		AID aid = record.getAid();
+		// committed logical clocks are kept as exported, including the gaps of migrated legacy commits
+		long committedLC = record.getLogicalClock();
+		if (committedLC <= this.committedLogicalClock.get()) {
+			fail("Snapshot atom '" + aid + "' is at logical clock " + committedLC + " after " + this.committedLogicalClock.get());
+		}
+		// fails early on indices that could not be read back
+		LedgerEntryIndices.fromByteArray(record.getIndices());
+
+		long pendingLC = this.pendingLogicalClock.incrementAndGet();
+		DatabaseEntry pKey = toPKey(PREFIX_ENTRY, pendingLC, aid);
+		OperationStatus status = this.atoms.putNoOverwrite(transaction, pKey, new DatabaseEntry(toStoredRecord(this.entryCodec.encode(record.getLedgerEntryDson()))));
+		if (status != OperationStatus.SUCCESS) {
+			fail("Atom write for snapshot atom '" + aid + "' failed with status " + status);
+		}
+		status = this.atomIndices.putNoOverwrite(transaction, pKey, new DatabaseEntry(record.getIndices()));
+		if (status != OperationStatus.SUCCESS) {
+			fail("LedgerEntry indices write for snapshot atom '" + aid + "' failed with status " + status);
+		}
+		status = this.committed.putNoOverwrite(transaction, new DatabaseEntry(Longs.toByteArray(committedLC)), new DatabaseEntry(aid.getBytes()));
+		if (status != OperationStatus.SUCCESS) {
+			fail("Marking snapshot atom '" + aid + "' as committed at " + committedLC + " failed with status " + status);
+		}
+		this.committedLogicalClock.set(committedLC);
+		this.aidFilter.put(aid);
+	}
+
+	/**
+	 * Builds the unique and duplicate indices of all stored entries from their indices records,
+	 * writing each batch of index records sorted by index.
+	 */
+	private long buildIndices(int batchSize) {
+		long indexed = 0;
+		try (Cursor cursor = this.atomIndices.openCursor(null, null)) {
 			DatabaseEntry pKey = new DatabaseEntry();
 			DatabaseEntry value = new DatabaseEntry();
-			OperationStatus status = cursor.getLast(pKey, value, LockMode.DEFAULT);
+			OperationStatus status = cursor.getFirst(pKey, value, LockMode.READ_COMMITTED);
+			while (status == OperationStatus.SUCCESS) {
+				List<Map.Entry<byte[], byte[]>> unique = new ArrayList<>();
+				List<Map.Entry<byte[], byte[]>> duplicate = new ArrayList<>();
+				int batch = 0;
+				while (status == OperationStatus.SUCCESS && batch < batchSize) {
+					LedgerEntryIndices indices = toIndices(value.getData());
+					byte[] primary = pKey.getData().clone();
+					indices.getUniqueIndices().forEach(index -> unique.add(Maps.immutableEntry(index.asKey(), primary)));
+					indices.getDuplicateIndices().forEach(index -> duplicate.add(Maps.immutableEntry(index.asKey(), primary)));
+					batch++;
+					status = cursor.getNext(pKey, value, LockMode.READ_COMMITTED);
+				}
+				writeIndices(unique, duplicate);
+				indexed += batch;
+			}
+		} catch (SerializationException e) {
+			throw new TempoException("Error while building indices", e);
+		}
+		return indexed;
+	}
+
+	private void writeIndices(List<Map.Entry<byte[], byte[]>> unique, List<Map.Entry<byte[], byte[]>> duplicate) {
+		// sorted writes fill the index btrees in order instead of touching random nodes
+		Comparator<Map.Entry<byte[], byte[]>> byIndex = Map.Entry.comparingByKey(UnsignedBytes.lexicographicalComparator());
+		unique.sort(byIndex);
+		duplicate.sort(byIndex);
+
+		Transaction transaction = dbEnv.beginTransaction(DURABILITY_STORE_NAME);
+		try {
+			for (Map.Entry<byte[], byte[]> index : unique) {
+				OperationStatus status = this.uniqueIndices.putNoOverwrite(transaction, new DatabaseEntry(index.getKey()), new DatabaseEntry(index.getValue()));
+				if (status != OperationStatus.SUCCESS) {
+					fail("Unique index write for snapshot atom '" + AID.from(index.getValue(), Long.BYTES + 1) + "' failed with status " + status);
+				}
+			}
+			for (Map.Entry<byte[], byte[]> index : duplicate) {
+				OperationStatus status = this.duplicatedIndices.put(transaction, new DatabaseEntry(index.getKey()), new DatabaseEntry(index.getValue()));
+				if (status != OperationStatus.SUCCESS) {
+					fail("Duplicate index write for snapshot atom '" + AID.from(index.getValue(), Long.BYTES + 1) + "' failed with status " + status);
+				}
+			}
+			transaction.commit();
+		} catch (Exception e) {
+			abortIfValid(transaction);
+			fail("Building indices failed", e);
+		}
+	}
+
+	private long getLastLogicalClock(byte prefix) {
+		try (Cursor cursor = this.atoms.openCursor(null, null)) {
+			// position after the last possible key with the given prefix and step back
+			DatabaseEntry pKey = toPKey((byte) (prefix + 1), 0L);
+			OperationStatus status = cursor.getSearchKeyRange(pKey, null, LockMode.DEFAULT);
 			if (status == OperationStatus.SUCCESS) {
-				return Longs.fromByteArray(value.getData());
+				status = cursor.getPrev(pKey, null, LockMode.DEFAULT);
+			} else {
+				status = cursor.getLast(pKey, null, LockMode.DEFAULT);
+			}
+
+			if (status == OperationStatus.SUCCESS && pKey.getData()[0] == prefix) {
+				return lcFromPKey(pKey.getData());
 			} else {
 				return 0L;
 			}
 		}
 	}
 
-	private Set<AID> dumpAll() {
-		ImmutableSet.Builder<AID> pendingAids = ImmutableSet.builder();
-		try (com.sleepycat.je.Cursor cursor = this.atoms.openCursor(null, null)) {
-			DatabaseEntry pKey = new DatabaseEntry();
-			OperationStatus status = cursor.getFirst(pKey, null, LockMode.DEFAULT);
-			while (status == OperationStatus.SUCCESS) {
-				AID aid = getAidFromPKey(pKey);
-				pendingAids.add(aid);
-				status = cursor.getNext(pKey, null, LockMode.DEFAULT);
+	private long getLastCommittedLogicalClock() {
+		try (Cursor cursor = this.committed.openCursor(null, null)) {
+			DatabaseEntry key = new DatabaseEntry();
+			OperationStatus status = cursor.getLast(key, null, LockMode.DEFAULT);
+			if (status == OperationStatus.SUCCESS) {
+				return Longs.fromByteArray(key.getData());
+			} else {
+				return 0L;
 			}
 		}
-		return pendingAids.build();
 	}
 
-	// not used yet
-	private List<AID> getByShardChunkAndRange(int chunk, ShardRange range) throws DatabaseException {
-		try {
-			long from = ShardSpace.fromChunk(chunk, ShardSpace.SHARD_CHUNK_HALF_RANGE) + range.getLow();
-			long to = from + range.getSpan();
+	/**
+	 * Adds atoms committed under the legacy primary key prefix to the committed database, keeping their logical clocks.
+	 * This is only required once for databases written before commits were tracked separately. Legacy logical clocks
+	 * were shared with pending atoms, so committed logical clocks are sparse up to the last migrated atom, but peers
+	 * may already hold discovery cursors into them. Atoms are migrated in logical clock order in batches of separate
+	 * transactions, continuing after the last migrated atom, and completion is recorded in the environment metadata.
+	 */
+	private void migrateLegacyCommitted() {
+		if (getLastLogicalClock(PREFIX_LEGACY_COMMITTED) == 0L || this.dbEnv.get(COMMITTED_DB_NAME, LEGACY_COMMITTED_MIGRATED_KEY) != null) {
+			return;
+		}
 
-			return this.getByShardRange(from, to);
-		} catch (Exception ex) {
-			throw new DatabaseException(ex);
+		log.info("Migrating legacy committed atoms to " + COMMITTED_DB_NAME);
+		long migrated = 0;
+		// migrated atoms are the first committed ones, so the migration continues after the last committed atom
+		long lastMigrated = getLastCommittedLogicalClock();
+		boolean done = false;
+		while (!done) {
+			Transaction transaction = this.dbEnv.beginTransaction(DURABILITY_STORE_NAME);
+			try {
+				try (Cursor cursor = this.atoms.openCursor(transaction, null)) {
+					DatabaseEntry pKey = toPKey(PREFIX_LEGACY_COMMITTED, lastMigrated + 1);
+					OperationStatus status = cursor.getSearchKeyRange(pKey, null, LockMode.READ_COMMITTED);
+					int batchSize = 0;
+					while (status == OperationStatus.SUCCESS
+						&& pKey.getData()[0] == PREFIX_LEGACY_COMMITTED
+						&& batchSize < MIGRATION_BATCH_SIZE) {
+						long logicalClock = lcFromPKey(pKey.getData());
+						AID aid = getAidFromPKey(pKey);
+						status = this.committed.putNoOverwrite(transaction,
+							new DatabaseEntry(Longs.toByteArray(logicalClock)), new DatabaseEntry(aid.getBytes()));
+						if (status != OperationStatus.SUCCESS) {
+							fail("Marking legacy atom '" + aid + "' as committed at " + logicalClock + " failed with status " + status);
+						}
+						lastMigrated = logicalClock;
+						batchSize++;
+						status = cursor.getNext(pKey, null, LockMode.READ_COMMITTED);
+					}
+					migrated += batchSize;
+					done = status != OperationStatus.SUCCESS || pKey.getData()[0] != PREFIX_LEGACY_COMMITTED;
+				}
+				transaction.commit();
+			} catch (Exception e) {
+				abortIfValid(transaction);
+				throw new TempoException("Error while migrating legacy committed atoms", e);
+			}
 		}
+
+		this.dbEnv.put(null, COMMITTED_DB_NAME, LEGACY_COMMITTED_MIGRATED_KEY, new byte[] { 1 });
+		log.info("Migrated " + migrated + " legacy committed atoms");
 	}
 
-	// not used yet
-	private List<AID> getByShardRange(long from, long to) throws DatabaseException {
-		try (SecondaryCursor cursor = this.duplicatedIndices.openCursor(null, null)) {
-			List<AID> aids = new ArrayList<>();
-			DatabaseEntry key = new DatabaseEntry(StoreIndex.from(SHARD_INDEX_PREFIX, Longs.toByteArray(from)));
-			DatabaseEntry pKey = new DatabaseEntry();
-			DatabaseEntry value = new DatabaseEntry();
+	/**
+	 * Rewrites DSON encoded atom indices records in the binary encoding, in batches of separate transactions.
+	 * Completion is recorded in the environment metadata, so this only scans the records once.
+	 */
+	private void migrateLegacyIndices() {
+		byte[] format = this.dbEnv.get(ATOM_INDICES_DB_NAME, ATOM_INDICES_FORMAT_KEY);
+		if (format != null && format[0] == LedgerEntryIndices.BINARY_FORMAT_VERSION) {
+			return;
+		}
 
-			OperationStatus status = cursor.getSearchKeyRange(key, value, pKey, LockMode.DEFAULT);
-			while (status == OperationStatus.SUCCESS) {
-				long shard = Longs.fromByteArray(key.getData(), 1);
-				if (shard < from || shard > to) {
-					break;
+		log.info("Migrating " + ATOM_INDICES_DB_NAME + " to binary format");
+		long migrated = 0;
+		DatabaseEntry pKey = null;
+		DatabaseEntry value = new DatabaseEntry();
+		boolean done = false;
+		while (!done) {
+			Transaction transaction = this.dbEnv.beginTransaction(DURABILITY_STORE_NAME);
+			try {
+				try (Cursor cursor = this.atomIndices.openCursor(transaction, null)) {
+					OperationStatus status;
+					if (pKey == null) {
+						pKey = new DatabaseEntry();
+						status = cursor.getFirst(pKey, value, LockMode.RMW);
+					} else {
+						// continue with the first record not visited by the previous batch
+						status = cursor.getSearchKeyRange(pKey, value, LockMode.RMW);
+					}
+
+					int batchSize = 0;
+					while (status == OperationStatus.SUCCESS && batchSize < MIGRATION_BATCH_SIZE) {
+						if (!LedgerEntryIndices.isBinary(value.getData())) {
+							LedgerEntryIndices indices = serialization.fromDson(value.getData(), LedgerEntryIndices.class);
+							cursor.putCurrent(new DatabaseEntry(indices.toByteArray()));
+							migrated++;
+						}
+						batchSize++;
+						status = cursor.getNext(pKey, value, LockMode.RMW);
+					}
+					done = status != OperationStatus.SUCCESS;
 				}
+				transaction.commit();
+			} catch (Exception e) {
+				transaction.abort();
+				throw new TempoException("Error while migrating " + ATOM_INDICES_DB_NAME + " to binary format", e);
+			}
+		}
 
-				AID aid = getAidFromPKey(pKey);
-				aids.add(aid);
+		this.dbEnv.put(null, ATOM_INDICES_DB_NAME, ATOM_INDICES_FORMAT_KEY, new byte[] { LedgerEntryIndices.BINARY_FORMAT_VERSION });
+		log.info("Migrated " + migrated + " atom indices records to binary format");
+	}
 
-				status = cursor.getNextDup(key, value, pKey, LockMode.DEFAULT);
-				if (status == OperationStatus.NOTFOUND) {
-					status = cursor.getNext(key, value, pKey, LockMode.DEFAULT);
-				}
+	/**
+	 * Creates the codec for entry records, loading the preset dictionary if there is one.
+	 * If the dictionary format is requested but no dictionary exists yet, a dictionary is trained from stored entries.
+	 * Until enough entries are available for training, the Snappy format is used instead.
+	 */
+	private LedgerEntryCodec openEntryCodec(LedgerEntryCodec.Format format) {
+		byte[] dictionary = this.dbEnv.get(ATOMS_DB_NAME, ENTRY_CODEC_DICTIONARY_KEY);
+		if (format == LedgerEntryCodec.Format.DICTIONARY && dictionary == null) {
+			dictionary = trainEntryCodecDictionary();
+			if (dictionary == null) {
+				log.info("Not enough entries to train entry codec dictionary, using " + LedgerEntryCodec.Format.SNAPPY);
+				format = LedgerEntryCodec.Format.SNAPPY;
+			} else {
+				this.dbEnv.put(null, ATOMS_DB_NAME, ENTRY_CODEC_DICTIONARY_KEY, dictionary);
+				log.info("Trained entry codec dictionary of " + dictionary.length + " bytes");
 			}
+		}
+		return new LedgerEntryCodec(format, dictionary);
+	}
 
-			return aids;
-		} catch (Exception ex) {
-			throw new DatabaseException(ex);
+	private byte[] trainEntryCodecDictionary() {
+		// existing records may be in any format, so decode them with a codec that can read all but the dictionary format
+		LedgerEntryCodec sampleCodec = new LedgerEntryCodec(LedgerEntryCodec.Format.NONE, null);
+		List<byte[]> samples = new ArrayList<>();
+		try (Cursor cursor = this.atoms.openCursor(null, null)) {
+			DatabaseEntry pKey = new DatabaseEntry();
+			DatabaseEntry value = new DatabaseEntry();
+			OperationStatus status = cursor.getFirst(pKey, value, LockMode.READ_UNCOMMITTED);
+			while (status == OperationStatus.SUCCESS && samples.size() < ENTRY_CODEC_DICTIONARY_MAX_SAMPLES) {
+				samples.add(sampleCodec.decode(resolveRecord(value.getData())));
+				status = cursor.getNext(pKey, value, LockMode.READ_UNCOMMITTED);
+			}
+		} catch (IOException e) {
+			throw new TempoException("Error while sampling entries for entry codec dictionary", e);
+		}
+
+		if (samples.size() < ENTRY_CODEC_DICTIONARY_MIN_SAMPLES) {
+			return null;
+		}
+		byte[] dictionary = LedgerEntryCodec.trainDictionary(samples, ENTRY_CODEC_DICTIONARY_SIZE, ENTRY_CODEC_DICTIONARY_MIN_SHARE);
+		return dictionary.length == 0 ? null : dictionary;
+	}
+
+	/**
+	 * Verifies the consistency of the databases within a time budget and reports the result.
+	 * Inconsistencies are logged but do not prevent the store from opening.
+	 */
+	private void checkIntegrity(int threads, long timeBudgetMs) {
+		log.info("Checking integrity of ledger databases with " + threads + " threads for at most " + timeBudgetMs + "ms");
+		LedgerIntegrityVerifier.Report report = verifyIntegrity(threads, timeBudgetMs);
+		SystemMetaData.ifPresent(a -> {
+			a.put("ledger.integrity.errors", report.getErrorCount());
+			a.put("ledger.integrity.duration", report.getDuration());
+		});
+		if (report.getErrorCount() > 0) {
+			log.error(report.toString());
+			report.getErrors().forEach(log::error);
+		} else if (!report.isComplete()) {
+			log.warn(report.toString());
+		} else {
+			log.info(report.toString());
 		}
 	}
 
-	// not used yet
-	private List<AID> getByShard(long shard) throws DatabaseException {
-		try (SecondaryCursor cursor = this.duplicatedIndices.openCursor(null, null)) {
-			List<AID> aids = new ArrayList<>();
+	/**
+	 * Verifies the consistency of the databases within a time budget.
+	 */
+	LedgerIntegrityVerifier.Report verifyIntegrity(int threads, long timeBudgetMs) {
+		LedgerIntegrityVerifier verifier = new LedgerIntegrityVerifier(
+			this.atoms, this.atomIndices, this.uniqueIndices, this.duplicatedIndices, this.pending, this.committed);
+		long[] lastLogicalClocks = new long[PREFIX_ENTRY + 1];
+		lastLogicalClocks[PREFIX_LEGACY_COMMITTED] = getLastLogicalClock(PREFIX_LEGACY_COMMITTED);
+		lastLogicalClocks[PREFIX_ENTRY] = this.pendingLogicalClock.get();
+		return verifier.verify(threads, timeBudgetMs, lastLogicalClocks);
+	}
 
-			DatabaseEntry key = new DatabaseEntry(StoreIndex.from(SHARD_INDEX_PREFIX, Longs.toByteArray(shard)));
+	/**
+	 * Rebuilds the in-memory AID filter from the entry indices of all stored ledger entries.
+	 */
+	private void rebuildAidFilter() {
+		long entries = 0;
+		try (Cursor cursor = this.uniqueIndices.openCursor(null, null)) {
+			DatabaseEntry key = new DatabaseEntry(new byte[] { ENTRY_INDEX_PREFIX });
+			// only the index keys are required, avoid reading the primary keys
 			DatabaseEntry pKey = new DatabaseEntry();
+			pKey.setPartial(0, 0, true);
+
+			OperationStatus status = cursor.getSearchKeyRange(key, pKey, LockMode.READ_UNCOMMITTED);
+			while (status == OperationStatus.SUCCESS && key.getData()[0] == ENTRY_INDEX_PREFIX) {
+				this.aidFilter.put(AID.from(key.getData(), 1));
+				entries++;
+				status = cursor.getNext(key, pKey, LockMode.READ_UNCOMMITTED);
+			}
+		} catch (Exception e) {
+			throw new TempoException("Error while rebuilding AID filter", e);
+		}
+
+		if (entries > this.aidFilter.getExpectedEntries()) {
+			log.warn("AID filter holds " + entries + " entries but is sized for " + this.aidFilter.getExpectedEntries()
+				+ ", false positive rate will be higher than configured");
+		}
+		log.info("Rebuilt AID filter with " + entries + " entries");
+	}
+
+	/**
+	 * Rebuilds the in-memory mirror of the pending database.
+	 */
+	private void rebuildPendingAids() {
+		try (Cursor cursor = this.pending.openCursor(null, null)) {
+			DatabaseEntry key = new DatabaseEntry();
 			DatabaseEntry value = new DatabaseEntry();
+			OperationStatus status = cursor.getFirst(key, value, LockMode.READ_UNCOMMITTED);
+			while (status == OperationStatus.SUCCESS) {
+				this.pendingAids.put(AID.from(key.getData()), Longs.fromByteArray(value.getData()));
+				status = cursor.getNext(key, value, LockMode.READ_UNCOMMITTED);
+			}
+		}
+		log.info("Rebuilt pending mirror with " + this.pendingAids.size() + " atoms");
+	}
 
-			OperationStatus status = cursor.getSearchKeyRange(key, value, pKey, LockMode.DEFAULT);
+	private Set<AID> dumpAll() {
+		ImmutableSet.Builder<AID> pendingAids = ImmutableSet.builder();
+		try (com.sleepycat.je.Cursor cursor = this.atoms.openCursor(null, null)) {
+			DatabaseEntry pKey = new DatabaseEntry();
+			OperationStatus status = cursor.getFirst(pKey, null, LockMode.DEFAULT);
 			while (status == OperationStatus.SUCCESS) {
 				AID aid = getAidFromPKey(pKey);
-				aids.add(aid);
-				status = cursor.getNextDup(key, value, pKey, LockMode.DEFAULT);
+				pendingAids.add(aid);
+				status = cursor.getNext(pKey, null, LockMode.DEFAULT);
 			}
-
-			return aids;
-		} catch (Exception ex) {
-			throw new DatabaseException(ex);
 		}
+		return pendingAids.build();
 	}
+
 	BerkeleySearchCursor getNext(BerkeleySearchCursor cursor) {
-		try (SecondaryCursor databaseCursor = toSecondaryCursor(cursor.getType())) {
+		try (Cursor databaseCursor = toIndexCursor(cursor.getType())) {
 			DatabaseEntry pKey = new DatabaseEntry(cursor.getPrimary());
 			DatabaseEntry key = new DatabaseEntry(cursor.getIndex());
-			if (databaseCursor.getSearchBothRange(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-				if (databaseCursor.getNextDup(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+			if (databaseCursor.getSearchBothRange(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				if (databaseCursor.getNextDup(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 					return new BerkeleySearchCursor(this, cursor.getType(), pKey.getData(), key.getData());
 				}
 			}
@@ -648,11 +1629,11 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 	}
 
 	BerkeleySearchCursor getPrev(BerkeleySearchCursor cursor) {
-		try (SecondaryCursor databaseCursor = toSecondaryCursor(cursor.getType())) {
+		try (Cursor databaseCursor = toIndexCursor(cursor.getType())) {
 			DatabaseEntry pKey = new DatabaseEntry(cursor.getPrimary());
 			DatabaseEntry key = new DatabaseEntry(cursor.getIndex());
-			if (databaseCursor.getSearchBothRange(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-				if (databaseCursor.getPrevDup(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+			if (databaseCursor.getSearchBothRange(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				if (databaseCursor.getPrevDup(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 					return new BerkeleySearchCursor(this, cursor.getType(), pKey.getData(), key.getData());
 				}
 			}
@@ -664,15 +1645,15 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 	}
 
 	BerkeleySearchCursor getFirst(BerkeleySearchCursor cursor) {
-		try (SecondaryCursor databaseCursor = toSecondaryCursor(cursor.getType())) {
+		try (Cursor databaseCursor = toIndexCursor(cursor.getType())) {
 			DatabaseEntry pKey = new DatabaseEntry(cursor.getPrimary());
 			DatabaseEntry key = new DatabaseEntry(cursor.getIndex());
-			if (databaseCursor.getSearchBothRange(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-				if (databaseCursor.getPrevNoDup(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-					if (databaseCursor.getNext(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+			if (databaseCursor.getSearchBothRange(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				if (databaseCursor.getPrevNoDup(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+					if (databaseCursor.getNext(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 						return new BerkeleySearchCursor(this, cursor.getType(), pKey.getData(), key.getData());
 					}
-				} else if (databaseCursor.getFirst(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				} else if (databaseCursor.getFirst(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 					return new BerkeleySearchCursor(this, cursor.getType(), pKey.getData(), key.getData());
 				}
 			}
@@ -684,16 +1665,16 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 	}
 
 	BerkeleySearchCursor getLast(BerkeleySearchCursor cursor) {
-		try (SecondaryCursor databaseCursor = toSecondaryCursor(cursor.getType())) {
+		try (Cursor databaseCursor = toIndexCursor(cursor.getType())) {
 			DatabaseEntry pKey = new DatabaseEntry(cursor.getPrimary());
 			DatabaseEntry key = new DatabaseEntry(cursor.getIndex());
 
-			if (databaseCursor.getSearchBothRange(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-				if (databaseCursor.getNextNoDup(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
-					if (databaseCursor.getPrev(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+			if (databaseCursor.getSearchBothRange(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				if (databaseCursor.getNextNoDup(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+					if (databaseCursor.getPrev(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 						return new BerkeleySearchCursor(this, cursor.getType(), pKey.getData(), key.getData());
 					}
-				} else if (databaseCursor.getLast(key, pKey, null, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+				} else if (databaseCursor.getLast(key, pKey, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 					return new BerkeleySearchCursor(this, cursor.getType(), pKey.getData(), key.getData());
 				}
 			}
@@ -704,9 +1685,9 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 		}
 	}
 
-	private SecondaryCursor toSecondaryCursor(LedgerIndexType type) {
+	private Cursor toIndexCursor(LedgerIndexType type) {
 		Objects.requireNonNull(type, "cursor is required");
-		SecondaryCursor databaseCursor;
+		Cursor databaseCursor;
 		if (type.equals(StoreIndex.LedgerIndexType.UNIQUE)) {
 			databaseCursor = this.uniqueIndices.openCursor(null, null);
 		} else if (type.equals(StoreIndex.LedgerIndexType.DUPLICATE)) {
@@ -740,6 +1721,44 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 		return Longs.fromByteArray(pKey, 1);
 	}
 
+	/**
+	 * A view bounding lookups and scans of this store by the logical clock in the primary keys.
+	 */
+	private final class BerkeleyClockView implements LedgerEntryClockView {
+		private final long logicalClock;
+
+		private BerkeleyClockView(long logicalClock) {
+			this.logicalClock = logicalClock;
+		}
+
+		@Override
+		public long getLogicalClock() {
+			return this.logicalClock;
+		}
+
+		@Override
+		public boolean contains(AID aid) {
+			if (!aidFilter.mightContain(aid)) {
+				return false;
+			}
+
+			DatabaseEntry key = new DatabaseEntry(StoreIndex.from(ENTRY_INDEX_PREFIX, aid.getBytes()));
+			DatabaseEntry pKey = new DatabaseEntry();
+			return OperationStatus.SUCCESS == uniqueIndices.get(null, key, pKey, LockMode.DEFAULT)
+				&& isVisibleAt(pKey.getData(), this.logicalClock);
+		}
+
+		@Override
+		public IndexScanner scan(LedgerIndexType type, StoreIndex index) {
+			return BerkeleyLedgerEntryStore.this.scan(type, index, this.logicalClock);
+		}
+
+		@Override
+		public IndexScanner scanShards(ShardRange range) {
+			return BerkeleyLedgerEntryStore.this.scanShards(range, this.logicalClock);
+		}
+	}
+
 	public static class AtomStorePackedPrimaryKeyComparator implements Comparator<byte[]> {
 		private static final int RELEVANT_PREFIX_LENGTH = 1 + Long.BYTES;
 		@Override
@@ -753,31 +1772,4 @@ public class BerkeleyLedgerEntryStore implements LedgerEntryStore {
 			return 0;
 		}
 	}
-
-	private static class AtomSecondaryCreator implements SecondaryMultiKeyCreator {
-		private final Function<DatabaseEntry, Set<StoreIndex>> indexer;
-
-		private AtomSecondaryCreator(Function<DatabaseEntry, Set<StoreIndex>> indexer) {
-			this.indexer = Objects.requireNonNull(indexer, "indexer is required");
-		}
-
-		@Override
-		public void createSecondaryKeys(SecondaryDatabase database, DatabaseEntry key, DatabaseEntry value, Set<DatabaseEntry> secondaries) {
-			// key should be primary key where first 8 bytes is the long clock
-			Set<StoreIndex> indices = indexer.apply(key);
-			indices.forEach(index -> secondaries.add(new DatabaseEntry(index.asKey())));
-		}
-
-		private static AtomSecondaryCreator from(Map<AID, LedgerEntryIndices> atomIndices, Function<LedgerEntryIndices, Set<StoreIndex>> indexer) {
-			return new AtomSecondaryCreator(
-				key -> {
-					LedgerEntryIndices ledgerEntryIndices = atomIndices.get(getAidFromPKey(key));
-					if (ledgerEntryIndices == null) {
-						throw new IllegalStateException("Indices for atom '" + Longs.fromByteArray(key.getData()) + "' not available");
-					}
-					return indexer.apply(ledgerEntryIndices);
-				}
-			);
-		}
-	}
 }
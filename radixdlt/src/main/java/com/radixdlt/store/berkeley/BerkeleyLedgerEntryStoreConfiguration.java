@@ -0,0 +1,128 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import org.radix.properties.RuntimeProperties;
+
+/**
+ * Static configuration for a {@link BerkeleyLedgerEntryStore}
+ */
+public interface BerkeleyLedgerEntryStoreConfiguration {
+	long entryCacheMaxBytes(long defaultValue);
+
+	long aidFilterExpectedEntries(long defaultValue);
+
+	double aidFilterFalsePositiveRate(double defaultValue);
+
+	/**
+	 * Codec for entry records, one of "none", "snappy" or "dictionary"
+	 */
+	String entryCodec(String defaultValue);
+
+	/**
+	 * Memory budget for preloading the index databases on start, or zero to not preload
+	 */
+	long indexPreloadMaxBytes(long defaultValue);
+
+	/**
+	 * Number of threads verifying the ledger databases on start, if enabled with db.check_integrity
+	 */
+	int integrityCheckThreads(int defaultValue);
+
+	/**
+	 * Time budget in milliseconds for verifying the ledger databases, after which the check stops with a partial report
+	 */
+	long integrityCheckTimeBudget(long defaultValue);
+
+	/**
+	 * Whether to store entry records in an append-only log of memory-mapped segments instead of the atoms database
+	 */
+	boolean payloadLog(boolean defaultValue);
+
+	int payloadLogSegmentSize(int defaultValue);
+
+	/**
+	 * Maximum number of payload log segments mapped for reading at a time, besides the one being appended to
+	 */
+	int payloadLogMaxMappedSegments(int defaultValue);
+
+	/**
+	 * Time in milliseconds a batch store waits for locks held by a concurrent store before it is retried,
+	 * or zero to wait as long as the lock timeout of the database environment
+	 */
+	long storeLockTimeout(long defaultValue);
+
+	static BerkeleyLedgerEntryStoreConfiguration fromRuntimeProperties(RuntimeProperties properties) {
+		return new BerkeleyLedgerEntryStoreConfiguration() {
+			@Override
+			public long entryCacheMaxBytes(long defaultValue) {
+				return properties.get("db.ledger.entry_cache_max_bytes", defaultValue);
+			}
+
+			@Override
+			public long aidFilterExpectedEntries(long defaultValue) {
+				return properties.get("db.ledger.aid_filter.expected_entries", defaultValue);
+			}
+
+			@Override
+			public double aidFilterFalsePositiveRate(double defaultValue) {
+				return properties.get("db.ledger.aid_filter.false_positive_rate", defaultValue);
+			}
+
+			@Override
+			public String entryCodec(String defaultValue) {
+				return properties.get("db.ledger.entry_codec", defaultValue);
+			}
+
+			@Override
+			public long indexPreloadMaxBytes(long defaultValue) {
+				return properties.get("db.ledger.preload.max_bytes", defaultValue);
+			}
+
+			@Override
+			public int integrityCheckThreads(int defaultValue) {
+				return properties.get("db.check_integrity.threads", defaultValue);
+			}
+
+			@Override
+			public long integrityCheckTimeBudget(long defaultValue) {
+				return properties.get("db.check_integrity.time_budget", defaultValue);
+			}
+
+			@Override
+			public boolean payloadLog(boolean defaultValue) {
+				return properties.get("db.ledger.payload_log", defaultValue);
+			}
+
+			@Override
+			public int payloadLogSegmentSize(int defaultValue) {
+				return properties.get("db.ledger.payload_log.segment_size", defaultValue);
+			}
+
+			@Override
+			public int payloadLogMaxMappedSegments(int defaultValue) {
+				return properties.get("db.ledger.payload_log.max_mapped_segments", defaultValue);
+			}
+
+			@Override
+			public long storeLockTimeout(long defaultValue) {
+				return properties.get("db.ledger.store.lock_timeout", defaultValue);
+			}
+		};
+	}
+}
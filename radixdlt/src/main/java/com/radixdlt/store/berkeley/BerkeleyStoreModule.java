@@ -21,12 +21,24 @@ import com.google.inject.AbstractModule;
 import com.radixdlt.store.CursorStore;
 import com.radixdlt.store.LedgerEntryStore;
 import com.radixdlt.store.LedgerEntryStoreView;
+import org.radix.properties.RuntimeProperties;
 
 public class BerkeleyStoreModule extends AbstractModule {
+	private final BerkeleyLedgerEntryStoreConfiguration configuration;
+
+	public BerkeleyStoreModule(RuntimeProperties properties) {
+		this(BerkeleyLedgerEntryStoreConfiguration.fromRuntimeProperties(properties));
+	}
+
+	public BerkeleyStoreModule(BerkeleyLedgerEntryStoreConfiguration configuration) {
+		this.configuration = configuration;
+	}
+
 	@Override
 	protected void configure() {
 		bind(LedgerEntryStore.class).to(BerkeleyLedgerEntryStore.class);
 		bind(LedgerEntryStoreView.class).to(BerkeleyLedgerEntryStore.class);
 		bind(CursorStore.class).to(BerkeleyCursorStore.class);
+		bind(BerkeleyLedgerEntryStoreConfiguration.class).toInstance(configuration);
 	}
 }
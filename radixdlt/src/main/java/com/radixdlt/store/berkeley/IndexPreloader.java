@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import com.sleepycat.je.Database;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.PreloadConfig;
+import com.sleepycat.je.PreloadStats;
+import org.radix.logging.Logger;
+import org.radix.logging.Logging;
+import org.radix.utils.SystemMetaData;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Preloads the internal nodes of index databases into the cache in the background, up to a memory budget,
+ * so that index lookups after a restart don't all go to disk while the cache warms up.
+ * Progress is logged and reported in {@link SystemMetaData}.
+ */
+final class IndexPreloader implements Runnable {
+	private static final Logger log = Logging.getLogger("store.preload");
+	private static final long PROGRESS_LOG_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+
+	private final Environment environment;
+	private final Database[] databases;
+	private final long maxBytes;
+
+	private volatile boolean stopped = false;
+	private Thread thread;
+	private long lastProgressLog;
+
+	IndexPreloader(Environment environment, long maxBytes, Database... databases) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+		}
+		this.environment = environment;
+		this.databases = databases.clone();
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Starts preloading in a background thread.
+	 */
+	synchronized void start() {
+		if (this.thread != null) {
+			throw new IllegalStateException("Preloader already started");
+		}
+		this.thread = new Thread(this);
+		this.thread.setDaemon(true);
+		this.thread.setName("Index Preloader");
+		this.thread.start();
+	}
+
+	/**
+	 * Stops preloading and waits for the background thread to finish, so that the databases can be closed.
+	 */
+	synchronized void stop() {
+		this.stopped = true;
+		if (this.thread != null) {
+			try {
+				this.thread.join();
+			} catch (InterruptedException e) {
+				// Ignore and continue
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		String names = Arrays.stream(this.databases).map(Database::getDatabaseName).collect(Collectors.joining(", "));
+		log.info("Preloading " + names + " up to " + this.maxBytes + " bytes");
+
+		PreloadConfig config = new PreloadConfig();
+		config.setMaxBytes(this.maxBytes);
+		// only the internal nodes, the leaf nodes of the index databases are loaded on demand
+		config.setLoadLNs(false);
+		config.setProgressListener((phase, n, total) -> {
+			SystemMetaData.ifPresent(a -> a.put("ledger.preload.progress", n));
+			long now = System.currentTimeMillis();
+			if (now - this.lastProgressLog >= PROGRESS_LOG_INTERVAL_MS) {
+				this.lastProgressLog = now;
+				log.info("Preloading " + names + ", " + n + " records visited");
+			}
+			// returning false ends the preload early
+			return !this.stopped;
+		});
+
+		long start = System.currentTimeMillis();
+		this.lastProgressLog = start;
+		try {
+			PreloadStats stats = this.environment.preload(this.databases, config);
+			long duration = System.currentTimeMillis() - start;
+			long nodes = stats.getNINsLoaded() + stats.getNBINsLoaded();
+			SystemMetaData.ifPresent(a -> {
+				a.put("ledger.preload.nodes", nodes);
+				a.put("ledger.preload.duration", duration);
+			});
+			log.info("Preloaded " + nodes + " internal nodes of " + names + " in " + duration + "ms: " + stats.getStatus());
+		} catch (Exception e) {
+			if (this.stopped) {
+				log.debug("Preloading of " + names + " stopped", e);
+			} else {
+				log.error("Preloading of " + names + " failed", e);
+			}
+		}
+	}
+}
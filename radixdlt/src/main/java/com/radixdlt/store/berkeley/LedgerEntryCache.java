@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.radixdlt.common.AID;
+import com.radixdlt.store.LedgerEntry;
+import org.radix.utils.SystemMetaData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A size-bounded read-through cache of {@link LedgerEntry}s, weighed by their content size and evicted LRU.
+ * Hits and misses are counted in {@link SystemMetaData}.
+ */
+final class LedgerEntryCache {
+	// rough per entry overhead of the cache node, the AID and the entry itself
+	private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+	private final Cache<AID, LedgerEntry> cache;
+	// bumped on every invalidation so that loads racing with a write do not re-populate stale entries
+	private final AtomicLong version = new AtomicLong();
+
+	LedgerEntryCache(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes must be non-negative: " + maxBytes);
+		}
+		this.cache = CacheBuilder.newBuilder()
+			.maximumWeight(maxBytes)
+			.weigher((AID aid, LedgerEntry ledgerEntry) -> ledgerEntry.getContent().length + ENTRY_OVERHEAD_BYTES)
+			.build();
+	}
+
+	/**
+	 * Gets the ledger entry with the given {@link AID}, loading and caching it with the given loader if not cached.
+	 * Absent entries are not cached.
+	 */
+	Optional<LedgerEntry> get(AID aid, Function<AID, Optional<LedgerEntry>> loader) {
+		LedgerEntry cached = cache.getIfPresent(aid);
+		if (cached != null) {
+			SystemMetaData.ifPresent(a -> a.increment("ledger.cache.hits"));
+			return Optional.of(cached);
+		}
+
+		SystemMetaData.ifPresent(a -> a.increment("ledger.cache.misses"));
+		long loadVersion = version.get();
+		Optional<LedgerEntry> loaded = loader.apply(aid);
+		loaded.ifPresent(ledgerEntry -> put(loadVersion, ledgerEntry));
+		return loaded;
+	}
+
+	/**
+	 * Gets the ledger entries with the given {@link AID}s, loading and caching those not cached in bulk with the given loader.
+	 * Absent entries are not cached and not contained in the result.
+	 */
+	ImmutableMap<AID, LedgerEntry> getAll(Collection<AID> aids, Function<Collection<AID>, Map<AID, LedgerEntry>> loader) {
+		ImmutableMap<AID, LedgerEntry> cached = cache.getAllPresent(aids);
+		List<AID> misses = aids.stream()
+			.filter(aid -> !cached.containsKey(aid))
+			.distinct()
+			.collect(Collectors.toList());
+		SystemMetaData.ifPresent(a -> {
+			a.increment("ledger.cache.hits", cached.size());
+			a.increment("ledger.cache.misses", misses.size());
+		});
+		if (misses.isEmpty()) {
+			return cached;
+		}
+
+		long loadVersion = version.get();
+		Map<AID, LedgerEntry> loaded = loader.apply(misses);
+		loaded.values().forEach(ledgerEntry -> put(loadVersion, ledgerEntry));
+		return ImmutableMap.<AID, LedgerEntry>builder()
+			.putAll(cached)
+			.putAll(loaded)
+			.build();
+	}
+
+	private void put(long loadVersion, LedgerEntry ledgerEntry) {
+		cache.put(ledgerEntry.getAID(), ledgerEntry);
+		// an invalidation may have happened while loading, in which case the loaded entry may be stale
+		if (version.get() != loadVersion) {
+			cache.invalidate(ledgerEntry.getAID());
+		}
+	}
+
+	void invalidate(AID aid) {
+		version.incrementAndGet();
+		cache.invalidate(aid);
+	}
+
+	void invalidateAll(Collection<AID> aids) {
+		version.incrementAndGet();
+		cache.invalidateAll(aids);
+	}
+
+	void invalidateAll() {
+		version.incrementAndGet();
+		cache.invalidateAll();
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes serialized ledger entries into records for storage, optionally compressing them.
+ * <p>
+ * Compressed records carry a leading format byte. Uncompressed records are stored as plain DSON, as all records
+ * written before compression was supported are. DSON ledger entries always start with a CBOR map header
+ * (0xA0 to 0xBF), so the format bytes below that range are unambiguous. Records of any format are decoded
+ * regardless of the format used for encoding.
+ */
+final class LedgerEntryCodec {
+	enum Format {
+		NONE,
+		SNAPPY,
+		DICTIONARY;
+
+		static Format from(String name) {
+			return Format.valueOf(name.trim().toUpperCase());
+		}
+	}
+
+	private static final byte FORMAT_SNAPPY = 0x01;
+	private static final byte FORMAT_DICTIONARY = 0x02;
+
+	private static final int SHINGLE_LENGTH = 8;
+
+	private final Format format;
+	private final byte[] dictionary;
+
+	LedgerEntryCodec(Format format, byte[] dictionary) {
+		this.format = Objects.requireNonNull(format);
+		if (format == Format.DICTIONARY && dictionary == null) {
+			throw new IllegalArgumentException("Dictionary is required for format " + format);
+		}
+		this.dictionary = dictionary == null ? null : dictionary.clone();
+	}
+
+	Format getFormat() {
+		return this.format;
+	}
+
+	byte[] encode(byte[] data) throws IOException {
+		switch (this.format) {
+			case NONE:
+				return data;
+			case SNAPPY:
+				return withFormat(FORMAT_SNAPPY, Snappy.compress(data));
+			case DICTIONARY:
+				return withFormat(FORMAT_DICTIONARY, deflate(data));
+			default:
+				throw new IllegalStateException("Unsupported format " + this.format);
+		}
+	}
+
+	byte[] decode(byte[] record) throws IOException {
+		if (record.length == 0) {
+			throw new IOException("Record is empty");
+		}
+
+		switch (record[0]) {
+			case FORMAT_SNAPPY:
+				byte[] data = new byte[Snappy.uncompressedLength(record, 1, record.length - 1)];
+				Snappy.uncompress(record, 1, record.length - 1, data, 0);
+				return data;
+			case FORMAT_DICTIONARY:
+				return inflate(record);
+			default:
+				return record;
+		}
+	}
+
+	/**
+	 * Decodes a record in a buffer, such as a read-only slice of a mapped payload segment, without changing
+	 * the position of the buffer. The deserializer takes arrays, so plain records are copied out of the buffer
+	 * once, and compressed records are copied once before decompressing. Records in heap buffers wrapping a
+	 * whole array are decoded from that array without copying.
+	 */
+	byte[] decode(ByteBuffer record) throws IOException {
+		if (record.hasArray() && record.arrayOffset() + record.position() == 0 && record.remaining() == record.array().length) {
+			return decode(record.array());
+		}
+		byte[] bytes = new byte[record.remaining()];
+		record.duplicate().get(bytes);
+		return decode(bytes);
+	}
+
+	private static byte[] withFormat(byte format, byte[] data) {
+		byte[] record = new byte[data.length + 1];
+		record[0] = format;
+		System.arraycopy(data, 0, record, 1, data.length);
+		return record;
+	}
+
+	// layout: format byte, uncompressed length, deflated data
+	private byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		try {
+			deflater.setDictionary(this.dictionary);
+			deflater.setInput(data);
+			deflater.finish();
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + Integer.BYTES);
+			output.write(ByteBuffer.allocate(Integer.BYTES).putInt(data.length).array(), 0, Integer.BYTES);
+			byte[] buffer = new byte[Math.max(64, data.length)];
+			while (!deflater.finished()) {
+				int length = deflater.deflate(buffer);
+				output.write(buffer, 0, length);
+			}
+			return output.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private byte[] inflate(byte[] record) throws IOException {
+		if (this.dictionary == null) {
+			throw new IOException("Record requires a dictionary but none is available");
+		}
+
+		int length = ByteBuffer.wrap(record, 1, Integer.BYTES).getInt();
+		int offset = 1 + Integer.BYTES;
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(record, offset, record.length - offset);
+			byte[] data = new byte[length];
+			int inflated = 0;
+			while (inflated < length) {
+				int count = inflater.inflate(data, inflated, length - inflated);
+				if (count == 0) {
+					if (inflater.needsDictionary()) {
+						inflater.setDictionary(this.dictionary);
+					} else if (inflater.finished() || inflater.needsInput()) {
+						throw new IOException("Record is truncated, expected " + length + " bytes but got " + inflated);
+					}
+				}
+				inflated += count;
+			}
+			return data;
+		} catch (DataFormatException e) {
+			throw new IOException("Record is corrupt", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Trains a preset dictionary of at most the given size from sample records.
+	 * Runs of bytes that occur in at least the given share of samples are collected,
+	 * with the most common runs placed at the end where they are cheapest to refer to.
+	 *
+	 * @param samples The sample records (plain serialized ledger entries)
+	 * @param maxSize The maximum size of the dictionary in bytes
+	 * @param minShare The minimum share of samples a run must occur in, between 0 and 1
+	 * @return The dictionary, empty if no common runs were found
+	 */
+	static byte[] trainDictionary(List<byte[]> samples, int maxSize, double minShare) {
+		// count the number of samples each shingle occurs in
+		Map<ByteBuffer, Integer> shingleFrequencies = new HashMap<>();
+		for (byte[] sample : samples) {
+			Set<ByteBuffer> sampleShingles = new HashSet<>();
+			for (int i = 0; i + SHINGLE_LENGTH <= sample.length; i++) {
+				sampleShingles.add(ByteBuffer.wrap(sample, i, SHINGLE_LENGTH).slice());
+			}
+			sampleShingles.forEach(shingle -> shingleFrequencies.merge(shingle, 1, Integer::sum));
+		}
+
+		// collect maximal runs of common shingles, scored by their length and frequency
+		int minFrequency = Math.max(2, (int) Math.ceil(samples.size() * minShare));
+		Map<ByteBuffer, Long> runScores = new HashMap<>();
+		for (byte[] sample : samples) {
+			int runStart = -1;
+			long runScore = 0;
+			for (int i = 0; i <= sample.length - SHINGLE_LENGTH + 1; i++) {
+				int frequency = i + SHINGLE_LENGTH <= sample.length
+					? shingleFrequencies.getOrDefault(ByteBuffer.wrap(sample, i, SHINGLE_LENGTH).slice(), 0)
+					: 0;
+				if (frequency >= minFrequency) {
+					if (runStart < 0) {
+						runStart = i;
+						runScore = 0;
+					}
+					runScore += frequency;
+				} else if (runStart >= 0) {
+					ByteBuffer run = ByteBuffer.wrap(Arrays.copyOfRange(sample, runStart, i - 1 + SHINGLE_LENGTH));
+					runScores.merge(run, runScore, Math::max);
+					runStart = -1;
+				}
+			}
+		}
+
+		List<Map.Entry<ByteBuffer, Long>> runs = new ArrayList<>(runScores.entrySet());
+		runs.sort(Map.Entry.<ByteBuffer, Long>comparingByValue(Comparator.reverseOrder()));
+
+		// fill the dictionary from the end, most valuable runs last
+		byte[] dictionary = new byte[maxSize];
+		int start = maxSize;
+		for (Map.Entry<ByteBuffer, Long> run : runs) {
+			int runLength = run.getKey().remaining();
+			if (runLength > start) {
+				continue;
+			}
+			start -= runLength;
+			run.getKey().duplicate().get(dictionary, start, runLength);
+		}
+		return Arrays.copyOfRange(dictionary, start, maxSize);
+	}
+}
@@ -26,7 +26,10 @@ import com.radixdlt.serialization.SerializerDummy;
 import com.radixdlt.serialization.SerializerId2;
 import com.radixdlt.store.LedgerEntry;
 import com.radixdlt.consensus.tempo.TempoException;
+import com.radixdlt.utils.Longs;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -42,6 +45,9 @@ public final class LedgerEntryIndices {
 	public static final byte ENTRY_INDEX_PREFIX = 0;
 	public static final byte SHARD_INDEX_PREFIX = 1;
 
+	// leading byte of the binary encoding, DSON encodings always start with a CBOR map header (0xA0 to 0xBF)
+	static final byte BINARY_FORMAT_VERSION = 0x01;
+
 	@JsonProperty("unique")
 	@DsonOutput(DsonOutput.Output.ALL)
 	private ImmutableSet<StoreIndex> uniqueIndices;
@@ -69,7 +75,94 @@ public final class LedgerEntryIndices {
 		return this.duplicateIndices;
 	}
 
+	/**
+	 * Checks whether the given data is in the binary encoding produced by {@link #toByteArray()}.
+	 */
+	static boolean isBinary(byte[] data) {
+		return data.length > 0 && data[0] == BINARY_FORMAT_VERSION;
+	}
+
+	/**
+	 * Encodes these indices in a compact binary format:
+	 * the format version, followed by the unique and then the duplicate indices, each as a count followed by
+	 * the indices as prefix, identifier length and identifier.
+	 */
+	byte[] toByteArray() {
+		int size = 1 + encodedSize(this.uniqueIndices) + encodedSize(this.duplicateIndices);
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.put(BINARY_FORMAT_VERSION);
+		encode(this.uniqueIndices, buffer);
+		encode(this.duplicateIndices, buffer);
+		return buffer.array();
+	}
+
+	private static int encodedSize(Set<StoreIndex> indices) {
+		int size = Integer.BYTES;
+		for (StoreIndex index : indices) {
+			size += 1 + Integer.BYTES + index.getIdentifier().length;
+		}
+		return size;
+	}
+
+	private static void encode(Set<StoreIndex> indices, ByteBuffer buffer) {
+		buffer.putInt(indices.size());
+		for (StoreIndex index : indices) {
+			buffer.put((byte) index.getPrefix());
+			buffer.putInt(index.getIdentifier().length);
+			buffer.put(index.getIdentifier());
+		}
+	}
+
+	/**
+	 * Decodes indices encoded by {@link #toByteArray()}.
+	 */
+	static LedgerEntryIndices fromByteArray(byte[] data) {
+		if (!isBinary(data)) {
+			throw new IllegalArgumentException("Data is not in binary format version " + BINARY_FORMAT_VERSION);
+		}
+
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1);
+			ImmutableSet<StoreIndex> uniqueIndices = decode(buffer);
+			ImmutableSet<StoreIndex> duplicateIndices = decode(buffer);
+			if (buffer.hasRemaining()) {
+				throw new IllegalArgumentException("Unexpected " + buffer.remaining() + " trailing bytes");
+			}
+			return new LedgerEntryIndices(uniqueIndices, duplicateIndices);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Data is truncated", e);
+		}
+	}
+
+	private static ImmutableSet<StoreIndex> decode(ByteBuffer buffer) {
+		int count = buffer.getInt();
+		ImmutableSet.Builder<StoreIndex> indices = ImmutableSet.builder();
+		for (int i = 0; i < count; i++) {
+			byte prefix = buffer.get();
+			int length = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) {
+				throw new IllegalArgumentException("Invalid identifier length " + length);
+			}
+			byte[] identifier = new byte[length];
+			buffer.get(identifier);
+			indices.add(new StoreIndex(prefix, identifier));
+		}
+		return indices.build();
+	}
+
+	/**
+	 * Gets the identifier of the shard index for a certain shard.
+	 * The sign bit is flipped so that the unsigned byte order of identifiers matches the signed order of shards.
+	 */
+	public static byte[] toShardIdentifier(long shard) {
+		return Longs.toByteArray(shard ^ Long.MIN_VALUE);
+	}
+
 	static LedgerEntryIndices from(LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices) {
+		return from(ledgerEntry, uniqueIndices, duplicateIndices, ImmutableSet.of());
+	}
+
+	static LedgerEntryIndices from(LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices, Set<Long> shards) {
 		List<StoreIndex> offendingIndices = Stream.concat(uniqueIndices.stream(), duplicateIndices.stream())
 			.filter(index -> index.getPrefix() == ENTRY_INDEX_PREFIX || index.getPrefix() == SHARD_INDEX_PREFIX)
 			.collect(Collectors.toList());
@@ -88,6 +181,9 @@ public final class LedgerEntryIndices {
 
 		// add internal indices
 		allUniqueIndices.add(new StoreIndex(ENTRY_INDEX_PREFIX, ledgerEntry.getAID().getBytes()));
+		for (long shard : shards) {
+			allDuplicateIndices.add(new StoreIndex(SHARD_INDEX_PREFIX, toShardIdentifier(shard)));
+		}
 
 		return new LedgerEntryIndices(allUniqueIndices.build(), allDuplicateIndices.build());
 	}
@@ -0,0 +1,354 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.radixdlt.common.AID;
+import com.radixdlt.store.StoreIndex;
+import com.radixdlt.utils.Longs;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+import org.bouncycastle.util.encoders.Hex;
+import org.radix.logging.Logger;
+import org.radix.logging.Logging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.radixdlt.store.berkeley.LedgerEntryIndices.ENTRY_INDEX_PREFIX;
+
+/**
+ * Verifies the consistency of the databases of a {@link BerkeleyLedgerEntryStore} on startup.
+ * <p>
+ * Checks that every primary record has an indices record, including its entry index, that the unique and
+ * duplicate indices match the stored indices records, that no index points to a missing primary record and
+ * that pending and committed markers agree with the primary records. Committed logical clocks are not required
+ * to be dense. The databases are walked in parallel
+ * key ranges and the verification stops once its time budget is used up, reporting what it checked so far.
+ */
+final class LedgerIntegrityVerifier {
+	private static final Logger log = Logging.getLogger("store.integrity");
+	private static final int MAX_REPORTED_ERRORS = 100;
+	private static final int PRIMARY_KEY_PREFIX_LENGTH = 1 + Long.BYTES;
+
+	private final Database atoms;
+	private final Database atomIndices;
+	private final Database uniqueIndices;
+	private final Database duplicatedIndices;
+	private final Database pending;
+	private final Database committed;
+
+	LedgerIntegrityVerifier(
+		Database atoms,
+		Database atomIndices,
+		Database uniqueIndices,
+		Database duplicatedIndices,
+		Database pending,
+		Database committed
+	) {
+		this.atoms = atoms;
+		this.atomIndices = atomIndices;
+		this.uniqueIndices = uniqueIndices;
+		this.duplicatedIndices = duplicatedIndices;
+		this.pending = pending;
+		this.committed = committed;
+	}
+
+	/**
+	 * Result of a verification.
+	 */
+	static final class Report {
+		private final LongAdder primaries = new LongAdder();
+		private final LongAdder indices = new LongAdder();
+		private final LongAdder markers = new LongAdder();
+		private final AtomicLong errorCount = new AtomicLong();
+		private final Queue<String> errors = new ConcurrentLinkedQueue<>();
+		private volatile boolean complete = true;
+		private volatile long duration;
+
+		private void error(String error) {
+			if (this.errorCount.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+				this.errors.add(error);
+			}
+		}
+
+		long getPrimaries() {
+			return this.primaries.sum();
+		}
+
+		long getIndices() {
+			return this.indices.sum();
+		}
+
+		long getMarkers() {
+			return this.markers.sum();
+		}
+
+		long getErrorCount() {
+			return this.errorCount.get();
+		}
+
+		/**
+		 * Gets the first errors found, up to a limit.
+		 */
+		List<String> getErrors() {
+			return new ArrayList<>(this.errors);
+		}
+
+		/**
+		 * Whether all records were checked within the time budget.
+		 */
+		boolean isComplete() {
+			return this.complete;
+		}
+
+		long getDuration() {
+			return this.duration;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s integrity check of %d primary records, %d index records and %d markers in %dms with %d errors",
+				this.complete ? "Complete" : "Partial", getPrimaries(), getIndices(), getMarkers(), this.duration, getErrorCount());
+		}
+	}
+
+	/**
+	 * Verifies the databases with the given number of threads, stopping after the time budget.
+	 *
+	 * @param lastLogicalClocks last logical clock of primary records by primary key prefix
+	 */
+	Report verify(int threads, long timeBudgetMs, long[] lastLogicalClocks) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+
+		Report report = new Report();
+		long start = System.currentTimeMillis();
+		long deadline = start + timeBudgetMs;
+
+		List<Runnable> tasks = new ArrayList<>();
+		for (int prefix = 0; prefix < lastLogicalClocks.length; prefix++) {
+			long last = lastLogicalClocks[prefix];
+			if (last <= 0) {
+				continue;
+			}
+			long rangeSize = Math.max(1L, (last + threads) / threads);
+			for (long from = 0; from <= last; from += rangeSize) {
+				byte rangePrefix = (byte) prefix;
+				long rangeFrom = from;
+				long rangeTo = Math.min(last + 1, from + rangeSize);
+				tasks.add(() -> verifyPrimaries(rangePrefix, rangeFrom, rangeTo, deadline, report));
+			}
+		}
+		// index keys are split by their leading byte
+		int byteRangeSize = (256 + threads - 1) / threads;
+		for (int from = 0; from < 256; from += byteRangeSize) {
+			int rangeFrom = from;
+			int rangeTo = Math.min(256, from + byteRangeSize);
+			tasks.add(() -> verifyIndices(this.uniqueIndices, true, rangeFrom, rangeTo, deadline, report));
+			tasks.add(() -> verifyIndices(this.duplicatedIndices, false, rangeFrom, rangeTo, deadline, report));
+		}
+		tasks.add(() -> verifyPending(deadline, report));
+		tasks.add(() -> verifyCommitted(deadline, report));
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+			new ThreadFactoryBuilder().setNameFormat("Ledger Integrity Verifier-%d").setDaemon(true).build());
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (Runnable task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			report.complete = false;
+		} catch (ExecutionException e) {
+			report.complete = false;
+			report.error("Integrity check failed: " + e.getCause());
+			log.error("Integrity check failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		report.duration = System.currentTimeMillis() - start;
+		return report;
+	}
+
+	private static boolean outOfTime(long deadline, Report report) {
+		if (System.currentTimeMillis() > deadline) {
+			report.complete = false;
+			return true;
+		}
+		return false;
+	}
+
+	private void verifyPrimaries(byte prefix, long fromLogicalClock, long toLogicalClock, long deadline, Report report) {
+		try (Cursor cursor = this.atoms.openCursor(null, null);
+			 Cursor duplicates = this.duplicatedIndices.openCursor(null, null)) {
+			DatabaseEntry pKey = new DatabaseEntry(toPKeyPrefix(prefix, fromLogicalClock));
+			// only the keys of primary records are checked, avoid reading the records
+			DatabaseEntry data = new DatabaseEntry();
+			data.setPartial(0, 0, true);
+			DatabaseEntry indicesData = new DatabaseEntry();
+
+			OperationStatus status = cursor.getSearchKeyRange(pKey, data, LockMode.READ_UNCOMMITTED);
+			while (status == OperationStatus.SUCCESS
+				&& pKey.getData()[0] == prefix
+				&& Longs.fromByteArray(pKey.getData(), 1) < toLogicalClock
+				&& !outOfTime(deadline, report)) {
+				byte[] primary = pKey.getData().clone();
+				verifyPrimary(primary, indicesData, duplicates, report);
+				report.primaries.increment();
+				status = cursor.getNext(pKey, data, LockMode.READ_UNCOMMITTED);
+			}
+		}
+	}
+
+	private void verifyPrimary(byte[] primary, DatabaseEntry indicesData, Cursor duplicates, Report report) {
+		AID aid = AID.from(primary, PRIMARY_KEY_PREFIX_LENGTH);
+		if (this.atomIndices.get(null, new DatabaseEntry(primary), indicesData, LockMode.READ_UNCOMMITTED) != OperationStatus.SUCCESS) {
+			report.error("Atom '" + aid + "' has no indices record");
+			return;
+		}
+
+		LedgerEntryIndices indices;
+		try {
+			indices = LedgerEntryIndices.fromByteArray(indicesData.getData());
+		} catch (IllegalArgumentException e) {
+			report.error("Indices record of atom '" + aid + "' is corrupt: " + e.getMessage());
+			return;
+		}
+
+		if (!indices.getUniqueIndices().contains(new StoreIndex(ENTRY_INDEX_PREFIX, aid.getBytes()))) {
+			report.error("Indices record of atom '" + aid + "' has no entry index");
+		}
+
+		DatabaseEntry indexed = new DatabaseEntry();
+		for (StoreIndex uniqueIndex : indices.getUniqueIndices()) {
+			OperationStatus status = this.uniqueIndices.get(null, new DatabaseEntry(uniqueIndex.asKey()), indexed, LockMode.READ_UNCOMMITTED);
+			if (status != OperationStatus.SUCCESS) {
+				report.error("Unique index " + uniqueIndex.toHexString() + " of atom '" + aid + "' is missing");
+			} else if (!Arrays.equals(primary, indexed.getData())) {
+				report.error("Unique index " + uniqueIndex.toHexString() + " of atom '" + aid + "' points to another atom");
+			}
+		}
+		for (StoreIndex duplicateIndex : indices.getDuplicateIndices()) {
+			DatabaseEntry key = new DatabaseEntry(duplicateIndex.asKey());
+			OperationStatus status = duplicates.getSearchBoth(key, new DatabaseEntry(primary), LockMode.READ_UNCOMMITTED);
+			if (status != OperationStatus.SUCCESS) {
+				report.error("Duplicate index " + duplicateIndex.toHexString() + " of atom '" + aid + "' is missing");
+			}
+		}
+	}
+
+	private void verifyIndices(Database indexDatabase, boolean unique, int fromByte, int toByte, long deadline, Report report) {
+		try (Cursor cursor = indexDatabase.openCursor(null, null)) {
+			DatabaseEntry key = new DatabaseEntry(new byte[] { (byte) fromByte });
+			DatabaseEntry pKey = new DatabaseEntry();
+			DatabaseEntry data = new DatabaseEntry();
+			data.setPartial(0, 0, true);
+
+			OperationStatus status = cursor.getSearchKeyRange(key, pKey, LockMode.READ_UNCOMMITTED);
+			while (status == OperationStatus.SUCCESS
+				&& key.getData().length > 0
+				&& (key.getData()[0] & 0xFF) < toByte
+				&& !outOfTime(deadline, report)) {
+				byte[] primary = pKey.getData();
+				if (primary.length != PRIMARY_KEY_PREFIX_LENGTH + AID.BYTES) {
+					report.error((unique ? "Unique" : "Duplicate") + " index " + Hex.toHexString(key.getData())
+						+ " has an invalid primary key");
+				} else if (this.atoms.get(null, new DatabaseEntry(primary), data, LockMode.READ_UNCOMMITTED) != OperationStatus.SUCCESS) {
+					report.error((unique ? "Unique" : "Duplicate") + " index " + Hex.toHexString(key.getData())
+						+ " points to missing atom '" + AID.from(primary, PRIMARY_KEY_PREFIX_LENGTH) + "'");
+				} else if (unique && key.getData()[0] == ENTRY_INDEX_PREFIX
+					&& !AID.from(key.getData(), 1).equals(AID.from(primary, PRIMARY_KEY_PREFIX_LENGTH))) {
+					report.error("Entry index " + Hex.toHexString(key.getData())
+						+ " points to atom '" + AID.from(primary, PRIMARY_KEY_PREFIX_LENGTH) + "'");
+				}
+				report.indices.increment();
+				status = cursor.getNext(key, pKey, LockMode.READ_UNCOMMITTED);
+			}
+		}
+	}
+
+	private void verifyPending(long deadline, Report report) {
+		try (Cursor cursor = this.pending.openCursor(null, null)) {
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry value = new DatabaseEntry();
+			DatabaseEntry pKey = new DatabaseEntry();
+			OperationStatus status = cursor.getFirst(key, value, LockMode.READ_UNCOMMITTED);
+			while (status == OperationStatus.SUCCESS && !outOfTime(deadline, report)) {
+				AID aid = AID.from(key.getData());
+				long pendingLogicalClock = Longs.fromByteArray(value.getData());
+				DatabaseEntry entryIndex = new DatabaseEntry(StoreIndex.from(ENTRY_INDEX_PREFIX, aid.getBytes()));
+				if (this.uniqueIndices.get(null, entryIndex, pKey, LockMode.READ_UNCOMMITTED) != OperationStatus.SUCCESS) {
+					report.error("Pending atom '" + aid + "' is missing");
+				} else if (Longs.fromByteArray(pKey.getData(), 1) != pendingLogicalClock) {
+					report.error("Pending atom '" + aid + "' is marked at logical clock " + pendingLogicalClock
+						+ " but stored at " + Longs.fromByteArray(pKey.getData(), 1));
+				}
+				report.markers.increment();
+				status = cursor.getNext(key, value, LockMode.READ_UNCOMMITTED);
+			}
+		}
+	}
+
+	private void verifyCommitted(long deadline, Report report) {
+		try (Cursor cursor = this.committed.openCursor(null, null)) {
+			DatabaseEntry key = new DatabaseEntry();
+			DatabaseEntry value = new DatabaseEntry();
+			DatabaseEntry data = new DatabaseEntry();
+			data.setPartial(0, 0, true);
+			OperationStatus status = cursor.getFirst(key, value, LockMode.READ_UNCOMMITTED);
+			while (status == OperationStatus.SUCCESS && !outOfTime(deadline, report)) {
+				AID aid = AID.from(value.getData());
+				DatabaseEntry entryIndex = new DatabaseEntry(StoreIndex.from(ENTRY_INDEX_PREFIX, aid.getBytes()));
+				if (this.uniqueIndices.get(null, entryIndex, data, LockMode.READ_UNCOMMITTED) != OperationStatus.SUCCESS) {
+					report.error("Committed atom '" + aid + "' is missing");
+				}
+				if (this.pending.get(null, new DatabaseEntry(aid.getBytes()), data, LockMode.READ_UNCOMMITTED) == OperationStatus.SUCCESS) {
+					report.error("Committed atom '" + aid + "' is also marked as pending");
+				}
+				report.markers.increment();
+				status = cursor.getNext(key, value, LockMode.READ_UNCOMMITTED);
+			}
+		}
+	}
+
+	private static byte[] toPKeyPrefix(byte prefix, long logicalClock) {
+		byte[] pKey = new byte[PRIMARY_KEY_PREFIX_LENGTH];
+		pKey[0] = prefix;
+		Longs.copyTo(logicalClock, pKey, 1);
+		return pKey;
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import com.radixdlt.common.AID;
+import com.radixdlt.utils.Longs;
+import org.xerial.snappy.Snappy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Segment file format for snapshots of committed ledger entries, ordered by committed logical clock.
+ * <p>
+ * A segment starts with a magic number and format version, followed by one record per ledger entry:
+ * a record type, the committed logical clock, the {@link AID}, the Snappy compressed DSON of the entry,
+ * the binary {@link LedgerEntryIndices} of the entry and a CRC32 checksum of the record.
+ * The segment ends with an end record holding the number of entries and its own checksum,
+ * so that truncated segments are detected.
+ */
+final class LedgerSnapshot {
+	private static final long MAGIC = 0x5244584C45444752L; // "RDXLEDGR"
+	private static final int FORMAT_VERSION = 1;
+	private static final byte RECORD_ENTRY = 1;
+	private static final byte RECORD_END = 0;
+	private static final int BUFFER_SIZE = 1 << 16;
+	// bounds allocations when reading corrupt lengths
+	private static final int MAX_FIELD_BYTES = 64 * 1024 * 1024;
+
+	private LedgerSnapshot() {
+		throw new IllegalStateException("Cannot instantiate.");
+	}
+
+	/**
+	 * A committed ledger entry as stored in a snapshot.
+	 */
+	static final class Record {
+		private final long logicalClock;
+		private final AID aid;
+		private final byte[] ledgerEntryDson;
+		private final byte[] indices;
+
+		Record(long logicalClock, AID aid, byte[] ledgerEntryDson, byte[] indices) {
+			this.logicalClock = logicalClock;
+			this.aid = aid;
+			this.ledgerEntryDson = ledgerEntryDson;
+			this.indices = indices;
+		}
+
+		long getLogicalClock() {
+			return logicalClock;
+		}
+
+		AID getAid() {
+			return aid;
+		}
+
+		byte[] getLedgerEntryDson() {
+			return ledgerEntryDson;
+		}
+
+		/**
+		 * Gets the indices of the entry in the binary encoding of {@link LedgerEntryIndices#toByteArray()}.
+		 */
+		byte[] getIndices() {
+			return indices;
+		}
+	}
+
+	/**
+	 * Writes a snapshot segment to a stream. The segment is only complete once the writer is finished.
+	 */
+	static final class Writer implements Closeable {
+		private final DataOutputStream output;
+		private final CRC32 crc = new CRC32();
+		private long records = 0;
+		private long lastLogicalClock = 0;
+
+		Writer(OutputStream output) throws IOException {
+			this.output = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+			this.output.writeLong(MAGIC);
+			this.output.writeInt(FORMAT_VERSION);
+		}
+
+		void write(Record record) throws IOException {
+			if (record.getLogicalClock() <= this.lastLogicalClock) {
+				throw new IllegalArgumentException("Records must be written in logical clock order, "
+					+ record.getLogicalClock() + " after " + this.lastLogicalClock);
+			}
+
+			byte[] compressed = Snappy.compress(record.getLedgerEntryDson());
+			this.crc.reset();
+			this.output.writeByte(RECORD_ENTRY);
+			writeLong(record.getLogicalClock());
+			writeBytes(record.getAid().getBytes());
+			writeInt(compressed.length);
+			writeBytes(compressed);
+			writeInt(record.getIndices().length);
+			writeBytes(record.getIndices());
+			this.output.writeInt((int) this.crc.getValue());
+
+			this.lastLogicalClock = record.getLogicalClock();
+			this.records++;
+		}
+
+		long getRecords() {
+			return this.records;
+		}
+
+		/**
+		 * Writes the end record, completing the segment.
+		 */
+		void finish() throws IOException {
+			this.crc.reset();
+			this.output.writeByte(RECORD_END);
+			writeLong(this.records);
+			this.output.writeInt((int) this.crc.getValue());
+			this.output.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.output.close();
+		}
+
+		private void writeLong(long value) throws IOException {
+			this.output.writeLong(value);
+			this.crc.update(Longs.toByteArray(value));
+		}
+
+		private void writeInt(int value) throws IOException {
+			this.output.writeInt(value);
+			this.crc.update(value >>> 24);
+			this.crc.update(value >>> 16);
+			this.crc.update(value >>> 8);
+			this.crc.update(value);
+		}
+
+		private void writeBytes(byte[] bytes) throws IOException {
+			this.output.write(bytes);
+			this.crc.update(bytes);
+		}
+	}
+
+	/**
+	 * Reads and verifies a snapshot segment from a stream.
+	 */
+	static final class Reader implements Closeable {
+		private final DataInputStream input;
+		private final CRC32 crc = new CRC32();
+		private long records = 0;
+		private long lastLogicalClock = 0;
+		private boolean ended = false;
+
+		Reader(InputStream input) throws IOException {
+			this.input = new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+			try {
+				long magic = this.input.readLong();
+				if (magic != MAGIC) {
+					throw new IOException("Not a ledger snapshot, magic is " + Long.toHexString(magic));
+				}
+				int version = this.input.readInt();
+				if (version != FORMAT_VERSION) {
+					throw new IOException("Unsupported ledger snapshot format version " + version);
+				}
+			} catch (EOFException e) {
+				throw new IOException("Ledger snapshot is truncated", e);
+			}
+		}
+
+		/**
+		 * Reads the next record, or nothing once the end of the segment is reached.
+		 *
+		 * @throws IOException if the segment is corrupt or truncated
+		 */
+		Optional<Record> read() throws IOException {
+			if (this.ended) {
+				return Optional.empty();
+			}
+
+			try {
+				this.crc.reset();
+				byte type = this.input.readByte();
+				if (type == RECORD_END) {
+					long expectedRecords = readLong();
+					verifyChecksum();
+					if (expectedRecords != this.records) {
+						throw new IOException("Ledger snapshot has " + this.records + " records but expected " + expectedRecords);
+					}
+					this.ended = true;
+					return Optional.empty();
+				} else if (type != RECORD_ENTRY) {
+					throw new IOException("Unknown record type " + type + " after record " + this.records);
+				}
+
+				long logicalClock = readLong();
+				AID aid = AID.from(readBytes(AID.BYTES));
+				byte[] compressed = readBytes(readInt());
+				byte[] indices = readBytes(readInt());
+				verifyChecksum();
+				if (logicalClock <= this.lastLogicalClock) {
+					throw new IOException("Record " + this.records + " at logical clock " + logicalClock
+						+ " is out of order after " + this.lastLogicalClock);
+				}
+
+				this.lastLogicalClock = logicalClock;
+				this.records++;
+				return Optional.of(new Record(logicalClock, aid, Snappy.uncompress(compressed), indices));
+			} catch (EOFException e) {
+				throw new IOException("Ledger snapshot is truncated after record " + this.records, e);
+			}
+		}
+
+		long getRecords() {
+			return this.records;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.input.close();
+		}
+
+		private void verifyChecksum() throws IOException {
+			int expected = (int) this.crc.getValue();
+			int checksum = this.input.readInt();
+			if (checksum != expected) {
+				throw new IOException("Checksum mismatch in record " + this.records + " of ledger snapshot");
+			}
+		}
+
+		private long readLong() throws IOException {
+			long value = this.input.readLong();
+			this.crc.update(Longs.toByteArray(value));
+			return value;
+		}
+
+		private int readInt() throws IOException {
+			int value = this.input.readInt();
+			this.crc.update(value >>> 24);
+			this.crc.update(value >>> 16);
+			this.crc.update(value >>> 8);
+			this.crc.update(value);
+			return value;
+		}
+
+		private byte[] readBytes(int length) throws IOException {
+			if (length < 0 || length > MAX_FIELD_BYTES) {
+				throw new IOException("Invalid length " + length + " in record " + this.records + " of ledger snapshot");
+			}
+			byte[] bytes = new byte[length];
+			this.input.readFully(bytes);
+			this.crc.update(bytes);
+			return bytes;
+		}
+	}
+}
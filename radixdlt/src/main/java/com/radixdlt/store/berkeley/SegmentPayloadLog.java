@@ -0,0 +1,345 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import org.radix.logging.Logger;
+import org.radix.logging.Logging;
+import org.radix.utils.SystemMetaData;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of entry payloads in memory-mapped segment files of a fixed size.
+ * <p>
+ * Payloads are appended as records of length, CRC32 checksum and payload, and are referred to by pointer records
+ * of segment, offset and length that are stored in place of the payload. Pointer records start with a format byte
+ * that is distinct from those of {@link LedgerEntryCodec} records, so that both kinds can be told apart.
+ * Reads are slices of the mapped segments and don't go through the Berkeley cache, the length and checksum
+ * of the record are verified on every read.
+ * <p>
+ * At most a configured number of segments are mapped at a time, besides the one being appended to.
+ * The least recently used mapping is released when another segment is mapped, which unmaps it once the buffer
+ * and all slices read from it are collected. Mappings are not unmapped explicitly, as slices may still be in use.
+ * <p>
+ * Space of payloads that are deleted or whose writing transaction was aborted is not reclaimed, there is no
+ * compaction. Such payloads are reported through {@link #discard(byte[])}, and the bytes they take up since the log
+ * was opened are published as the {@code ledger.payload_log.dead_bytes} metric, so that growth of dead space shows.
+ * Appended payloads are only guaranteed to be on disk after {@link #sync()}.
+ */
+final class SegmentPayloadLog {
+	private static final Logger log = Logging.getLogger("store.payloads");
+
+	private static final byte FORMAT_POINTER = 0x10;
+	static final int POINTER_RECORD_LENGTH = 1 + 3 * Integer.BYTES;
+	private static final int RECORD_HEADER_LENGTH = 2 * Integer.BYTES; // length, checksum
+	private static final String SEGMENT_FILE_FORMAT = "payloads-%08d.seg";
+
+	private final File directory;
+	private final int segmentSize;
+	private final int maxMappedSegments;
+	// guarded by itself, in access order so that the least recently used segment is released first
+	private final LinkedHashMap<Integer, MappedByteBuffer> segments = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final Object writeLock = new Object();
+	private volatile int writeSegment;
+	private int writePosition;
+	private final AtomicLong deadBytes = new AtomicLong();
+
+	SegmentPayloadLog(File directory, int segmentSize, int maxMappedSegments) throws IOException {
+		if (segmentSize <= RECORD_HEADER_LENGTH) {
+			throw new IllegalArgumentException("Segment size is too small: " + segmentSize);
+		}
+		if (maxMappedSegments < 1) {
+			throw new IllegalArgumentException("Maximum number of mapped segments must be positive: " + maxMappedSegments);
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create payload log directory " + directory);
+		}
+
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxMappedSegments = maxMappedSegments;
+		this.writeSegment = lastSegment();
+		this.writePosition = recover(segment(this.writeSegment, true));
+		log.info("Opened payload log in " + directory + " at segment " + this.writeSegment + ", position " + this.writePosition);
+	}
+
+	/**
+	 * Checks whether a stored record is a pointer record of this log rather than an inline record.
+	 */
+	static boolean isPointer(byte[] record) {
+		return record.length == POINTER_RECORD_LENGTH && record[0] == FORMAT_POINTER;
+	}
+
+	/**
+	 * Appends a payload to the log.
+	 *
+	 * @return the pointer record to store in place of the payload
+	 */
+	byte[] append(byte[] payload) {
+		int recordLength = RECORD_HEADER_LENGTH + payload.length;
+		if (payload.length == 0) {
+			throw new IllegalArgumentException("Payload is empty");
+		}
+		if (recordLength > this.segmentSize) {
+			throw new IllegalArgumentException("Payload of " + payload.length + " bytes exceeds segment size " + this.segmentSize);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		synchronized (this.writeLock) {
+			if (this.writePosition + recordLength > this.segmentSize) {
+				// the remainder of the segment stays zeroed, which reads as the end of the segment
+				segment(this.writeSegment, false).force();
+				this.writeSegment++;
+				this.writePosition = 0;
+			}
+
+			int offset = this.writePosition;
+			ByteBuffer buffer = segment(this.writeSegment, true).duplicate();
+			buffer.position(offset + Integer.BYTES);
+			buffer.putInt((int) crc.getValue());
+			buffer.put(payload);
+			// length is written last, so that a partially written record reads as the end of the segment
+			buffer.putInt(offset, payload.length);
+			this.writePosition += recordLength;
+
+			return ByteBuffer.allocate(POINTER_RECORD_LENGTH)
+				.put(FORMAT_POINTER)
+				.putInt(this.writeSegment)
+				.putInt(offset + RECORD_HEADER_LENGTH)
+				.putInt(payload.length)
+				.array();
+		}
+	}
+
+	/**
+	 * Reads the payload a pointer record refers to, as a read-only slice of the mapped segment.
+	 *
+	 * @throws IllegalStateException if the record does not match the pointer or its checksum
+	 */
+	ByteBuffer read(byte[] pointerRecord) {
+		if (!isPointer(pointerRecord)) {
+			throw new IllegalArgumentException("Not a pointer record");
+		}
+
+		ByteBuffer pointer = pointerBuffer(pointerRecord);
+		int segment = pointer.getInt();
+		int offset = pointer.getInt();
+		int length = pointer.getInt();
+		if (offset < RECORD_HEADER_LENGTH || length < 0 || offset + length > this.segmentSize) {
+			throw new IllegalArgumentException("Invalid pointer to " + length + " bytes at " + segment + ":" + offset);
+		}
+
+		MappedByteBuffer mapped = segment(segment, false);
+		int recordLength = mapped.getInt(offset - RECORD_HEADER_LENGTH);
+		if (recordLength != length) {
+			throw new IllegalStateException("Payload record at " + segment + ":" + offset + " has length " + recordLength
+				+ " but pointer has length " + length);
+		}
+
+		ByteBuffer buffer = mapped.duplicate();
+		buffer.position(offset);
+		buffer.limit(offset + length);
+		ByteBuffer payload = buffer.slice();
+
+		CRC32 crc = new CRC32();
+		crc.update(payload.duplicate());
+		if ((int) crc.getValue() != mapped.getInt(offset - Integer.BYTES)) {
+			throw new IllegalStateException("Payload record at " + segment + ":" + offset + " is corrupt, checksum mismatch");
+		}
+		return payload.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Accounts for the space of a payload that is no longer referred to, which is not reclaimed.
+	 */
+	void discard(byte[] pointerRecord) {
+		if (!isPointer(pointerRecord)) {
+			throw new IllegalArgumentException("Not a pointer record");
+		}
+
+		ByteBuffer pointer = pointerBuffer(pointerRecord);
+		int length = pointer.getInt(pointer.position() + 2 * Integer.BYTES);
+		long dead = this.deadBytes.addAndGet(RECORD_HEADER_LENGTH + (long) length);
+		SystemMetaData.ifPresent(a -> a.put("ledger.payload_log.dead_bytes", dead));
+	}
+
+	/**
+	 * Gets the number of bytes taken up by discarded payloads since this log was opened.
+	 */
+	long deadBytes() {
+		return this.deadBytes.get();
+	}
+
+	private static ByteBuffer pointerBuffer(byte[] pointerRecord) {
+		return ByteBuffer.wrap(pointerRecord, 1, POINTER_RECORD_LENGTH - 1);
+	}
+
+	/**
+	 * Forces all appended payloads to disk.
+	 */
+	void sync() {
+		synchronized (this.writeLock) {
+			segment(this.writeSegment, true).force();
+		}
+	}
+
+	/**
+	 * Deletes all segments and starts over with an empty log.
+	 */
+	void clear() {
+		synchronized (this.writeLock) {
+			synchronized (this.segments) {
+				this.segments.clear();
+			}
+			File[] files = this.directory.listFiles((dir, name) -> parseSegment(name) >= 0);
+			if (files != null) {
+				for (File file : files) {
+					if (!file.delete()) {
+						log.warn("Could not delete payload segment " + file);
+					}
+				}
+			}
+			this.writeSegment = 0;
+			this.writePosition = 0;
+		}
+	}
+
+	void close() {
+		synchronized (this.writeLock) {
+			synchronized (this.segments) {
+				MappedByteBuffer mapped = this.segments.get(this.writeSegment);
+				if (mapped != null) {
+					mapped.force();
+				}
+				// mappings are released once the buffers are collected
+				this.segments.clear();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of segments currently mapped.
+	 */
+	int mappedSegments() {
+		synchronized (this.segments) {
+			return this.segments.size();
+		}
+	}
+
+	private MappedByteBuffer segment(int segment, boolean create) {
+		synchronized (this.segments) {
+			MappedByteBuffer mapped = this.segments.get(segment);
+			if (mapped == null) {
+				// mapping is rare compared to reads, so it is fine to do under the lock
+				mapped = map(segment, create);
+				this.segments.put(segment, mapped);
+				releaseSegments();
+			}
+			return mapped;
+		}
+	}
+
+	/**
+	 * Releases the least recently used mappings beyond the maximum, except for the segment being appended to.
+	 */
+	private void releaseSegments() {
+		Iterator<Integer> mapped = this.segments.keySet().iterator();
+		while (this.segments.size() > this.maxMappedSegments + 1 && mapped.hasNext()) {
+			if (mapped.next() != this.writeSegment) {
+				mapped.remove();
+			}
+		}
+	}
+
+	private MappedByteBuffer map(int segment, boolean create) {
+		File file = new File(this.directory, String.format(SEGMENT_FILE_FORMAT, segment));
+		if (!create && !file.exists()) {
+			throw new IllegalStateException("Payload segment " + file + " does not exist");
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			 FileChannel channel = raf.getChannel()) {
+			// mapping extends the file to the full segment size, the mapping remains valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error while mapping payload segment " + file, e);
+		}
+	}
+
+	private int lastSegment() {
+		int last = 0;
+		String[] names = this.directory.list();
+		if (names != null) {
+			for (String name : names) {
+				last = Math.max(last, parseSegment(name));
+			}
+		}
+		return last;
+	}
+
+	private static int parseSegment(String name) {
+		if (name.startsWith("payloads-") && name.endsWith(".seg")) {
+			try {
+				return Integer.parseInt(name.substring("payloads-".length(), name.length() - ".seg".length()));
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the end of the valid records in a segment, which is where appending continues.
+	 * Only the last segment is scanned: earlier segments were forced to disk when appending rolled over to the
+	 * next one, so they can't have torn records, and a corrupt record in any segment is detected when read.
+	 */
+	private int recover(MappedByteBuffer segment) {
+		int position = 0;
+		CRC32 crc = new CRC32();
+		while (position + RECORD_HEADER_LENGTH <= this.segmentSize) {
+			int length = segment.getInt(position);
+			if (length <= 0 || position + RECORD_HEADER_LENGTH + length > this.segmentSize) {
+				break;
+			}
+
+			ByteBuffer payload = segment.duplicate();
+			payload.position(position + RECORD_HEADER_LENGTH);
+			payload.limit(position + RECORD_HEADER_LENGTH + length);
+			crc.reset();
+			crc.update(payload);
+			if ((int) crc.getValue() != segment.getInt(position + Integer.BYTES)) {
+				log.warn("Payload segment " + this.writeSegment + " has a torn record at " + position + ", appending from there");
+				break;
+			}
+			position += RECORD_HEADER_LENGTH + length;
+		}
+		return position;
+	}
+}
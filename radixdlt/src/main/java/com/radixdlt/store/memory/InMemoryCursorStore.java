@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.memory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.radixdlt.common.EUID;
+import com.radixdlt.store.CursorStore;
+
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link CursorStore} held entirely in memory.
+ */
+@Singleton
+public final class InMemoryCursorStore implements CursorStore {
+	private final Map<EUID, Long> cursors = new ConcurrentHashMap<>();
+
+	@Inject
+	public InMemoryCursorStore() {
+		// nothing to open
+	}
+
+	@Override
+	public void put(EUID nid, long cursor) {
+		this.cursors.put(nid, cursor);
+	}
+
+	@Override
+	public OptionalLong get(EUID nid) {
+		Long cursor = this.cursors.get(nid);
+		return cursor == null ? OptionalLong.empty() : OptionalLong.of(cursor);
+	}
+
+	@Override
+	public void reset() {
+		this.cursors.clear();
+	}
+
+	@Override
+	public void close() {
+		// nothing to close
+	}
+}
@@ -0,0 +1,578 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.memory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.radixdlt.common.AID;
+import com.radixdlt.consensus.tempo.TempoException;
+import com.radixdlt.store.IndexScanner;
+import com.radixdlt.store.IndexedLedgerEntry;
+import com.radixdlt.store.LedgerEntry;
+import com.radixdlt.store.LedgerEntryConflict;
+import com.radixdlt.store.LedgerEntryClockView;
+import com.radixdlt.store.LedgerEntryStatus;
+import com.radixdlt.store.LedgerEntryStore;
+import com.radixdlt.store.LedgerEntryStoreResult;
+import com.radixdlt.store.LedgerSearchMode;
+import com.radixdlt.store.SearchCursor;
+import com.radixdlt.store.StoreIndex;
+import com.radixdlt.store.StoreIndex.LedgerIndexType;
+import com.radixdlt.store.berkeley.LedgerEntryIndices;
+import com.radixdlt.utils.Longs;
+import org.radix.logging.Logger;
+import org.radix.logging.Logging;
+import org.radix.shards.ShardRange;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.radixdlt.store.berkeley.LedgerEntryIndices.ENTRY_INDEX_PREFIX;
+import static com.radixdlt.store.berkeley.LedgerEntryIndices.SHARD_INDEX_PREFIX;
+
+/**
+ * A {@link LedgerEntryStore} held entirely in memory, for benchmarks and tests that should not depend on disk.
+ * Indices are kept in the same layout as in the Berkeley store, so that unique index conflicts,
+ * search cursors and scanners behave the same. Writes are serialised, reads never block.
+ */
+@Singleton
+public final class InMemoryLedgerEntryStore implements LedgerEntryStore {
+	private static final Logger log = Logging.getLogger("store.atoms");
+
+	private static final Comparator<byte[]> KEY_COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+	private final Object writeLock = new Object();
+	private long pendingLogicalClock;
+	private long committedLogicalClock;
+	// logical clock up to which all entries are fully stored, including their indices
+	private volatile long stableLogicalClock;
+
+	private final Map<AID, StoredEntry> entries = new ConcurrentHashMap<>(); // entries by AID
+	private final ConcurrentNavigableMap<byte[], NavigableSet<byte[]>> uniqueIndices = new ConcurrentSkipListMap<>(KEY_COMPARATOR);
+	private final ConcurrentNavigableMap<byte[], NavigableSet<byte[]>> duplicateIndices = new ConcurrentSkipListMap<>(KEY_COMPARATOR);
+	private final Set<AID> pending = ConcurrentHashMap.newKeySet(); // AIDs marked as 'pending'
+	private final ConcurrentNavigableMap<Long, AID> committed = new ConcurrentSkipListMap<>(); // AIDs by committed logical clock
+
+	@Inject
+	public InMemoryLedgerEntryStore() {
+		// nothing to open
+	}
+
+	@Override
+	public void reset() {
+		synchronized (this.writeLock) {
+			this.entries.clear();
+			this.uniqueIndices.clear();
+			this.duplicateIndices.clear();
+			this.pending.clear();
+			this.committed.clear();
+			this.pendingLogicalClock = 0L;
+			this.stableLogicalClock = 0L;
+			this.committedLogicalClock = 0L;
+		}
+	}
+
+	@Override
+	public void close() {
+		// nothing to close
+	}
+
+	private void fail(String message) {
+		log.error(message);
+		throw new TempoException(message);
+	}
+
+	@Override
+	public boolean contains(AID aid) {
+		return this.entries.containsKey(aid);
+	}
+
+	@Override
+	public LedgerEntryStatus getStatus(AID aid) {
+		if (!contains(aid)) {
+			return LedgerEntryStatus.UNAVAILABLE;
+		}
+
+		if (this.pending.contains(aid)) {
+			return LedgerEntryStatus.PENDING;
+		} else {
+			return LedgerEntryStatus.COMMITTED;
+		}
+	}
+
+	@Override
+	public Set<AID> getPending() {
+		return ImmutableSet.copyOf(this.pending);
+	}
+
+	@Override
+	public Optional<LedgerEntry> get(AID aid) {
+		return Optional.ofNullable(this.entries.get(aid)).map(StoredEntry::getLedgerEntry);
+	}
+
+	@Override
+	public ImmutableMap<AID, LedgerEntry> getAll(Collection<AID> aids) {
+		ImmutableMap.Builder<AID, LedgerEntry> ledgerEntries = ImmutableMap.builder();
+		for (AID aid : ImmutableSet.copyOf(aids)) {
+			StoredEntry storedEntry = this.entries.get(aid);
+			if (storedEntry != null) {
+				ledgerEntries.put(aid, storedEntry.getLedgerEntry());
+			}
+		}
+		return ledgerEntries.build();
+	}
+
+	@Override
+	public Set<StoreIndex> getUniqueIndices(AID aid) {
+		StoredEntry storedEntry = this.entries.get(aid);
+		if (storedEntry == null) {
+			fail("Getting indices of atom '" + aid + "' failed, atom not found");
+		}
+		return storedEntry.getUniqueIndices();
+	}
+
+	@Override
+	public void commit(AID aid) {
+		commitBatch(ImmutableList.of(aid));
+	}
+
+	@Override
+	public void commitBatch(Collection<AID> aids) {
+		if (aids.isEmpty()) {
+			return;
+		}
+
+		synchronized (this.writeLock) {
+			// check all atoms up front so that either all of them are committed or none of them are
+			Set<AID> committing = new HashSet<>();
+			for (AID aid : aids) {
+				if (!this.pending.contains(aid) || !committing.add(aid)) {
+					fail("Commit of pending atoms " + aids + " failed, atom '" + aid + "' is not pending");
+				}
+			}
+
+			for (AID aid : aids) {
+				this.committed.put(++this.committedLogicalClock, aid);
+				this.pending.remove(aid);
+			}
+		}
+	}
+
+	@Override
+	public LedgerEntryStoreResult store(LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices, Set<Long> shards) {
+		IndexedLedgerEntry indexedEntry = withInternalIndices(IndexedLedgerEntry.of(ledgerEntry, uniqueIndices, duplicateIndices, shards));
+		synchronized (this.writeLock) {
+			return doStorePending(indexedEntry, ImmutableSet.of());
+		}
+	}
+
+	@Override
+	public ImmutableList<LedgerEntryStoreResult> storeBatch(List<IndexedLedgerEntry> ledgerEntries) {
+		if (ledgerEntries.isEmpty()) {
+			return ImmutableList.of();
+		}
+
+		// validate the whole batch before storing any of it
+		List<IndexedLedgerEntry> indexedEntries = ledgerEntries.stream()
+			.map(InMemoryLedgerEntryStore::withInternalIndices)
+			.collect(Collectors.toList());
+		synchronized (this.writeLock) {
+			ImmutableList.Builder<LedgerEntryStoreResult> results = ImmutableList.builder();
+			for (IndexedLedgerEntry indexedEntry : indexedEntries) {
+				results.add(doStorePending(indexedEntry, ImmutableSet.of()));
+			}
+			return results.build();
+		}
+	}
+
+	@Override
+	public LedgerEntryStoreResult replace(Set<AID> aids, LedgerEntry ledgerEntry, Set<StoreIndex> uniqueIndices, Set<StoreIndex> duplicateIndices, Set<Long> shards) {
+		IndexedLedgerEntry indexedEntry = withInternalIndices(IndexedLedgerEntry.of(ledgerEntry, uniqueIndices, duplicateIndices, shards));
+		synchronized (this.writeLock) {
+			for (AID aid : aids) {
+				if (!this.pending.contains(aid)) {
+					fail("Attempted to delete committed atom '" + aid + "'");
+				}
+			}
+			return doStorePending(indexedEntry, aids);
+		}
+	}
+
+	private LedgerEntryStoreResult doStorePending(IndexedLedgerEntry indexedEntry, Set<AID> replacedAids) {
+		LedgerEntry ledgerEntry = indexedEntry.getLedgerEntry();
+		AID aid = ledgerEntry.getAID();
+
+		ImmutableMap<StoreIndex, LedgerEntry> conflictingEntries = doGetConflictingEntries(indexedEntry.getUniqueIndices());
+		// replaced entries are deleted before the new entry is stored, so they cannot be in conflict with it
+		if (conflictingEntries.values().stream().anyMatch(conflicting -> !replacedAids.contains(conflicting.getAID()))) {
+			log.error("Unique indices of ledgerEntry '" + aid + "' are in conflict, not storing");
+			return LedgerEntryStoreResult.conflict(new LedgerEntryConflict(ledgerEntry, conflictingEntries));
+		}
+
+		replacedAids.forEach(this::doDelete);
+
+		byte[] primary = toPrimary(++this.pendingLogicalClock, aid);
+		StoredEntry storedEntry = new StoredEntry(ledgerEntry, primary, indexedEntry.getUniqueIndices(), indexedEntry.getDuplicateIndices());
+		// make the entry visible before its indices so that anything found through an index can be read
+		this.pending.add(aid);
+		this.entries.put(aid, storedEntry);
+		storedEntry.getUniqueIndices().forEach(index -> addIndex(this.uniqueIndices, index, primary));
+		storedEntry.getDuplicateIndices().forEach(index -> addIndex(this.duplicateIndices, index, primary));
+		this.stableLogicalClock = this.pendingLogicalClock;
+		return LedgerEntryStoreResult.success();
+	}
+
+	private void doDelete(AID aid) {
+		StoredEntry storedEntry = this.entries.get(aid);
+		storedEntry.getUniqueIndices().forEach(index -> removeIndex(this.uniqueIndices, index, storedEntry.getPrimary()));
+		storedEntry.getDuplicateIndices().forEach(index -> removeIndex(this.duplicateIndices, index, storedEntry.getPrimary()));
+		this.entries.remove(aid);
+		this.pending.remove(aid);
+	}
+
+	private ImmutableMap<StoreIndex, LedgerEntry> doGetConflictingEntries(Set<StoreIndex> uniqueIndices) {
+		ImmutableMap.Builder<StoreIndex, LedgerEntry> conflictingEntries = ImmutableMap.builder();
+		for (StoreIndex uniqueIndex : uniqueIndices) {
+			byte[] primary = first(this.uniqueIndices.get(uniqueIndex.asKey()));
+			if (primary != null) {
+				conflictingEntries.put(uniqueIndex, this.entries.get(toAid(primary)).getLedgerEntry());
+			}
+		}
+		return conflictingEntries.build();
+	}
+
+	/**
+	 * Adds the internal entry and shard indices the Berkeley store adds, rejecting application indices using their prefixes.
+	 */
+	private static IndexedLedgerEntry withInternalIndices(IndexedLedgerEntry indexedEntry) {
+		List<StoreIndex> offendingIndices = Stream.concat(indexedEntry.getUniqueIndices().stream(), indexedEntry.getDuplicateIndices().stream())
+			.filter(index -> index.getPrefix() == ENTRY_INDEX_PREFIX || index.getPrefix() == SHARD_INDEX_PREFIX)
+			.collect(Collectors.toList());
+		if (!offendingIndices.isEmpty()) {
+			throw new TempoException(String.format(
+				"Prefixes %s and %s are reserved for internal use but are used by %s",
+				ENTRY_INDEX_PREFIX, SHARD_INDEX_PREFIX, offendingIndices));
+		}
+
+		LedgerEntry ledgerEntry = indexedEntry.getLedgerEntry();
+		ImmutableSet<StoreIndex> uniqueIndices = ImmutableSet.<StoreIndex>builder()
+			.addAll(indexedEntry.getUniqueIndices())
+			.add(new StoreIndex(ENTRY_INDEX_PREFIX, ledgerEntry.getAID().getBytes()))
+			.build();
+		ImmutableSet.Builder<StoreIndex> duplicateIndices = ImmutableSet.<StoreIndex>builder()
+			.addAll(indexedEntry.getDuplicateIndices());
+		for (long shard : indexedEntry.getShards()) {
+			duplicateIndices.add(new StoreIndex(SHARD_INDEX_PREFIX, LedgerEntryIndices.toShardIdentifier(shard)));
+		}
+		return IndexedLedgerEntry.of(ledgerEntry, uniqueIndices, duplicateIndices.build(), indexedEntry.getShards());
+	}
+
+	private static void addIndex(ConcurrentNavigableMap<byte[], NavigableSet<byte[]>> indices, StoreIndex index, byte[] primary) {
+		indices.computeIfAbsent(index.asKey(), key -> new ConcurrentSkipListSet<>(KEY_COMPARATOR)).add(primary);
+	}
+
+	private static void removeIndex(ConcurrentNavigableMap<byte[], NavigableSet<byte[]>> indices, StoreIndex index, byte[] primary) {
+		byte[] key = index.asKey();
+		NavigableSet<byte[]> primaries = indices.get(key);
+		if (primaries != null) {
+			primaries.remove(primary);
+			if (primaries.isEmpty()) {
+				indices.remove(key, primaries);
+			}
+		}
+	}
+
+	@Override
+	public ImmutableList<AID> getNextCommitted(long logicalClock, int limit) {
+		return this.committed.tailMap(logicalClock, false).values().stream()
+			.limit(limit)
+			.collect(ImmutableList.toImmutableList());
+	}
+
+	@Override
+	public SearchCursor search(LedgerIndexType type, StoreIndex index, LedgerSearchMode mode) {
+		Objects.requireNonNull(type, "type is required");
+		Objects.requireNonNull(index, "index is required");
+		Objects.requireNonNull(mode, "mode is required");
+		ConcurrentNavigableMap<byte[], NavigableSet<byte[]>> indices = toIndices(type);
+		if (mode == LedgerSearchMode.EXACT) {
+			byte[] key = index.asKey();
+			byte[] primary = first(indices.get(key));
+			if (primary != null) {
+				return new InMemorySearchCursor(this, type, primary, key);
+			}
+		} else if (mode == LedgerSearchMode.RANGE) {
+			// indices may be empty for a moment while their last entry is removed
+			for (Map.Entry<byte[], NavigableSet<byte[]>> entry : indices.tailMap(index.asKey(), true).entrySet()) {
+				byte[] primary = first(entry.getValue());
+				if (primary != null) {
+					return new InMemorySearchCursor(this, type, primary, entry.getKey());
+				}
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public boolean contains(LedgerIndexType type, StoreIndex index, LedgerSearchMode mode) {
+		return search(type, index, mode) != null;
+	}
+
+	@Override
+	public IndexScanner scan(LedgerIndexType type, StoreIndex index) {
+		return scan(type, index, Long.MAX_VALUE);
+	}
+
+	private IndexScanner scan(LedgerIndexType type, StoreIndex index, long maxLogicalClock) {
+		Objects.requireNonNull(type, "type is required");
+		Objects.requireNonNull(index, "index is required");
+		return new InMemoryIndexScanner(this, type, index.asKey(), index.asKey(), maxLogicalClock);
+	}
+
+	@Override
+	public IndexScanner scanShards(ShardRange range) {
+		return scanShards(range, Long.MAX_VALUE);
+	}
+
+	private IndexScanner scanShards(ShardRange range, long maxLogicalClock) {
+		Objects.requireNonNull(range, "range is required");
+		byte[] from = StoreIndex.from(SHARD_INDEX_PREFIX, LedgerEntryIndices.toShardIdentifier(range.getLow()));
+		byte[] to = StoreIndex.from(SHARD_INDEX_PREFIX, LedgerEntryIndices.toShardIdentifier(range.getHigh()));
+		return new InMemoryIndexScanner(this, LedgerIndexType.DUPLICATE, from, to, maxLogicalClock);
+	}
+
+	@Override
+	public LedgerEntryClockView clockView() {
+		return new InMemoryClockView(this.stableLogicalClock);
+	}
+
+	@Override
+	public LedgerEntryClockView clockViewAt(long logicalClock) {
+		long stableLogicalClock = this.stableLogicalClock;
+		if (logicalClock < 0 || logicalClock > stableLogicalClock) {
+			throw new IllegalArgumentException("Cannot take a view at logical clock " + logicalClock
+				+ ", entries are fully stored up to " + stableLogicalClock);
+		}
+		return new InMemoryClockView(logicalClock);
+	}
+
+	/**
+	 * Reads up to limit entries with an index within the given (inclusive) index range.
+	 * Entries are read in order of index and primary key, continuing after the given index and primary key if any.
+	 * Entries stored after the given logical clock are skipped.
+	 */
+	<T> ImmutableList<T> scan(
+		LedgerIndexType type,
+		byte[] fromIndex,
+		byte[] toIndex,
+		byte[] afterIndex,
+		byte[] afterPrimary,
+		long maxLogicalClock,
+		int limit,
+		boolean readEntries,
+		InMemoryIndexScanner.EntryMapper<T> mapper
+	) {
+		ConcurrentNavigableMap<byte[], NavigableSet<byte[]>> range = toIndices(type)
+			.subMap(afterIndex == null ? fromIndex : afterIndex, true, toIndex, true);
+		ImmutableList.Builder<T> results = ImmutableList.builder();
+		int size = 0;
+		for (Map.Entry<byte[], NavigableSet<byte[]>> entry : range.entrySet()) {
+			NavigableSet<byte[]> primaries = entry.getValue();
+			if (afterIndex != null && Arrays.equals(afterIndex, entry.getKey())) {
+				primaries = primaries.tailSet(afterPrimary, false);
+			}
+
+			for (byte[] primary : primaries) {
+				if (size >= limit) {
+					return results.build();
+				}
+				if (toLogicalClock(primary) > maxLogicalClock) {
+					continue;
+				}
+
+				LedgerEntry ledgerEntry = null;
+				if (readEntries) {
+					StoredEntry storedEntry = this.entries.get(toAid(primary));
+					if (storedEntry == null) {
+						// deleted after its index was read
+						continue;
+					}
+					ledgerEntry = storedEntry.getLedgerEntry();
+				}
+				results.add(mapper.map(entry.getKey(), primary, ledgerEntry));
+				size++;
+			}
+		}
+		return results.build();
+	}
+
+	InMemorySearchCursor getNext(InMemorySearchCursor cursor) {
+		return move(cursor, primaries -> primaries.higher(cursor.getPrimary()));
+	}
+
+	InMemorySearchCursor getPrev(InMemorySearchCursor cursor) {
+		return move(cursor, primaries -> primaries.lower(cursor.getPrimary()));
+	}
+
+	InMemorySearchCursor getFirst(InMemorySearchCursor cursor) {
+		return move(cursor, InMemoryLedgerEntryStore::first);
+	}
+
+	InMemorySearchCursor getLast(InMemorySearchCursor cursor) {
+		return move(cursor, InMemoryLedgerEntryStore::last);
+	}
+
+	private InMemorySearchCursor move(InMemorySearchCursor cursor, Function<NavigableSet<byte[]>, byte[]> navigation) {
+		NavigableSet<byte[]> primaries = toIndices(cursor.getType()).get(cursor.getIndex());
+		if (primaries == null) {
+			return null;
+		}
+
+		byte[] primary = navigation.apply(primaries);
+		if (primary == null) {
+			return null;
+		}
+		return new InMemorySearchCursor(this, cursor.getType(), primary, cursor.getIndex());
+	}
+
+	private ConcurrentNavigableMap<byte[], NavigableSet<byte[]>> toIndices(LedgerIndexType type) {
+		Objects.requireNonNull(type, "type is required");
+		if (type.equals(LedgerIndexType.UNIQUE)) {
+			return this.uniqueIndices;
+		} else if (type.equals(LedgerIndexType.DUPLICATE)) {
+			return this.duplicateIndices;
+		} else {
+			throw new IllegalStateException("Cursor type " + type + " not supported");
+		}
+	}
+
+	// first and last without throwing if the primaries were emptied concurrently
+	private static byte[] first(NavigableSet<byte[]> primaries) {
+		if (primaries == null) {
+			return null;
+		}
+		Iterator<byte[]> iterator = primaries.iterator();
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+
+	private static byte[] last(NavigableSet<byte[]> primaries) {
+		if (primaries == null) {
+			return null;
+		}
+		Iterator<byte[]> iterator = primaries.descendingIterator();
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+
+	static AID toAid(byte[] primary) {
+		return AID.from(primary, Long.BYTES); // LC
+	}
+
+	private static long toLogicalClock(byte[] primary) {
+		return Longs.fromByteArray(primary, 0);
+	}
+
+	private static byte[] toPrimary(long logicalClock, AID aid) {
+		byte[] primary = new byte[Long.BYTES + AID.BYTES];
+		Longs.copyTo(logicalClock, primary, 0);
+		System.arraycopy(aid.getBytes(), 0, primary, Long.BYTES, AID.BYTES);
+		return primary;
+	}
+
+	/**
+	 * A view bounding lookups and scans of this store by the logical clock in the primary keys.
+	 */
+	private final class InMemoryClockView implements LedgerEntryClockView {
+		private final long logicalClock;
+
+		private InMemoryClockView(long logicalClock) {
+			this.logicalClock = logicalClock;
+		}
+
+		@Override
+		public long getLogicalClock() {
+			return this.logicalClock;
+		}
+
+		@Override
+		public boolean contains(AID aid) {
+			StoredEntry storedEntry = entries.get(aid);
+			return storedEntry != null && toLogicalClock(storedEntry.getPrimary()) <= this.logicalClock;
+		}
+
+		@Override
+		public IndexScanner scan(LedgerIndexType type, StoreIndex index) {
+			return InMemoryLedgerEntryStore.this.scan(type, index, this.logicalClock);
+		}
+
+		@Override
+		public IndexScanner scanShards(ShardRange range) {
+			return InMemoryLedgerEntryStore.this.scanShards(range, this.logicalClock);
+		}
+	}
+
+	private static final class StoredEntry {
+		private final LedgerEntry ledgerEntry;
+		private final byte[] primary; // logical clock + AID bytes, ordered like primary keys in the Berkeley store
+		private final ImmutableSet<StoreIndex> uniqueIndices;
+		private final ImmutableSet<StoreIndex> duplicateIndices;
+
+		private StoredEntry(LedgerEntry ledgerEntry, byte[] primary, ImmutableSet<StoreIndex> uniqueIndices, ImmutableSet<StoreIndex> duplicateIndices) {
+			this.ledgerEntry = ledgerEntry;
+			this.primary = primary;
+			this.uniqueIndices = uniqueIndices;
+			this.duplicateIndices = duplicateIndices;
+		}
+
+		private LedgerEntry getLedgerEntry() {
+			return this.ledgerEntry;
+		}
+
+		private byte[] getPrimary() {
+			return this.primary;
+		}
+
+		private ImmutableSet<StoreIndex> getUniqueIndices() {
+			return this.uniqueIndices;
+		}
+
+		private ImmutableSet<StoreIndex> getDuplicateIndices() {
+			return this.duplicateIndices;
+		}
+	}
+}
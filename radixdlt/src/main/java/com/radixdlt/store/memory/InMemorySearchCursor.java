@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.memory;
+
+import com.radixdlt.common.AID;
+import com.radixdlt.store.SearchCursor;
+import com.radixdlt.store.StoreIndex;
+
+import java.util.Objects;
+
+/**
+ * An in-memory implementation of a {@link SearchCursor}
+ */
+public class InMemorySearchCursor implements SearchCursor {
+	private final StoreIndex.LedgerIndexType type;
+	private final byte[] primary;
+	private final byte[] index;
+	private final InMemoryLedgerEntryStore store;
+
+	// primary and index are owned by the store and never modified, so they are not copied
+	InMemorySearchCursor(InMemoryLedgerEntryStore store, StoreIndex.LedgerIndexType type, byte[] primary, byte[] index) {
+		this.type = type;
+		this.primary = Objects.requireNonNull(primary);
+		this.index = Objects.requireNonNull(index);
+		this.store = store;
+	}
+
+	@Override
+	public StoreIndex.LedgerIndexType getType() {
+		return this.type;
+	}
+
+	byte[] getPrimary() {
+		return this.primary;
+	}
+
+	byte[] getIndex() {
+		return this.index;
+	}
+
+	@Override
+	public AID get() {
+		return InMemoryLedgerEntryStore.toAid(this.primary);
+	}
+
+	@Override
+	public SearchCursor next() {
+		return this.store.getNext(this);
+	}
+
+	@Override
+	public SearchCursor previous() {
+		return this.store.getPrev(this);
+	}
+
+	@Override
+	public SearchCursor first() {
+		return this.store.getFirst(this);
+	}
+
+	@Override
+	public SearchCursor last() {
+		return this.store.getLast(this);
+	}
+}
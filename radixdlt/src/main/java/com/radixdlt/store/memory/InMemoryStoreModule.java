@@ -0,0 +1,35 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.memory;
+
+import com.google.inject.AbstractModule;
+import com.radixdlt.store.CursorStore;
+import com.radixdlt.store.LedgerEntryStore;
+import com.radixdlt.store.LedgerEntryStoreView;
+
+/**
+ * Binds the in-memory stores in place of the Berkeley stores, for benchmarks and in-process simulations.
+ */
+public class InMemoryStoreModule extends AbstractModule {
+	@Override
+	protected void configure() {
+		bind(LedgerEntryStore.class).to(InMemoryLedgerEntryStore.class);
+		bind(LedgerEntryStoreView.class).to(InMemoryLedgerEntryStore.class);
+		bind(CursorStore.class).to(InMemoryCursorStore.class);
+	}
+}
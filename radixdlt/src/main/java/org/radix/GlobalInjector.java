@@ -29,6 +29,7 @@ import com.radixdlt.discovery.IterativeDiscovererModule;
 import com.radixdlt.middleware2.MiddlewareModule;
 import com.radixdlt.serialization.Serialization;
 import com.radixdlt.store.berkeley.BerkeleyStoreModule;
+import com.radixdlt.store.memory.InMemoryStoreModule;
 import com.radixdlt.universe.Universe;
 import org.radix.database.DatabaseEnvironment;
 import org.radix.events.Events;
@@ -47,7 +48,9 @@ public class GlobalInjector {
 	public GlobalInjector(RuntimeProperties properties, DatabaseEnvironment dbEnv, LocalSystem localSystem, Universe universe) {
 		Module lazyRequestDelivererModule = new LazyRequestDelivererModule(properties);
 		Module iterativeDiscovererModule = new IterativeDiscovererModule(properties);
-		Module berkeleyStoreModule = new BerkeleyStoreModule();
+		Module storeModule = "memory".equals(properties.get("db.store", "berkeley"))
+			? new InMemoryStoreModule()
+			: new BerkeleyStoreModule(properties);
 		Module tempoModule = new TempoModule();
 		Module middlewareModule = new MiddlewareModule();
 		Module messageCentralModule = new MessageCentralModule(properties);
@@ -73,7 +76,7 @@ public class GlobalInjector {
 		injector = Guice.createInjector(
 				lazyRequestDelivererModule,
 				iterativeDiscovererModule,
-				berkeleyStoreModule,
+				storeModule,
 				tempoModule,
 				middlewareModule,
 				messageCentralModule,
@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package org.radix;
+
+import com.radixdlt.common.EUID;
+import com.radixdlt.serialization.Serialization;
+import com.radixdlt.store.berkeley.BerkeleyLedgerEntryStore;
+import com.radixdlt.store.berkeley.BerkeleyLedgerEntryStoreConfiguration;
+import org.json.JSONObject;
+import org.radix.database.DatabaseEnvironment;
+import org.radix.properties.RuntimeProperties;
+import org.radix.utils.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Exports the committed ledger of a node to a snapshot file, or imports a snapshot file into an empty ledger.
+ * <br><br>
+ * Useful for bootstrapping new nodes without syncing the whole ledger from peers.
+ * The database is selected with the usual runtime properties, such as {@code db.location}, so the node must be stopped.
+ * <br><br>
+ * Usage:  	export &lt;snapshot file&gt; [options]<br>
+ * 			import &lt;snapshot file&gt; [options]
+ */
+public final class LedgerSnapshotTool
+{
+	private static final int DEFAULT_IMPORT_BATCH_SIZE = 10_000;
+
+	private LedgerSnapshotTool() {
+		throw new IllegalStateException("Cannot instantiate.");
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args == null || args.length < 2)
+			throw new IllegalArgumentException("Usage: export|import <snapshot file> [options]");
+
+		String command = args[0];
+		File snapshotFile = new File(args[1]);
+		RuntimeProperties properties = loadProperties(args);
+
+		DatabaseEnvironment dbEnv = new DatabaseEnvironment(properties);
+		try {
+			BerkeleyLedgerEntryStore store = new BerkeleyLedgerEntryStore(
+				EUID.ZERO,
+				Serialization.getDefault(),
+				dbEnv,
+				BerkeleyLedgerEntryStoreConfiguration.fromRuntimeProperties(properties)
+			);
+			try {
+				if ("export".equals(command)) {
+					try (OutputStream output = new BufferedOutputStream(new FileOutputStream(snapshotFile))) {
+						long exported = store.exportSnapshot(output);
+						System.out.println("Exported " + exported + " atoms to " + snapshotFile);
+					}
+				} else if ("import".equals(command)) {
+					if (!snapshotFile.exists())
+						throw new FileNotFoundException("Snapshot file " + snapshotFile + " not found");
+
+					int batchSize = properties.get("snapshot.import.batch_size", DEFAULT_IMPORT_BATCH_SIZE);
+					try (InputStream input = new BufferedInputStream(new FileInputStream(snapshotFile))) {
+						long imported = store.importSnapshot(input, batchSize);
+						System.out.println("Imported " + imported + " atoms from " + snapshotFile);
+					}
+				} else {
+					throw new IllegalArgumentException("Unknown command " + command + ", expected export or import");
+				}
+			} finally {
+				store.close();
+			}
+		} finally {
+			dbEnv.stop();
+		}
+	}
+
+	private static RuntimeProperties loadProperties(String[] arguments) throws IOException {
+		try {
+			JSONObject runtimeConfigurationJSON = new JSONObject();
+			if (Radix.class.getResourceAsStream("/runtime_options.json") != null)
+				runtimeConfigurationJSON = new JSONObject(IOUtils.toString(Radix.class.getResourceAsStream("/runtime_options.json")));
+
+			return new RuntimeProperties(runtimeConfigurationJSON, arguments);
+		} catch (Exception ex) {
+			throw new IOException("while loading runtime properties", ex);
+		}
+	}
+}
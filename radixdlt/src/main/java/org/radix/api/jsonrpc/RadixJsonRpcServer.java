@@ -19,9 +19,8 @@ package org.radix.api.jsonrpc;
 
 import com.google.common.io.CharStreams;
 import com.radixdlt.atomos.RadixAddress;
-import com.radixdlt.store.SearchCursor;
+import com.radixdlt.store.IndexScanner;
 import com.radixdlt.store.StoreIndex;
-import com.radixdlt.store.LedgerSearchMode;
 import com.radixdlt.middleware2.store.EngineAtomIndices;
 import com.radixdlt.engine.AtomStatus;
 import com.radixdlt.common.AID;
@@ -53,6 +52,7 @@ import java.util.stream.Collectors;
  */
 public final class RadixJsonRpcServer {
 	private static final long DEFAULT_MAX_REQUEST_SIZE = 1024L * 1024L;
+	private static final int SCAN_BATCH_SIZE = 256;
 
 	/**
 	 * Maximum request size in bytes
@@ -189,10 +189,9 @@ public final class RadixJsonRpcServer {
 
 						StoreIndex index = new StoreIndex(EngineAtomIndices.IndexType.DESTINATION.getValue(), address.getUID().toByteArray());
 						List<AID> collectedAids = new ArrayList<>();
-						SearchCursor cursor = ledger.search(StoreIndex.LedgerIndexType.DUPLICATE, index, LedgerSearchMode.EXACT);
-						while (cursor != null) {
-							collectedAids.add(cursor.get());
-							cursor = cursor.next();
+						IndexScanner scanner = ledger.scan(StoreIndex.LedgerIndexType.DUPLICATE, index);
+						while (!scanner.isExhausted()) {
+							collectedAids.addAll(scanner.nextAids(SCAN_BATCH_SIZE));
 						}
 						result = collectedAids;
 					}
@@ -21,9 +21,8 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.radixdlt.common.AID;
 import com.radixdlt.common.Atom;
-import com.radixdlt.store.SearchCursor;
+import com.radixdlt.store.IndexScanner;
 import com.radixdlt.store.StoreIndex;
-import com.radixdlt.store.LedgerSearchMode;
 import com.radixdlt.middleware2.converters.AtomToBinaryConverter;
 import com.radixdlt.middleware2.store.EngineAtomIndices;
 
@@ -38,7 +37,6 @@ import org.radix.logging.Logging;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -66,6 +64,10 @@ public class AtomEventObserver {
 	private boolean synced = false;
 	private final List<AtomEventDto> waitingQueue = Lists.newArrayList();
 
+	// sync state, kept across throttled continuations of sync
+	private IndexScanner scanner;
+	private final Set<AID> processedAids = Sets.newHashSet();
+
 	public AtomEventObserver(
 		AtomQuery atomQuery,
 		Consumer<ObservedAtomEvents> onNext,
@@ -125,10 +127,11 @@ public class AtomEventObserver {
 
 		try {
 			long count = 0;
-			StoreIndex destinationIndex = new StoreIndex(EngineAtomIndices.IndexType.DESTINATION.getValue(), atomQuery.getDestination().toByteArray());
-			SearchCursor cursor = store.search(StoreIndex.LedgerIndexType.DUPLICATE, destinationIndex, LedgerSearchMode.EXACT);
-			Set<AID> processedAids = Sets.newHashSet();
-			while (cursor != null) {
+			if (this.scanner == null) {
+				StoreIndex destinationIndex = new StoreIndex(EngineAtomIndices.IndexType.DESTINATION.getValue(), atomQuery.getDestination().toByteArray());
+				this.scanner = store.scan(StoreIndex.LedgerIndexType.DUPLICATE, destinationIndex);
+			}
+			while (!scanner.isExhausted()) {
 				if (count >= 200) {
 					synchronized(this) {
 						this.currentRunnable = currentRunnable.thenRunAsync(() -> {
@@ -147,17 +150,9 @@ public class AtomEventObserver {
 				}
 
 				List<Atom> atoms = new ArrayList<>();
-				while (cursor != null && atoms.size() < BATCH_SIZE) {
-					AID aid = cursor.get();
-					processedAids.add(aid);
-					Optional<LedgerEntry> ledgerEntry = store.get(aid);
-					ledgerEntry.ifPresent(
-						entry -> {
-							Atom atom = atomToBinaryConverter.toAtom(entry.getContent());
-							atoms.add(atom);
-						}
-					);
-					cursor = cursor.next();
+				for (LedgerEntry ledgerEntry : scanner.nextEntries(BATCH_SIZE)) {
+					processedAids.add(ledgerEntry.getAID());
+					atoms.add(atomToBinaryConverter.toAtom(ledgerEntry.getContent()));
 				}
 				if (!atoms.isEmpty()) {
 					final Stream<AtomEventDto> atomEvents = atoms.stream()
@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package org.radix.database;
+
+import org.radix.properties.RuntimeProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the log of an environment is checkpointed and cleaned.
+ * Checkpoints are due once enough log bytes were written since the last checkpoint, once log files
+ * were cleaned, or once a maximum interval has passed with anything written, but are never taken
+ * more often than a minimum interval. Log files are cleaned while the log utilization is below a threshold.
+ */
+final class CheckpointPolicy {
+	private final long checkpointBytes;
+	private final long checkpointMinIntervalMs;
+	private final long checkpointMaxIntervalMs;
+	private final int cleanerMinUtilization;
+	private final int cleanerMaxFilesPerRound;
+
+	CheckpointPolicy(
+		long checkpointBytes,
+		long checkpointMinIntervalMs,
+		long checkpointMaxIntervalMs,
+		int cleanerMinUtilization,
+		int cleanerMaxFilesPerRound
+	) {
+		if (checkpointBytes < 1) {
+			throw new IllegalArgumentException("Checkpoint bytes must be positive: " + checkpointBytes);
+		}
+		if (checkpointMinIntervalMs < 0 || checkpointMaxIntervalMs < checkpointMinIntervalMs) {
+			throw new IllegalArgumentException("Checkpoint intervals must satisfy 0 <= min <= max: "
+				+ checkpointMinIntervalMs + ", " + checkpointMaxIntervalMs);
+		}
+		if (cleanerMaxFilesPerRound < 0) {
+			throw new IllegalArgumentException("Cleaner files per round must not be negative: " + cleanerMaxFilesPerRound);
+		}
+
+		this.checkpointBytes = checkpointBytes;
+		this.checkpointMinIntervalMs = checkpointMinIntervalMs;
+		this.checkpointMaxIntervalMs = checkpointMaxIntervalMs;
+		this.cleanerMinUtilization = cleanerMinUtilization;
+		this.cleanerMaxFilesPerRound = cleanerMaxFilesPerRound;
+	}
+
+	static CheckpointPolicy fromRuntimeProperties(RuntimeProperties properties, long logFileMax) {
+		return new CheckpointPolicy(
+			properties.get("db.checkpoint.bytes", 2 * logFileMax),
+			properties.get("db.checkpoint.min_interval", TimeUnit.SECONDS.toMillis(30)),
+			properties.get("db.checkpoint.max_interval", TimeUnit.MINUTES.toMillis(10)),
+			properties.get("db.cleaner.min_utilization", 50),
+			properties.get("db.cleaner.max_files_per_round", 4)
+		);
+	}
+
+	/**
+	 * Checks whether log files should be cleaned at a log utilization.
+	 *
+	 * @param utilization The log utilization in percent, negative if not known yet
+	 */
+	boolean isCleaningDue(int utilization) {
+		return utilization >= 0 && utilization < this.cleanerMinUtilization;
+	}
+
+	int getCleanerMaxFilesPerRound() {
+		return this.cleanerMaxFilesPerRound;
+	}
+
+	/**
+	 * Checks whether a checkpoint should be taken now.
+	 *
+	 * @param bytesSinceCheckpoint The number of log bytes written since the last checkpoint
+	 * @param msSinceCheckpoint The time passed since the last checkpoint
+	 * @param cleanedFiles The number of log files cleaned since the last checkpoint, which are only deleted after a checkpoint
+	 */
+	boolean isCheckpointDue(long bytesSinceCheckpoint, long msSinceCheckpoint, int cleanedFiles) {
+		if (msSinceCheckpoint < this.checkpointMinIntervalMs) {
+			return false;
+		}
+		return bytesSinceCheckpoint >= this.checkpointBytes
+			|| cleanedFiles > 0
+			|| (bytesSinceCheckpoint > 0 && msSinceCheckpoint >= this.checkpointMaxIntervalMs);
+	}
+}
@@ -27,22 +27,35 @@ import com.sleepycat.je.DatabaseEntry;
 import com.sleepycat.je.Durability;
 import com.sleepycat.je.Environment;
 import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.EnvironmentStats;
 import com.sleepycat.je.LockMode;
 import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.StatsConfig;
 import com.sleepycat.je.Transaction;
+import com.sleepycat.je.TransactionConfig;
 import org.bouncycastle.util.Arrays;
 import org.radix.logging.Logger;
 import org.radix.logging.Logging;
 import org.radix.properties.RuntimeProperties;
+import org.radix.utils.SystemMetaData;
 
 import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 public final class DatabaseEnvironment
 {
 	private static final Logger log = Logging.getLogger();
+
+	private static final long LOG_FILE_MAX = 100_000_000L;
+
+	/**
+	 * Checkpoints and cleans the environment as decided by its {@link CheckpointPolicy}, with JE's own daemons disabled.
+	 */
 	private class CheckpointerTask implements Runnable {
+		private static final long POLL_INTERVAL_MS = 1_000L;
 
 		private volatile boolean interrupted = false;
 		void interrupt() {
@@ -52,24 +65,44 @@ public final class DatabaseEnvironment
 			this.interrupted = true;
 		}
 
+		private long lastCheckpointLogPosition;
+		private long lastCheckpointTime;
+		// files cleaned since the last checkpoint, which are deleted by the next checkpoint
+		private int cleanedFiles;
+
 		@Override
 		public void run()
 		{
 			CheckpointConfig checkpointConfig = new CheckpointConfig();
 			checkpointConfig.setForce(true);
+			StatsConfig statsConfig = new StatsConfig();
+			statsConfig.setFast(true);
+
+			this.lastCheckpointLogPosition = logPosition(DatabaseEnvironment.this.environment.getStats(statsConfig));
+			this.lastCheckpointTime = System.currentTimeMillis();
 
 			while (!interrupted) {
 				try {
-					long start = System.currentTimeMillis();
-
-					while (DatabaseEnvironment.this.environment.cleanLogFile() && System.currentTimeMillis() - start < TimeUnit.MINUTES.toMillis(10)) {
-						TimeUnit.SECONDS.sleep(10);
+					EnvironmentStats stats = DatabaseEnvironment.this.environment.getStats(statsConfig);
+					long bytesSinceCheckpoint = logPosition(stats) - this.lastCheckpointLogPosition;
+					int utilization = stats.getCurrentMinUtilization();
+					SystemMetaData.ifPresent(a -> {
+						a.put("db.log.size", stats.getTotalLogSize());
+						a.put("db.log.utilization", utilization);
+						a.put("db.log.since_checkpoint", bytesSinceCheckpoint);
+					});
+
+					if (DatabaseEnvironment.this.checkpointPolicy.isCleaningDue(utilization)) {
+						this.cleanedFiles += clean();
 					}
 
-					DatabaseEnvironment.this.environment.checkpoint(checkpointConfig);
-					DatabaseEnvironment.this.environment.evictMemory();
+					long sinceCheckpoint = System.currentTimeMillis() - this.lastCheckpointTime;
+					if (DatabaseEnvironment.this.checkpointPolicy.isCheckpointDue(bytesSinceCheckpoint, sinceCheckpoint, this.cleanedFiles)) {
+						checkpoint(checkpointConfig, statsConfig);
+					}
 
-					while (!interrupted && (System.currentTimeMillis() - start < TimeUnit.MINUTES.toMillis(10))) {
+					long start = System.currentTimeMillis();
+					while (!interrupted && (System.currentTimeMillis() - start < POLL_INTERVAL_MS)) {
 						Thread.sleep(100);
 					}
 				} catch (InterruptedException ex) {
@@ -81,17 +114,66 @@ public final class DatabaseEnvironment
 			}
 		}
 
+		private int clean() {
+			long start = System.currentTimeMillis();
+			int cleanedFiles = 0;
+			while (!interrupted
+				&& cleanedFiles < DatabaseEnvironment.this.checkpointPolicy.getCleanerMaxFilesPerRound()
+				&& DatabaseEnvironment.this.environment.cleanLogFile()) {
+				cleanedFiles++;
+			}
+
+			if (cleanedFiles > 0) {
+				long duration = System.currentTimeMillis() - start;
+				int files = cleanedFiles;
+				SystemMetaData.ifPresent(a -> {
+					a.increment("db.cleaner.files", files);
+					a.put("db.cleaner.duration", duration);
+				});
+				log.debug("Cleaned " + cleanedFiles + " log files in " + duration + "ms");
+			}
+			return cleanedFiles;
+		}
+
+		private void checkpoint(CheckpointConfig checkpointConfig, StatsConfig statsConfig) {
+			long start = System.currentTimeMillis();
+			DatabaseEnvironment.this.environment.checkpoint(checkpointConfig);
+			DatabaseEnvironment.this.environment.evictMemory();
+			long duration = System.currentTimeMillis() - start;
+
+			this.lastCheckpointLogPosition = logPosition(DatabaseEnvironment.this.environment.getStats(statsConfig));
+			this.lastCheckpointTime = System.currentTimeMillis();
+			this.cleanedFiles = 0;
+			SystemMetaData.ifPresent(a -> {
+				a.increment("db.checkpoint.count");
+				a.put("db.checkpoint.duration", duration);
+			});
+			log.debug("Checkpointed environment in " + duration + "ms");
+		}
+
+		// approximate position in the log in bytes, from the file number and offset of the end of log LSN
+		private long logPosition(EnvironmentStats stats) {
+			long endOfLog = stats.getEndOfLog();
+			return (endOfLog >>> 32) * LOG_FILE_MAX + (endOfLog & 0xFFFFFFFFL);
+		}
 	}
 
 	private final ReentrantLock lock = new ReentrantLock(true);
 	private Database metaDatabase;
 
+	private final CheckpointPolicy checkpointPolicy;
+
+	private final RuntimeProperties properties;
+	private final Map<String, DurabilityMode> durabilityModes = new ConcurrentHashMap<>();
+	private GroupCommitSyncer groupCommitSyncer = null;
+
 	private Environment						environment = null;
 	private CheckpointerTask checkpointTask;
 	private Thread 							checkpointThread = null;
 
 	@Inject
 	public DatabaseEnvironment(RuntimeProperties properties) {
+		this.properties = properties;
 		File dbhome = new File(properties.get("db.location", ".//RADIXDB"));
 		dbhome.mkdir();
 
@@ -102,7 +184,7 @@ public final class DatabaseEnvironment
 	    environmentConfig.setAllowCreate(true);
 	    environmentConfig.setLockTimeout(30, TimeUnit.SECONDS);
 	    environmentConfig.setDurability(Durability.COMMIT_NO_SYNC);
-	    environmentConfig.setConfigParam(EnvironmentConfig.LOG_FILE_MAX, "100000000");
+	    environmentConfig.setConfigParam(EnvironmentConfig.LOG_FILE_MAX, String.valueOf(LOG_FILE_MAX));
 	    environmentConfig.setConfigParam(EnvironmentConfig.LOG_FILE_CACHE_SIZE, "256");
 	    environmentConfig.setConfigParam(EnvironmentConfig.ENV_RUN_CHECKPOINTER, "false");
 	    environmentConfig.setConfigParam(EnvironmentConfig.ENV_RUN_CLEANER, "false");
@@ -134,6 +216,8 @@ public final class DatabaseEnvironment
 		    throw new RuntimeException("while opening database", ex);
 	    }
 
+	    this.checkpointPolicy = CheckpointPolicy.fromRuntimeProperties(properties, LOG_FILE_MAX);
+
 	    this.checkpointTask = new CheckpointerTask();
 	    this.checkpointThread = new Thread(this.checkpointTask);
 	    this.checkpointThread.setDaemon(true);
@@ -154,6 +238,13 @@ public final class DatabaseEnvironment
 			Thread.currentThread().interrupt();
 		}
 
+		synchronized (this) {
+			if (this.groupCommitSyncer != null) {
+				this.groupCommitSyncer.stop();
+				this.groupCommitSyncer = null;
+			}
+		}
+
        	this.environment.close();
        	this.environment = null;
 	}
@@ -176,6 +267,66 @@ public final class DatabaseEnvironment
 		return this.environment;
 	}
 
+	/**
+	 * Begins a transaction which commits with the durability configured for a store.
+	 * In {@link DurabilityMode#GROUP_SYNC} mode, callers should {@link #awaitDurable(String)} after committing.
+	 *
+	 * @param store the name of the store, as used in its {@code db.durability.<store>} property
+	 */
+	public Transaction beginTransaction(String store)
+	{
+		TransactionConfig config = new TransactionConfig();
+		config.setDurability(getDurabilityMode(store).getDurability());
+		return getEnvironment().beginTransaction(null, config);
+	}
+
+	/**
+	 * Waits until the transactions committed for a store so far are synced to disk.
+	 * This only blocks for stores in {@link DurabilityMode#GROUP_SYNC} mode, as other modes are as durable
+	 * as they will be once the commit returns. Callers should not hold locks shared with other committers,
+	 * so that their transactions can be synced in the same group.
+	 *
+	 * @param store the name of the store, as used in its {@code db.durability.<store>} property
+	 */
+	public void awaitDurable(String store)
+	{
+		if (getDurabilityMode(store) == DurabilityMode.GROUP_SYNC) {
+			getGroupCommitSyncer().await();
+		}
+	}
+
+	/**
+	 * Gets the durability mode configured for a store with {@code db.durability.<store>}, defaulting to
+	 * {@link DurabilityMode#NO_SYNC}.
+	 */
+	public DurabilityMode getDurabilityMode(String store)
+	{
+		return this.durabilityModes.computeIfAbsent(store,
+			s -> DurabilityMode.fromString(this.properties.get("db.durability." + s, "no_sync")));
+	}
+
+	/**
+	 * Whether stores verify the consistency of their databases on start, configured with
+	 * {@code db.check_integrity} as {@code 1}/{@code true} or {@code 0}/{@code false}, defaulting to on.
+	 */
+	public boolean isIntegrityCheckEnabled()
+	{
+		String value = this.properties.get("db.check_integrity", "1").trim();
+		return value.equals("1") || Boolean.parseBoolean(value);
+	}
+
+	private synchronized GroupCommitSyncer getGroupCommitSyncer()
+	{
+		if (this.groupCommitSyncer == null) {
+			this.groupCommitSyncer = new GroupCommitSyncer(
+				getEnvironment(),
+				this.properties.get("db.durability.group.interval", 10L),
+				this.properties.get("db.durability.group.transactions", 64)
+			);
+		}
+		return this.groupCommitSyncer;
+	}
+
 	public OperationStatus put(Transaction transaction, String resource, String key, byte[] value)
 	{
 		return this.put(transaction, resource, new DatabaseEntry(key.getBytes()), new DatabaseEntry(value));
@@ -0,0 +1,65 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package org.radix.database;
+
+import com.sleepycat.je.Durability;
+
+/**
+ * Durability of committed transactions of a store, as configured with {@code db.durability.<store>}.
+ */
+public enum DurabilityMode {
+	/**
+	 * Commits are written to the log buffers only, and may be lost on process or machine failure.
+	 */
+	NO_SYNC(Durability.COMMIT_NO_SYNC),
+	/**
+	 * Commits are written to the file system, and may be lost on machine failure.
+	 */
+	WRITE_NO_SYNC(Durability.COMMIT_WRITE_NO_SYNC),
+	/**
+	 * Every commit is synced to disk before it returns.
+	 */
+	SYNC(Durability.COMMIT_SYNC),
+	/**
+	 * Commits are synced to disk in groups, once per group commit interval or group commit size,
+	 * and committing threads wait for the sync of their group with {@link DatabaseEnvironment#awaitDurable(String)}.
+	 */
+	GROUP_SYNC(Durability.COMMIT_NO_SYNC);
+
+	private final Durability durability;
+
+	DurabilityMode(Durability durability) {
+		this.durability = durability;
+	}
+
+	/**
+	 * Gets the durability transactions are committed with in this mode.
+	 */
+	public Durability getDurability() {
+		return durability;
+	}
+
+	/**
+	 * Parses a durability mode from its property value, such as {@code "no_sync"} or {@code "group_sync"}.
+	 *
+	 * @throws IllegalArgumentException if the value is not a known durability mode
+	 */
+	public static DurabilityMode fromString(String value) {
+		return valueOf(value.trim().toUpperCase());
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package org.radix.database;
+
+import com.sleepycat.je.Environment;
+import org.radix.logging.Logger;
+import org.radix.logging.Logging;
+import org.radix.utils.SystemMetaData;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Syncs the log of an environment for groups of committed transactions, so that the cost of an fsync
+ * is shared by all transactions committed within a group commit interval or up to a group commit size.
+ */
+final class GroupCommitSyncer implements Runnable {
+	private static final Logger log = Logging.getLogger();
+
+	private final Environment environment;
+	private final long intervalNanos;
+	private final long maxTransactions;
+
+	private final Object lock = new Object();
+	// number of transactions waiting for a sync so far, and the number of those covered by a completed sync
+	private long requested = 0;
+	private long synced = 0;
+	private boolean stopped = false;
+
+	private final Thread thread;
+
+	GroupCommitSyncer(Environment environment, long intervalMs, int maxTransactions) {
+		if (intervalMs < 0) {
+			throw new IllegalArgumentException("Group commit interval must not be negative: " + intervalMs);
+		}
+		if (maxTransactions < 1) {
+			throw new IllegalArgumentException("Group commit size must be positive: " + maxTransactions);
+		}
+
+		this.environment = environment;
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+		this.maxTransactions = maxTransactions;
+		this.thread = new Thread(this);
+		this.thread.setDaemon(true);
+		this.thread.setName("Group Commit Syncer");
+		this.thread.start();
+	}
+
+	/**
+	 * Waits until the log is synced up to a transaction committed before this call.
+	 */
+	void await() {
+		synchronized (this.lock) {
+			long ticket = ++this.requested;
+			if (this.requested - this.synced >= this.maxTransactions) {
+				this.lock.notifyAll();
+			}
+			try {
+				while (this.synced < ticket && !this.stopped) {
+					this.lock.wait();
+				}
+			} catch (InterruptedException e) {
+				// the transaction is committed regardless, it just isn't known to be synced yet
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Stops the syncer after a final sync of any outstanding transactions.
+	 */
+	void stop() {
+		synchronized (this.lock) {
+			this.stopped = true;
+			this.lock.notifyAll();
+		}
+		try {
+			this.thread.join();
+		} catch (InterruptedException e) {
+			// Ignore and continue
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			long target;
+			synchronized (this.lock) {
+				try {
+					while (this.requested == this.synced && !this.stopped) {
+						this.lock.wait();
+					}
+					// give the group until the interval has passed or the group is full to fill up
+					long deadline = System.nanoTime() + this.intervalNanos;
+					long remaining;
+					while (!this.stopped
+						&& this.requested - this.synced < this.maxTransactions
+						&& (remaining = deadline - System.nanoTime()) > 0) {
+						TimeUnit.NANOSECONDS.timedWait(this.lock, remaining);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					this.stopped = true;
+				}
+				target = this.requested;
+				if (this.stopped && target == this.synced) {
+					this.lock.notifyAll();
+					return;
+				}
+			}
+
+			boolean success = false;
+			try {
+				this.environment.flushLog(true);
+				success = true;
+			} catch (Exception e) {
+				log.error("Group commit sync of environment failed", e);
+			}
+
+			long groupSize;
+			synchronized (this.lock) {
+				groupSize = target - this.synced;
+				// waiters are released on failure as well, their transactions are committed but possibly not synced
+				this.synced = target;
+				this.lock.notifyAll();
+			}
+			if (success) {
+				SystemMetaData.ifPresent(a -> {
+					a.increment("db.group_commit.syncs");
+					a.put("db.group_commit.size", groupSize);
+				});
+			}
+		}
+	}
+}
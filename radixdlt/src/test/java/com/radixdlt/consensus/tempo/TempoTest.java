@@ -0,0 +1,162 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.consensus.tempo;
+
+import com.google.common.collect.ImmutableSet;
+import com.radixdlt.common.AID;
+import com.radixdlt.consensus.ConsensusObservation;
+import com.radixdlt.delivery.DeliveryResult;
+import com.radixdlt.delivery.LazyRequestDeliverer;
+import com.radixdlt.discovery.AtomDiscoverer;
+import com.radixdlt.discovery.AtomDiscoveryListener;
+import com.radixdlt.store.LedgerEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.radix.network2.addressbook.Peer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TempoTest {
+	private static final long TIMEOUT_MS = 10_000L;
+
+	private Application application;
+	private AtomDiscoverer atomDiscoverer;
+	private LazyRequestDeliverer requestDeliverer;
+	// deliveries requested so far, which are completed by the tests
+	private List<CompletableFuture<DeliveryResult>> deliveries;
+	private List<AID> deliveredAids;
+	private Tempo tempo;
+
+	private static AID aid(int id) {
+		byte[] aidBytes = new byte[AID.BYTES];
+		aidBytes[0] = (byte) (id >> 24);
+		aidBytes[1] = (byte) (id >> 16);
+		aidBytes[2] = (byte) (id >> 8);
+		aidBytes[3] = (byte) id;
+		return AID.from(aidBytes);
+	}
+
+	private static Set<AID> aids(int from, int to) {
+		return IntStream.range(from, to).mapToObj(TempoTest::aid).collect(Collectors.toSet());
+	}
+
+	@Before
+	public void setUp() throws InterruptedException {
+		this.application = mock(Application.class);
+		this.atomDiscoverer = mock(AtomDiscoverer.class);
+		this.requestDeliverer = mock(LazyRequestDeliverer.class);
+		this.deliveries = new ArrayList<>();
+		this.deliveredAids = new ArrayList<>();
+		when(this.requestDeliverer.deliver(anySet(), anySet())).then(invocation -> {
+			Set<AID> aids = invocation.getArgument(0);
+			Map<AID, CompletableFuture<DeliveryResult>> futures = aids.stream()
+				.collect(Collectors.toMap(Function.identity(), aid -> new CompletableFuture<>()));
+			futures.forEach((aid, future) -> {
+				this.deliveredAids.add(aid);
+				this.deliveries.add(future);
+			});
+			return futures;
+		});
+	}
+
+	@After
+	public void tearDown() {
+		if (this.tempo != null) {
+			this.tempo.close();
+		}
+	}
+
+	@Test(timeout = TIMEOUT_MS)
+	public void discovered_aids_beyond_inbound_capacity_are_requested_once_capacity_frees() throws InterruptedException {
+		doAnswer(invocation -> {
+			Thread.sleep(Long.MAX_VALUE);
+			return null;
+		}).when(this.application).takeNextEntry();
+		this.tempo = new Tempo(this.application, ImmutableSet.of(this.atomDiscoverer), this.requestDeliverer);
+		ArgumentCaptor<AtomDiscoveryListener> listener = ArgumentCaptor.forClass(AtomDiscoveryListener.class);
+		verify(this.atomDiscoverer).addListener(listener.capture());
+		Peer peer = mock(Peer.class);
+
+		// fill the inbound capacity
+		Set<AID> discovered = new HashSet<>(aids(0, Tempo.INBOUND_QUEUE_CAPACITY));
+		listener.getValue().accept(aids(0, Tempo.INBOUND_QUEUE_CAPACITY), peer);
+		assertEquals(Tempo.INBOUND_QUEUE_CAPACITY, this.deliveries.size());
+
+		// returns at once while the capacity is exhausted
+		Set<AID> beyondCapacity = aids(Tempo.INBOUND_QUEUE_CAPACITY, Tempo.INBOUND_QUEUE_CAPACITY + 1000);
+		discovered.addAll(beyondCapacity);
+		listener.getValue().accept(beyondCapacity, peer);
+		assertEquals(Tempo.INBOUND_QUEUE_CAPACITY, this.deliveries.size());
+
+		Set<AID> observed = new HashSet<>();
+		int completed = 0;
+		while (observed.size() < discovered.size()) {
+			// observing makes room, for which the parked aids are requested
+			for (; completed < this.deliveries.size(); completed++) {
+				AID aid = this.deliveredAids.get(completed);
+				this.deliveries.get(completed).complete(DeliveryResult.success(new LedgerEntry(new byte[] { 1 }, aid), peer));
+			}
+			for (ConsensusObservation observation : this.tempo.observe(Tempo.INBOUND_QUEUE_CAPACITY / 4, 0)) {
+				observed.add(observation.getEntry().getAID());
+			}
+		}
+		assertEquals(discovered, observed);
+		assertEquals(discovered.size(), this.deliveries.size());
+	}
+
+	@Test
+	public void entry_is_returned_to_application_when_interrupted_while_waiting_for_capacity() throws InterruptedException {
+		AtomicInteger taken = new AtomicInteger();
+		doAnswer(invocation -> {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			int id = taken.getAndIncrement();
+			return new LedgerEntry(new byte[] { 1 }, aid(id));
+		}).when(this.application).takeNextEntry();
+		this.tempo = new Tempo(this.application, ImmutableSet.of(), this.requestDeliverer);
+
+		// nothing observes the entries, so the entry after the ones filling the queue waits for capacity
+		verify(this.application, timeout(TIMEOUT_MS).atLeast(Tempo.INBOUND_QUEUE_CAPACITY + 1)).takeNextEntry();
+		this.tempo.close();
+		this.tempo = null;
+
+		AID waiting = aid(Tempo.INBOUND_QUEUE_CAPACITY);
+		verify(this.application, timeout(TIMEOUT_MS)).returnEntry(argThat(entry -> entry.getAID().equals(waiting)));
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package com.radixdlt.middleware2.processing;
+
+import com.radixdlt.common.AID;
+import com.radixdlt.store.LedgerEntry;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AtomMempoolTest {
+	private static LedgerEntry createLedgerEntry(int id, int size) {
+		byte[] aidBytes = new byte[AID.BYTES];
+		aidBytes[0] = (byte) id;
+		return new LedgerEntry(new byte[size], AID.from(aidBytes));
+	}
+
+	@Test
+	public void atoms_are_taken_in_submission_order() throws InterruptedException {
+		AtomMempool mempool = new AtomMempool(10, 1000);
+		LedgerEntry first = createLedgerEntry(2, 1);
+		LedgerEntry second = createLedgerEntry(1, 1);
+		assertTrue(mempool.add(first));
+		assertTrue(mempool.add(second));
+
+		assertEquals(first, mempool.take());
+		assertEquals(second, mempool.take());
+		// taken atoms stay in the pool until removed
+		assertEquals(2, mempool.size());
+	}
+
+	@Test
+	public void duplicate_atoms_are_suppressed() throws InterruptedException {
+		AtomMempool mempool = new AtomMempool(10, 1000);
+		LedgerEntry ledgerEntry = createLedgerEntry(1, 1);
+		assertTrue(mempool.add(ledgerEntry));
+		assertFalse(mempool.add(ledgerEntry));
+		assertEquals(ledgerEntry, mempool.take());
+
+		// also while taken but not removed yet
+		assertFalse(mempool.add(ledgerEntry));
+		assertTrue(mempool.remove(ledgerEntry.getAID()));
+		assertTrue(mempool.add(ledgerEntry));
+	}
+
+	@Test
+	public void removed_atoms_are_not_taken() throws InterruptedException {
+		AtomMempool mempool = new AtomMempool(10, 1000);
+		LedgerEntry first = createLedgerEntry(1, 10);
+		LedgerEntry second = createLedgerEntry(2, 20);
+		mempool.add(first);
+		mempool.add(second);
+
+		assertTrue(mempool.remove(first.getAID()));
+		assertFalse(mempool.remove(first.getAID()));
+		assertEquals(20L, mempool.getBytes());
+		assertEquals(second, mempool.take());
+	}
+
+	@Test
+	public void atoms_put_back_are_taken_again_first() throws InterruptedException {
+		AtomMempool mempool = new AtomMempool(10, 1000);
+		LedgerEntry first = createLedgerEntry(1, 1);
+		LedgerEntry second = createLedgerEntry(2, 1);
+		mempool.add(first);
+		mempool.add(second);
+		assertEquals(first, mempool.take());
+
+		assertTrue(mempool.putBack(first.getAID()));
+		// only taken atoms can be put back
+		assertFalse(mempool.putBack(first.getAID()));
+		assertFalse(mempool.putBack(createLedgerEntry(3, 1).getAID()));
+		assertEquals(2, mempool.size());
+
+		assertEquals(first, mempool.take());
+		assertEquals(second, mempool.take());
+	}
+
+	@Test(expected = MempoolFullException.class)
+	public void atoms_beyond_max_atoms_are_rejected() {
+		AtomMempool mempool = new AtomMempool(1, 1000);
+		mempool.add(createLedgerEntry(1, 1));
+		mempool.add(createLedgerEntry(2, 1));
+	}
+
+	@Test
+	public void atoms_beyond_max_bytes_are_rejected() {
+		AtomMempool mempool = new AtomMempool(10, 100);
+		mempool.add(createLedgerEntry(1, 60));
+		try {
+			mempool.add(createLedgerEntry(2, 41));
+		} catch (MempoolFullException e) {
+			assertEquals(1, mempool.size());
+			assertTrue(mempool.add(createLedgerEntry(3, 40)));
+			return;
+		}
+		throw new AssertionError("Atom beyond max bytes was not rejected");
+	}
+}
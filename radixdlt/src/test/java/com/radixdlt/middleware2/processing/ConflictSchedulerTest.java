@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package com.radixdlt.middleware2.processing;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConflictSchedulerTest {
+	private ConflictScheduler<Integer> scheduler;
+
+	@Before
+	public void setUp() {
+		this.scheduler = new ConflictScheduler<>("ConflictSchedulerTest", 4, 16);
+	}
+
+	@After
+	public void tearDown() {
+		this.scheduler.stop();
+	}
+
+	@Test
+	public void conflicting_tasks_run_in_submission_order() throws InterruptedException {
+		List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+		for (int i = 0; i < 100; i++) {
+			final int task = i;
+			// every task only conflicts with its neighbours, so the whole chain is ordered
+			scheduler.submit(ImmutableSet.of(i, i + 1), () -> order.add(task));
+		}
+		scheduler.awaitIdle();
+
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			expected.add(i);
+		}
+		assertEquals(expected, order);
+	}
+
+	@Test
+	public void independent_tasks_run_concurrently() throws InterruptedException {
+		CountDownLatch bothRunning = new CountDownLatch(2);
+		AtomicInteger overlapping = new AtomicInteger();
+		for (int i = 0; i < 2; i++) {
+			scheduler.submit(ImmutableSet.of(i), () -> {
+				bothRunning.countDown();
+				try {
+					if (bothRunning.await(5, TimeUnit.SECONDS)) {
+						overlapping.incrementAndGet();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		scheduler.awaitIdle();
+
+		assertEquals(2, overlapping.get());
+	}
+
+	@Test
+	public void failed_task_does_not_hold_up_conflicting_tasks() throws InterruptedException {
+		AtomicInteger ran = new AtomicInteger();
+		scheduler.submit(ImmutableSet.of(1), () -> {
+			throw new IllegalStateException("test failure");
+		});
+		scheduler.submit(ImmutableSet.of(1), ran::incrementAndGet);
+		scheduler.awaitIdle();
+
+		assertEquals(1, ran.get());
+	}
+
+	@Test
+	public void task_completing_exceptionally_does_not_hold_up_conflicting_tasks() throws InterruptedException {
+		AtomicInteger ran = new AtomicInteger();
+		// errors are not caught by the scheduler, so the task completes exceptionally
+		scheduler.submit(ImmutableSet.of(1, 2), () -> {
+			throw new AssertionError("test failure");
+		});
+		scheduler.submit(ImmutableSet.of(1), ran::incrementAndGet);
+		scheduler.submit(ImmutableSet.of(2, 3), ran::incrementAndGet);
+		scheduler.submit(ImmutableSet.of(3), ran::incrementAndGet);
+		scheduler.awaitIdle();
+
+		assertEquals(3, ran.get());
+	}
+
+	@Test
+	public void submissions_beyond_outstanding_limit_wait() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < 16; i++) {
+			scheduler.submit(ImmutableSet.of(0), () -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+
+		Thread submitter = new Thread(() -> {
+			try {
+				scheduler.submit(ImmutableSet.of(1), () -> { });
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		submitter.start();
+		submitter.join(200);
+		assertTrue(submitter.isAlive());
+
+		release.countDown();
+		submitter.join(5000);
+		scheduler.awaitIdle();
+		assertFalse(submitter.isAlive());
+	}
+}
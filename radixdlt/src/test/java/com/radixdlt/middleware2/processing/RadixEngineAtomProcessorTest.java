@@ -0,0 +1,130 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.middleware2.processing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.radixdlt.common.Atom;
+import com.radixdlt.consensus.Consensus;
+import com.radixdlt.consensus.ConsensusObservation;
+import com.radixdlt.engine.RadixEngine;
+import com.radixdlt.middleware2.converters.AtomToBinaryConverter;
+import com.radixdlt.middleware2.processing.RadixEngineAtomProcessor.ProcessorAtomEventListener;
+import com.radixdlt.middleware2.store.EngineAtomIndices;
+import com.radixdlt.middleware2.store.EngineAtomIndicesCache;
+import com.radixdlt.middleware2.store.LedgerEngineStore;
+import com.radixdlt.serialization.Serialization;
+import com.radixdlt.store.LedgerEntry;
+import com.radixdlt.store.LedgerEntryStore;
+import com.radixdlt.universe.Universe;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RadixEngineAtomProcessorTest {
+	private static final long TIMEOUT_MS = 10_000L;
+
+	private final Atom atom = new Atom(1L);
+	private final byte[] content = new byte[] { 1 };
+	private final JSONObject jsonAtom = new JSONObject();
+	// entries committed by the mocked consensus
+	private final BlockingQueue<LedgerEntry> commits = new LinkedBlockingQueue<>();
+
+	private RadixEngine radixEngine;
+	private RadixEngineAtomProcessor processor;
+
+	@Before
+	public void setUp() throws InterruptedException {
+		Consensus consensus = mock(Consensus.class);
+		when(consensus.observe(anyInt(), anyLong())).then(invocation -> ImmutableList.of(ConsensusObservation.commit(commits.take())));
+		this.radixEngine = mock(RadixEngine.class);
+		LedgerEngineStore engineStore = mock(LedgerEngineStore.class);
+		when(engineStore.deferWrites(any())).then(invocation -> {
+			invocation.<Runnable>getArgument(0).run();
+			return mock(LedgerEngineStore.DeferredWrites.class);
+		});
+		Serialization serialization = mock(Serialization.class);
+		when(serialization.fromJsonObject(this.jsonAtom, Atom.class)).thenReturn(this.atom);
+		AtomToBinaryConverter atomToBinaryConverter = mock(AtomToBinaryConverter.class);
+		when(atomToBinaryConverter.toLedgerEntryContent(this.atom)).thenReturn(this.content);
+		when(atomToBinaryConverter.toAtom(eq(this.content))).thenReturn(this.atom);
+		EngineAtomIndicesCache indicesCache = mock(EngineAtomIndicesCache.class);
+		when(indicesCache.get(this.atom)).thenReturn(new EngineAtomIndices(ImmutableSet.of(), ImmutableSet.of()));
+		RadixEngineAtomProcessorConfiguration configuration = mock(RadixEngineAtomProcessorConfiguration.class,
+			invocation -> invocation.getArgument(0));
+
+		this.processor = new RadixEngineAtomProcessor(
+			consensus,
+			mock(LedgerEntryStore.class),
+			this.radixEngine,
+			engineStore,
+			serialization,
+			atomToBinaryConverter,
+			indicesCache,
+			configuration
+		);
+		Universe universe = mock(Universe.class);
+		when(universe.getGenesis()).thenReturn(new ArrayList<>());
+		this.processor.start(universe);
+	}
+
+	@After
+	public void tearDown() {
+		this.processor.stop();
+	}
+
+	@Test(timeout = TIMEOUT_MS)
+	public void atom_failing_to_store_is_removed_from_mempool_before_submitters_are_notified() throws InterruptedException {
+		IllegalStateException failure = new IllegalStateException("test failure");
+		doThrow(failure).when(this.radixEngine).store(any(), any());
+		ProcessorAtomEventListener listener = mock(ProcessorAtomEventListener.class);
+		// the submitter submits the atom again when notified of the failure
+		ProcessorAtomEventListener resubmitter = new ProcessorAtomEventListener() {
+			@Override
+			public void onError(Exception e) {
+				processor.process(jsonAtom, Optional.of(listener));
+			}
+		};
+
+		this.processor.process(this.jsonAtom, Optional.of(resubmitter));
+		LedgerEntry taken = this.processor.takeNextEntry();
+		this.commits.add(taken);
+
+		// the failed atom was removed, so the atom submitted again is taken rather than suppressed as a duplicate
+		assertEquals(taken.getAID(), this.processor.takeNextEntry().getAID());
+		this.commits.add(taken);
+		verify(listener, timeout(TIMEOUT_MS)).onError(failure);
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.middleware2.store;
+
+import com.google.common.collect.ImmutableSet;
+import com.radixdlt.common.Atom;
+import com.radixdlt.middleware2.converters.AtomToBinaryConverter;
+import com.radixdlt.middleware2.processing.EngineAtomEventListener;
+import com.radixdlt.serialization.Serialization;
+import com.radixdlt.store.StoreIndex;
+import com.radixdlt.store.memory.InMemoryLedgerEntryStore;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EngineAtomIndicesCacheTest {
+	private static final byte PREFIX = 7; // test value with no special significance
+
+	private final AtomicInteger computations = new AtomicInteger();
+	private final EngineAtomIndicesCache cache = new EngineAtomIndicesCache(atom -> {
+		computations.incrementAndGet();
+		return new EngineAtomIndices(ImmutableSet.of(new StoreIndex(PREFIX, new byte[] { 1 })), ImmutableSet.of());
+	});
+
+	@Test
+	public void indices_are_computed_once_for_processor_store_and_listener() {
+		Atom atom = new Atom();
+		InMemoryLedgerEntryStore store = new InMemoryLedgerEntryStore();
+		LedgerEngineStore engineStore = new LedgerEngineStore(store, new AtomToBinaryConverter(Serialization.getDefault()), cache, defaultValue -> defaultValue);
+
+		// the processor computes the conflict keys of a committed atom first
+		EngineAtomIndices indices = cache.get(atom);
+		engineStore.storeAtom(atom);
+		new EngineAtomEventListener(cache).onStateStore(atom);
+
+		assertEquals(1, computations.get());
+		assertSame(indices, cache.get(atom));
+		assertTrue(store.contains(atom.getAID()));
+	}
+
+	@Test
+	public void indices_are_computed_for_every_atom_instance() {
+		Atom atom = new Atom();
+		Atom equalAtom = new Atom();
+
+		EngineAtomIndices indices = cache.get(atom);
+		assertNotSame(indices, cache.get(equalAtom));
+		assertEquals(2, computations.get());
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+package com.radixdlt.middleware2.store;
+
+import com.google.common.collect.ImmutableSet;
+import com.radixdlt.common.AID;
+import com.radixdlt.store.IndexedLedgerEntry;
+import com.radixdlt.store.LedgerEntry;
+import com.radixdlt.store.StoreIndex;
+import com.radixdlt.store.memory.InMemoryLedgerEntryStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LedgerEntryBatcherTest {
+	private static final byte PREFIX = 7; // test value with no special significance
+
+	private static IndexedLedgerEntry createIndexedEntry(int id, StoreIndex uniqueIndex) {
+		byte[] aidBytes = new byte[AID.BYTES];
+		aidBytes[0] = (byte) (id >> 8);
+		aidBytes[1] = (byte) id;
+		LedgerEntry ledgerEntry = new LedgerEntry(new byte[] { (byte) id }, AID.from(aidBytes));
+		return IndexedLedgerEntry.of(ledgerEntry, ImmutableSet.of(uniqueIndex), ImmutableSet.of());
+	}
+
+	@Test
+	public void concurrently_stored_entries_are_all_stored() throws Exception {
+		InMemoryLedgerEntryStore store = new InMemoryLedgerEntryStore();
+		LedgerEntryBatcher batcher = new LedgerEntryBatcher(store, 8);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				IndexedLedgerEntry indexedEntry = createIndexedEntry(i, new StoreIndex(PREFIX, new byte[] { (byte) (i >> 8), (byte) i }));
+				results.add(executor.submit(() -> batcher.store(indexedEntry).isSuccess()));
+			}
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(200, store.getPending().size());
+	}
+
+	@Test
+	public void queued_entries_are_written_with_the_next_batch() {
+		InMemoryLedgerEntryStore store = new InMemoryLedgerEntryStore();
+		LedgerEntryBatcher batcher = new LedgerEntryBatcher(store, 8);
+		LedgerEntryBatcher.PendingEntry queued1 = batcher.enqueue(createIndexedEntry(1, new StoreIndex(PREFIX, new byte[] { 1 })));
+		LedgerEntryBatcher.PendingEntry queued2 = batcher.enqueue(createIndexedEntry(2, new StoreIndex(PREFIX, new byte[] { 2 })));
+		assertEquals(0, store.getPending().size());
+
+		// waiting for one entry writes all entries queued so far
+		assertTrue(batcher.await(queued2).isSuccess());
+		assertEquals(2, store.getPending().size());
+		assertTrue(batcher.await(queued1).isSuccess());
+	}
+
+	@Test
+	public void conflicts_are_reported_to_their_caller() {
+		InMemoryLedgerEntryStore store = new InMemoryLedgerEntryStore();
+		LedgerEntryBatcher batcher = new LedgerEntryBatcher(store, 8);
+		StoreIndex uniqueIndex = new StoreIndex(PREFIX, new byte[] { 1 });
+
+		assertTrue(batcher.store(createIndexedEntry(1, uniqueIndex)).isSuccess());
+		assertFalse(batcher.store(createIndexedEntry(2, uniqueIndex)).isSuccess());
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import com.radixdlt.common.AID;
+import com.radixdlt.serialization.DsonOutput.Output;
+import com.radixdlt.serialization.Serialization;
+import com.radixdlt.store.LedgerEntry;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LedgerEntryCodecTest {
+	private final Serialization serialization = Serialization.getDefault();
+	private final Random random = new Random(1);
+
+	private byte[] createSerializedLedgerEntry() throws Exception {
+		// partially random content with some common structure, similar to serialized atoms
+		byte[] content = new byte[512];
+		random.nextBytes(content);
+		byte[] header = "serializer:radix.atom".getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(header, 0, content, 0, header.length);
+		byte[] aidBytes = new byte[AID.BYTES];
+		random.nextBytes(aidBytes);
+		return serialization.toDson(new LedgerEntry(content, AID.from(aidBytes)), Output.PERSIST);
+	}
+
+	@Test
+	public void plain_dson_records_are_decoded_as_is() throws Exception {
+		byte[] data = createSerializedLedgerEntry();
+		LedgerEntryCodec codec = new LedgerEntryCodec(LedgerEntryCodec.Format.SNAPPY, null);
+
+		assertArrayEquals(data, codec.decode(data));
+	}
+
+	@Test
+	public void records_are_decoded_from_read_only_direct_buffers() throws Exception {
+		byte[] data = createSerializedLedgerEntry();
+		LedgerEntryCodec codec = new LedgerEntryCodec(LedgerEntryCodec.Format.SNAPPY, null);
+		byte[] record = codec.encode(data);
+		// like a slice of a mapped payload segment
+		ByteBuffer buffer = ByteBuffer.allocateDirect(record.length + 2);
+		buffer.put((byte) 0).put(record).put((byte) 0);
+		buffer.position(1).limit(1 + record.length);
+		ByteBuffer slice = buffer.slice().asReadOnlyBuffer();
+
+		assertArrayEquals(data, codec.decode(slice));
+		assertArrayEquals(data, codec.decode(ByteBuffer.wrap(data).asReadOnlyBuffer()));
+		assertEquals(record.length, slice.remaining());
+	}
+
+	@Test
+	public void none_encodes_as_plain_dson() throws Exception {
+		byte[] data = createSerializedLedgerEntry();
+		LedgerEntryCodec codec = new LedgerEntryCodec(LedgerEntryCodec.Format.NONE, null);
+
+		assertArrayEquals(data, codec.encode(data));
+		assertArrayEquals(data, codec.decode(codec.encode(data)));
+	}
+
+	@Test
+	public void snappy_round_trips() throws Exception {
+		byte[] data = createSerializedLedgerEntry();
+		LedgerEntryCodec codec = new LedgerEntryCodec(LedgerEntryCodec.Format.SNAPPY, null);
+
+		assertArrayEquals(data, codec.decode(codec.encode(data)));
+	}
+
+	@Test
+	public void dictionary_round_trips_and_is_readable_by_other_formats_with_dictionary() throws Exception {
+		List<byte[]> samples = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			samples.add(createSerializedLedgerEntry());
+		}
+		byte[] dictionary = LedgerEntryCodec.trainDictionary(samples, 4096, 0.5);
+		assertTrue(dictionary.length > 0);
+		assertTrue(dictionary.length <= 4096);
+
+		byte[] data = createSerializedLedgerEntry();
+		LedgerEntryCodec codec = new LedgerEntryCodec(LedgerEntryCodec.Format.DICTIONARY, dictionary);
+		byte[] record = codec.encode(data);
+		assertArrayEquals(data, codec.decode(record));
+
+		LedgerEntryCodec snappyCodec = new LedgerEntryCodec(LedgerEntryCodec.Format.SNAPPY, dictionary);
+		assertArrayEquals(data, snappyCodec.decode(record));
+	}
+
+	@Test
+	public void format_is_parsed_case_insensitively() {
+		assertEquals(LedgerEntryCodec.Format.DICTIONARY, LedgerEntryCodec.Format.from(" Dictionary "));
+	}
+}
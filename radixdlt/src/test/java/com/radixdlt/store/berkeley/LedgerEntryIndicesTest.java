@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import com.google.common.collect.ImmutableSet;
+import com.radixdlt.common.AID;
+import com.radixdlt.serialization.DsonOutput.Output;
+import com.radixdlt.serialization.Serialization;
+import com.radixdlt.store.LedgerEntry;
+import com.radixdlt.store.StoreIndex;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LedgerEntryIndicesTest {
+	private static final byte PREFIX = 7; // test value with no special significance
+
+	private LedgerEntryIndices createIndices() {
+		LedgerEntry ledgerEntry = new LedgerEntry(new byte[] { 1, 2, 3 }, AID.ZERO);
+		return LedgerEntryIndices.from(
+			ledgerEntry,
+			ImmutableSet.of(new StoreIndex(PREFIX, new byte[] { 4, 5 }), new StoreIndex(PREFIX, new byte[] { 6 })),
+			ImmutableSet.of(new StoreIndex((byte) (PREFIX + 1), new byte[] { 7, 8, 9 }))
+		);
+	}
+
+	@Test
+	public void binary_encoding_round_trips() {
+		LedgerEntryIndices indices = createIndices();
+
+		byte[] data = indices.toByteArray();
+		assertTrue(LedgerEntryIndices.isBinary(data));
+
+		LedgerEntryIndices decoded = LedgerEntryIndices.fromByteArray(data);
+		assertEquals(indices.getUniqueIndices(), decoded.getUniqueIndices());
+		assertEquals(indices.getDuplicateIndices(), decoded.getDuplicateIndices());
+	}
+
+	@Test
+	public void dson_encoding_is_not_mistaken_for_binary() throws Exception {
+		byte[] dson = Serialization.getDefault().toDson(createIndices(), Output.PERSIST);
+		assertFalse(LedgerEntryIndices.isBinary(dson));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void truncated_binary_encoding_is_rejected() {
+		byte[] data = createIndices().toByteArray();
+		byte[] truncated = new byte[data.length - 1];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		LedgerEntryIndices.fromByteArray(truncated);
+	}
+}
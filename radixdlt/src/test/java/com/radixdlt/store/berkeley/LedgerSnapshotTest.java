@@ -0,0 +1,99 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import com.radixdlt.common.AID;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class LedgerSnapshotTest {
+	private static AID aid(int value) {
+		byte[] bytes = new byte[AID.BYTES];
+		bytes[0] = (byte) value;
+		return AID.from(bytes);
+	}
+
+	private static byte[] writeSnapshot(int records) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (LedgerSnapshot.Writer writer = new LedgerSnapshot.Writer(output)) {
+			for (int i = 1; i <= records; i++) {
+				writer.write(new LedgerSnapshot.Record(i, aid(i), new byte[] { (byte) i, 2, 3 }, new byte[] { 1, (byte) i }));
+			}
+			writer.finish();
+		}
+		return output.toByteArray();
+	}
+
+	@Test
+	public void records_round_trip() throws IOException {
+		byte[] snapshot = writeSnapshot(3);
+
+		try (LedgerSnapshot.Reader reader = new LedgerSnapshot.Reader(new ByteArrayInputStream(snapshot))) {
+			for (int i = 1; i <= 3; i++) {
+				LedgerSnapshot.Record record = reader.read().orElseThrow(AssertionError::new);
+				assertEquals(i, record.getLogicalClock());
+				assertEquals(aid(i), record.getAid());
+				assertArrayEquals(new byte[] { (byte) i, 2, 3 }, record.getLedgerEntryDson());
+				assertArrayEquals(new byte[] { 1, (byte) i }, record.getIndices());
+			}
+			assertFalse(reader.read().isPresent());
+			assertEquals(3, reader.getRecords());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void truncated_snapshot_is_rejected() throws IOException {
+		byte[] snapshot = writeSnapshot(3);
+		byte[] truncated = Arrays.copyOf(snapshot, snapshot.length - 1);
+
+		try (LedgerSnapshot.Reader reader = new LedgerSnapshot.Reader(new ByteArrayInputStream(truncated))) {
+			Optional<LedgerSnapshot.Record> record;
+			do {
+				record = reader.read();
+			} while (record.isPresent());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void corrupt_record_is_rejected() throws IOException {
+		byte[] snapshot = writeSnapshot(1);
+		// last byte of the indices of the only record, just before its checksum and the end record
+		snapshot[snapshot.length - 4 - 13 - 1] ^= 0x01;
+
+		try (LedgerSnapshot.Reader reader = new LedgerSnapshot.Reader(new ByteArrayInputStream(snapshot))) {
+			reader.read();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void records_out_of_order_are_rejected() throws IOException {
+		try (LedgerSnapshot.Writer writer = new LedgerSnapshot.Writer(new ByteArrayOutputStream())) {
+			writer.write(new LedgerSnapshot.Record(2, aid(2), new byte[] { 1 }, new byte[] { 1 }));
+			writer.write(new LedgerSnapshot.Record(1, aid(1), new byte[] { 1 }, new byte[] { 1 }));
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.berkeley;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentPayloadLogTest {
+	private static final int SEGMENT_SIZE = 64;
+	private static final int MAX_MAPPED_SEGMENTS = 2;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] bytes(ByteBuffer payload) {
+		byte[] bytes = new byte[payload.remaining()];
+		payload.get(bytes);
+		return bytes;
+	}
+
+	@Test
+	public void appended_payloads_can_be_read() throws IOException {
+		SegmentPayloadLog payloadLog = new SegmentPayloadLog(folder.getRoot(), SEGMENT_SIZE, MAX_MAPPED_SEGMENTS);
+		byte[] pointer1 = payloadLog.append(new byte[] { 1, 2, 3 });
+		byte[] pointer2 = payloadLog.append(new byte[] { 4, 5 });
+
+		assertTrue(SegmentPayloadLog.isPointer(pointer1));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, bytes(payloadLog.read(pointer1)));
+		assertArrayEquals(new byte[] { 4, 5 }, bytes(payloadLog.read(pointer2)));
+
+		ByteBuffer slice = payloadLog.read(pointer2);
+		assertEquals(2, slice.remaining());
+		assertTrue(slice.isReadOnly());
+		payloadLog.close();
+	}
+
+	@Test
+	public void payloads_roll_over_to_new_segments() throws IOException {
+		SegmentPayloadLog payloadLog = new SegmentPayloadLog(folder.getRoot(), SEGMENT_SIZE, MAX_MAPPED_SEGMENTS);
+		byte[][] pointers = new byte[10][];
+		for (int i = 0; i < pointers.length; i++) {
+			pointers[i] = payloadLog.append(new byte[] { (byte) i, 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+		}
+
+		for (int i = 0; i < pointers.length; i++) {
+			assertEquals(i, bytes(payloadLog.read(pointers[i]))[0]);
+		}
+		assertTrue(new File(folder.getRoot(), "payloads-00000002.seg").exists());
+		payloadLog.close();
+	}
+
+	@Test
+	public void mapped_segments_are_bounded() throws IOException {
+		SegmentPayloadLog payloadLog = new SegmentPayloadLog(folder.getRoot(), SEGMENT_SIZE, MAX_MAPPED_SEGMENTS);
+		byte[][] pointers = new byte[10][];
+		for (int i = 0; i < pointers.length; i++) {
+			pointers[i] = payloadLog.append(new byte[] { (byte) i, 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+			assertTrue(payloadLog.mappedSegments() <= MAX_MAPPED_SEGMENTS + 1);
+		}
+
+		// released segments are mapped again on read
+		for (int i = 0; i < pointers.length; i++) {
+			assertEquals(i, bytes(payloadLog.read(pointers[i]))[0]);
+			assertTrue(payloadLog.mappedSegments() <= MAX_MAPPED_SEGMENTS + 1);
+		}
+		payloadLog.close();
+	}
+
+	@Test
+	public void corrupt_payload_is_not_read() throws IOException {
+		SegmentPayloadLog payloadLog = new SegmentPayloadLog(folder.getRoot(), SEGMENT_SIZE, MAX_MAPPED_SEGMENTS);
+		byte[] pointer = payloadLog.append(new byte[] { 1, 2, 3 });
+		payloadLog.sync();
+
+		// flips the first payload byte, behind the length and checksum of the first record
+		try (RandomAccessFile segment = new RandomAccessFile(new File(folder.getRoot(), "payloads-00000000.seg"), "rw")) {
+			segment.seek(8);
+			segment.write(~1);
+		}
+
+		try {
+			payloadLog.read(pointer);
+			fail("Corrupt payload was read");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("checksum"));
+		}
+		payloadLog.close();
+	}
+
+	@Test
+	public void pointer_not_matching_record_is_not_read() throws IOException {
+		SegmentPayloadLog payloadLog = new SegmentPayloadLog(folder.getRoot(), SEGMENT_SIZE, MAX_MAPPED_SEGMENTS);
+		byte[] pointer = payloadLog.append(new byte[] { 1, 2, 3 });
+		// shortens the length in the pointer, which stays within the segment
+		pointer[pointer.length - 1] = 2;
+
+		try {
+			payloadLog.read(pointer);
+			fail("Payload was read with a pointer not matching its record");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().contains("length"));
+		}
+		payloadLog.close();
+	}
+
+	@Test
+	public void appending_continues_after_reopen() throws IOException {
+		SegmentPayloadLog payloadLog = new SegmentPayloadLog(folder.getRoot(), SEGMENT_SIZE, MAX_MAPPED_SEGMENTS);
+		byte[] pointer1 = payloadLog.append(new byte[] { 1, 2, 3 });
+		payloadLog.close();
+
+		SegmentPayloadLog reopened = new SegmentPayloadLog(folder.getRoot(), SEGMENT_SIZE, MAX_MAPPED_SEGMENTS);
+		byte[] pointer2 = reopened.append(new byte[] { 4, 5 });
+		assertArrayEquals(new byte[] { 1, 2, 3 }, bytes(reopened.read(pointer1)));
+		assertArrayEquals(new byte[] { 4, 5 }, bytes(reopened.read(pointer2)));
+		reopened.close();
+	}
+
+	@Test
+	public void inline_records_are_not_pointers() {
+		assertFalse(SegmentPayloadLog.isPointer(new byte[] { (byte) 0xA5, 1, 2 }));
+		assertFalse(SegmentPayloadLog.isPointer(new byte[] { 0x01, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 }));
+	}
+
+	@Test
+	public void discarded_payloads_are_counted_as_dead_bytes() throws IOException {
+		SegmentPayloadLog payloadLog = new SegmentPayloadLog(folder.getRoot(), SEGMENT_SIZE, MAX_MAPPED_SEGMENTS);
+		byte[] pointer1 = payloadLog.append(new byte[] { 1, 2, 3 });
+		byte[] pointer2 = payloadLog.append(new byte[] { 4, 5 });
+		assertEquals(0L, payloadLog.deadBytes());
+
+		// the record header is dead as well
+		payloadLog.discard(pointer1);
+		assertEquals(8L + 3L, payloadLog.deadBytes());
+		// space is not reclaimed, other payloads stay where they are
+		assertArrayEquals(new byte[] { 4, 5 }, bytes(payloadLog.read(pointer2)));
+		payloadLog.close();
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.memory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.radixdlt.common.AID;
+import com.radixdlt.store.IndexScanner;
+import com.radixdlt.store.IndexedLedgerEntry;
+import com.radixdlt.store.LedgerEntry;
+import com.radixdlt.store.LedgerEntryClockView;
+import com.radixdlt.store.LedgerEntryStatus;
+import com.radixdlt.store.LedgerEntryStoreResult;
+import com.radixdlt.store.LedgerSearchMode;
+import com.radixdlt.store.SearchCursor;
+import com.radixdlt.store.StoreIndex;
+import org.junit.Before;
+import org.junit.Test;
+import org.radix.shards.ShardRange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryLedgerEntryStoreTest {
+	private static final byte PREFIX = 7; // test value with no special significance
+
+	private InMemoryLedgerEntryStore store;
+
+	@Before
+	public void setUp() {
+		this.store = new InMemoryLedgerEntryStore();
+	}
+
+	private static LedgerEntry createLedgerEntry(int id) {
+		byte[] aidBytes = new byte[AID.BYTES];
+		aidBytes[0] = (byte) id;
+		return new LedgerEntry(new byte[] { (byte) id }, AID.from(aidBytes));
+	}
+
+	@Test
+	public void stored_entry_is_pending_until_committed() {
+		LedgerEntry ledgerEntry = createLedgerEntry(1);
+		assertEquals(LedgerEntryStatus.UNAVAILABLE, store.getStatus(ledgerEntry.getAID()));
+
+		assertTrue(store.store(ledgerEntry, ImmutableSet.of(), ImmutableSet.of()).isSuccess());
+		assertEquals(LedgerEntryStatus.PENDING, store.getStatus(ledgerEntry.getAID()));
+		assertEquals(ImmutableSet.of(ledgerEntry.getAID()), store.getPending());
+		assertEquals(ledgerEntry, store.get(ledgerEntry.getAID()).orElse(null));
+
+		store.commit(ledgerEntry.getAID());
+		assertEquals(LedgerEntryStatus.COMMITTED, store.getStatus(ledgerEntry.getAID()));
+		assertTrue(store.getPending().isEmpty());
+		assertEquals(ImmutableList.of(ledgerEntry.getAID()), store.getNextCommitted(0, 10));
+		assertTrue(store.getNextCommitted(1, 10).isEmpty());
+	}
+
+	@Test
+	public void conflicting_unique_index_is_not_stored() {
+		StoreIndex uniqueIndex = new StoreIndex(PREFIX, new byte[] { 1 });
+		LedgerEntry first = createLedgerEntry(1);
+		LedgerEntry second = createLedgerEntry(2);
+		assertTrue(store.store(first, ImmutableSet.of(uniqueIndex), ImmutableSet.of()).isSuccess());
+
+		LedgerEntryStoreResult result = store.store(second, ImmutableSet.of(uniqueIndex), ImmutableSet.of());
+		assertFalse(result.isSuccess());
+		assertEquals(ImmutableSet.of(first.getAID()), result.getConflictInfo().getConflictingAids());
+		assertFalse(store.contains(second.getAID()));
+
+		// storing the same entry twice is a conflict on its internal entry index
+		assertFalse(store.store(first, ImmutableSet.of(), ImmutableSet.of()).isSuccess());
+	}
+
+	@Test
+	public void replace_removes_replaced_entries_and_their_conflicts() {
+		StoreIndex uniqueIndex = new StoreIndex(PREFIX, new byte[] { 1 });
+		LedgerEntry first = createLedgerEntry(1);
+		LedgerEntry second = createLedgerEntry(2);
+		assertTrue(store.store(first, ImmutableSet.of(uniqueIndex), ImmutableSet.of()).isSuccess());
+
+		assertTrue(store.replace(ImmutableSet.of(first.getAID()), second, ImmutableSet.of(uniqueIndex), ImmutableSet.of()).isSuccess());
+		assertFalse(store.contains(first.getAID()));
+		assertEquals(second.getAID(), store.search(StoreIndex.LedgerIndexType.UNIQUE, uniqueIndex, LedgerSearchMode.EXACT).get());
+	}
+
+	@Test
+	public void batch_reports_conflicts_within_the_batch() {
+		StoreIndex uniqueIndex = new StoreIndex(PREFIX, new byte[] { 1 });
+		ImmutableList<LedgerEntryStoreResult> results = store.storeBatch(ImmutableList.of(
+			IndexedLedgerEntry.of(createLedgerEntry(1), ImmutableSet.of(uniqueIndex), ImmutableSet.of()),
+			IndexedLedgerEntry.of(createLedgerEntry(2), ImmutableSet.of(uniqueIndex), ImmutableSet.of())
+		));
+
+		assertTrue(results.get(0).isSuccess());
+		assertFalse(results.get(1).isSuccess());
+	}
+
+	@Test
+	public void cursor_iterates_duplicates_in_store_order() {
+		StoreIndex index = new StoreIndex(PREFIX, new byte[] { 1 });
+		LedgerEntry first = createLedgerEntry(2);
+		LedgerEntry second = createLedgerEntry(1);
+		store.store(first, ImmutableSet.of(), ImmutableSet.of(index));
+		store.store(second, ImmutableSet.of(), ImmutableSet.of(index));
+
+		SearchCursor cursor = store.search(StoreIndex.LedgerIndexType.DUPLICATE, index, LedgerSearchMode.EXACT);
+		assertEquals(first.getAID(), cursor.get());
+		cursor = cursor.next();
+		assertEquals(second.getAID(), cursor.get());
+		assertNull(cursor.next());
+		assertEquals(first.getAID(), cursor.first().get());
+		assertEquals(second.getAID(), cursor.first().last().get());
+		assertNull(cursor.first().previous());
+	}
+
+	@Test
+	public void scan_shards_returns_entries_in_shard_order() {
+		LedgerEntry first = createLedgerEntry(1);
+		LedgerEntry second = createLedgerEntry(2);
+		store.store(first, ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of(10L, -5L));
+		store.store(second, ImmutableSet.of(), ImmutableSet.of(), ImmutableSet.of(3L, 11L));
+
+		IndexScanner scanner = store.scanShards(new ShardRange(-5, 10));
+		assertEquals(ImmutableList.of(first.getAID(), second.getAID()), scanner.nextAids(2));
+		assertFalse(scanner.isExhausted());
+		assertEquals(ImmutableList.of(first), scanner.nextEntries(2));
+		assertTrue(scanner.isExhausted());
+	}
+
+	@Test
+	public void clock_view_excludes_entries_stored_after_it() {
+		StoreIndex index = new StoreIndex(PREFIX, new byte[] { 1 });
+		LedgerEntry first = createLedgerEntry(1);
+		LedgerEntry second = createLedgerEntry(2);
+		store.store(first, ImmutableSet.of(), ImmutableSet.of(index));
+		LedgerEntryClockView view = store.clockView();
+		store.store(second, ImmutableSet.of(), ImmutableSet.of(index));
+
+		assertEquals(1L, view.getLogicalClock());
+		assertTrue(view.contains(first.getAID()));
+		assertFalse(view.contains(second.getAID()));
+		IndexScanner scanner = view.scan(StoreIndex.LedgerIndexType.DUPLICATE, index);
+		assertEquals(ImmutableList.of(first.getAID()), scanner.nextAids(2));
+		assertTrue(scanner.isExhausted());
+
+		assertEquals(ImmutableList.of(first.getAID(), second.getAID()), store.clockViewAt(2L).scan(StoreIndex.LedgerIndexType.DUPLICATE, index).nextAids(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void clock_view_cannot_be_taken_ahead_of_stored_entries() {
+		store.store(createLedgerEntry(1), ImmutableSet.of(), ImmutableSet.of());
+		store.clockViewAt(2L);
+	}
+
+	@Test
+	public void pending_entries_replaced_after_clock_view_was_taken_leave_it() {
+		StoreIndex index = new StoreIndex(PREFIX, new byte[] { 1 });
+		LedgerEntry first = createLedgerEntry(1);
+		LedgerEntry second = createLedgerEntry(2);
+		LedgerEntry replacement = createLedgerEntry(3);
+		store.store(first, ImmutableSet.of(), ImmutableSet.of(index));
+		store.store(second, ImmutableSet.of(), ImmutableSet.of(index));
+		LedgerEntryClockView view = store.clockView();
+		// pending entries are visible in the view until they are replaced
+		assertTrue(view.contains(second.getAID()));
+		IndexScanner scanner = view.scan(StoreIndex.LedgerIndexType.DUPLICATE, index);
+		assertEquals(ImmutableList.of(first.getAID()), scanner.nextAids(1));
+
+		store.replace(ImmutableSet.of(second.getAID()), replacement, ImmutableSet.of(), ImmutableSet.of(index));
+
+		// the view is not isolated, so the replaced entry is gone from it, also for the scan under way
+		assertFalse(view.contains(second.getAID()));
+		assertFalse(view.contains(replacement.getAID()));
+		assertEquals(ImmutableList.of(), scanner.nextAids(2));
+		assertTrue(scanner.isExhausted());
+		assertEquals(ImmutableList.of(first.getAID()), view.scan(StoreIndex.LedgerIndexType.DUPLICATE, index).nextAids(3));
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package org.radix.database;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CheckpointPolicyTest {
+	private static final long CHECKPOINT_BYTES = 1_000L;
+	private static final long MIN_INTERVAL = 100L;
+	private static final long MAX_INTERVAL = 10_000L;
+
+	private final CheckpointPolicy policy = new CheckpointPolicy(CHECKPOINT_BYTES, MIN_INTERVAL, MAX_INTERVAL, 50, 4);
+
+	@Test
+	public void checkpoint_is_due_once_enough_log_is_written() {
+		assertThat(policy.isCheckpointDue(CHECKPOINT_BYTES - 1, MIN_INTERVAL, 0)).isFalse();
+		assertThat(policy.isCheckpointDue(CHECKPOINT_BYTES, MIN_INTERVAL, 0)).isTrue();
+	}
+
+	@Test
+	public void checkpoint_is_due_after_cleaning() {
+		assertThat(policy.isCheckpointDue(0L, MIN_INTERVAL, 1)).isTrue();
+	}
+
+	@Test
+	public void checkpoint_is_due_after_max_interval_only_if_log_was_written() {
+		assertThat(policy.isCheckpointDue(1L, MAX_INTERVAL - 1, 0)).isFalse();
+		assertThat(policy.isCheckpointDue(1L, MAX_INTERVAL, 0)).isTrue();
+		assertThat(policy.isCheckpointDue(0L, MAX_INTERVAL * 2, 0)).isFalse();
+	}
+
+	@Test
+	public void checkpoints_are_throttled_by_min_interval() {
+		assertThat(policy.isCheckpointDue(CHECKPOINT_BYTES * 10, MIN_INTERVAL - 1, 0)).isFalse();
+		assertThat(policy.isCheckpointDue(0L, MIN_INTERVAL - 1, 3)).isFalse();
+	}
+
+	@Test
+	public void cleaning_is_due_below_min_utilization() {
+		assertThat(policy.isCleaningDue(49)).isTrue();
+		assertThat(policy.isCleaningDue(50)).isFalse();
+		assertThat(policy.isCleaningDue(90)).isFalse();
+	}
+
+	@Test
+	public void cleaning_is_not_due_while_utilization_is_unknown() {
+		assertThat(policy.isCleaningDue(-1)).isFalse();
+	}
+
+	@Test
+	public void invalid_intervals_are_rejected() {
+		assertThatThrownBy(() -> new CheckpointPolicy(CHECKPOINT_BYTES, MAX_INTERVAL, MIN_INTERVAL, 50, 4))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new CheckpointPolicy(0L, MIN_INTERVAL, MAX_INTERVAL, 50, 4))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+}
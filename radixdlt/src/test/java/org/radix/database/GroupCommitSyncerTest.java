@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package org.radix.database;
+
+import com.sleepycat.je.Environment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class GroupCommitSyncerTest {
+	private static final long TIMEOUT_SECONDS = 5L;
+
+	// waiters run on their own threads, as each of them blocks until its group is synced
+	private ExecutorService waiters;
+	private Environment environment;
+	private CountDownLatch flushStarted;
+	private CountDownLatch flushAllowed;
+	private GroupCommitSyncer syncer;
+
+	@Before
+	public void setUp() {
+		this.waiters = Executors.newCachedThreadPool();
+		this.environment = mock(Environment.class);
+		this.flushStarted = new CountDownLatch(1);
+		this.flushAllowed = new CountDownLatch(0);
+		doAnswer(invocation -> {
+			this.flushStarted.countDown();
+			this.flushAllowed.await();
+			return null;
+		}).when(this.environment).flushLog(anyBoolean());
+	}
+
+	@After
+	public void tearDown() {
+		if (this.syncer != null) {
+			this.flushAllowed = new CountDownLatch(0);
+			this.syncer.stop();
+		}
+		this.waiters.shutdownNow();
+	}
+
+	@Test
+	public void waiters_are_released_only_after_flush() throws Exception {
+		this.flushAllowed = new CountDownLatch(1);
+		this.syncer = new GroupCommitSyncer(this.environment, 0L, 1);
+
+		CompletableFuture<Void> waiter = CompletableFuture.runAsync(this.syncer::await, this.waiters);
+
+		assertThat(this.flushStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+		Thread.sleep(100L);
+		assertThat(waiter).isNotDone();
+
+		this.flushAllowed.countDown();
+		waiter.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		verify(this.environment, times(1)).flushLog(true);
+	}
+
+	@Test
+	public void group_is_synced_once_interval_has_passed() throws Exception {
+		long intervalMs = 200L;
+		this.syncer = new GroupCommitSyncer(this.environment, intervalMs, 1_000);
+
+		long start = System.nanoTime();
+		CompletableFuture<Void> waiter = CompletableFuture.runAsync(this.syncer::await, this.waiters);
+		waiter.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(intervalMs);
+		verify(this.environment, times(1)).flushLog(true);
+	}
+
+	@Test
+	public void group_is_synced_once_full_without_waiting_for_interval() throws Exception {
+		int maxTransactions = 3;
+		this.syncer = new GroupCommitSyncer(this.environment, TimeUnit.HOURS.toMillis(1), maxTransactions);
+
+		List<CompletableFuture<Void>> group = new ArrayList<>();
+		for (int i = 0; i < maxTransactions - 1; i++) {
+			group.add(CompletableFuture.runAsync(this.syncer::await, this.waiters));
+		}
+		Thread.sleep(100L);
+		assertThat(group).noneMatch(CompletableFuture::isDone);
+		verify(this.environment, never()).flushLog(anyBoolean());
+
+		group.add(CompletableFuture.runAsync(this.syncer::await, this.waiters));
+		CompletableFuture.allOf(group.toArray(new CompletableFuture<?>[0])).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		verify(this.environment, atLeastOnce()).flushLog(true);
+	}
+}